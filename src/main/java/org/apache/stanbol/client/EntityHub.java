@@ -18,8 +18,13 @@ package org.apache.stanbol.client;
 
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.stanbol.client.entityhub.model.BulkOperationResult;
+import org.apache.stanbol.client.entityhub.model.CloseableIterator;
 import org.apache.stanbol.client.entityhub.model.Entity;
+import org.apache.stanbol.client.entityhub.model.FieldQuery;
 import org.apache.stanbol.client.entityhub.model.LDPathProgram;
 import org.apache.stanbol.client.exception.StanbolClientException;
 import org.apache.stanbol.client.services.exception.StanbolServiceException;
@@ -72,6 +77,50 @@ public interface EntityHub
      */
     public Entity get(String site, String id) throws StanbolServiceException, StanbolClientException;
 
+    /**
+     * Get many entities with as few server calls as possible. The ids are split in chunks resolved by a single LDPath
+     * call each. Returned entities only contain the label, comment, type and sameAs properties of the entities. Ids
+     * that can not be found are not included in the result
+     * 
+     * @param site Referenced Site to search. If null, the entities managed by the EntityHub are returned
+     * @param ids Entities' URIs
+     * @return Map of Entity's URI - {@link Entity}
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public Map<String, Entity> getAll(String site, Collection<String> ids) throws StanbolServiceException,
+            StanbolClientException;
+
+    /**
+     * Get many entities with as few server calls as possible, projecting the properties of every entity with the
+     * passed LDPath program. Ids that can not be found are not included in the result
+     * 
+     * @param site Referenced Site to search. If null, the entities managed by the EntityHub are returned
+     * @param ids Entities' URIs
+     * @param ldPathProgram LDPath program selecting the properties of the returned entities
+     * @return Map of Entity's URI - {@link Entity}
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public Map<String, Entity> getAll(String site, Collection<String> ids, LDPathProgram ldPathProgram)
+            throws StanbolServiceException, StanbolClientException;
+
+    /**
+     * Get many entities like {@link #getAll(String, Collection, LDPathProgram)}, giving up at a deadline. The chunks
+     * fetched before the deadline are returned, the rest are cancelled
+     * 
+     * @param site Referenced Site to search. If null, the entities managed by the EntityHub are returned
+     * @param ids Entities' URIs
+     * @param ldPathProgram LDPath program selecting the properties of the returned entities
+     * @param timeout Deadline for the whole operation
+     * @param unit Time unit of <code>timeout</code>
+     * @return Map of Entity's URI - {@link Entity}, without the entities not fetched before the deadline
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public Map<String, Entity> getAll(String site, Collection<String> ids, LDPathProgram ldPathProgram, long timeout,
+            TimeUnit unit) throws StanbolServiceException, StanbolClientException;
+
     /**
      * Create entities in the EntityHub. If any of such Entities already exists within the Entityhub and the update parameter
      * is false, a {@link StanbolServiceException} will be thrown
@@ -142,6 +191,34 @@ public interface EntityHub
      */
     public Boolean deleteAll() throws StanbolServiceException, StanbolClientException;
 
+    /**
+     * Delete many entities managed by the Entityhub, sending several requests at the same time through pooled
+     * connections. A failure deleting an entity does not stop the deletion of the others
+     * 
+     * @param ids URIs of the Entities to delete
+     * @return Outcome of the deletion of every entity
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     * @throws IllegalArgumentException If the ids include <code>"*"</code>, which the server takes as every entity.
+     *             Nothing is deleted in that case
+     */
+    public BulkOperationResult deleteAll(Collection<String> ids) throws StanbolServiceException,
+            StanbolClientException;
+
+    /**
+     * Update many entities of the Entityhub. Entities are sent in batches of several entities per request, and several
+     * batches are sent at the same time. If a batch fails, its entities are updated one by one to find out the ones
+     * failing
+     * 
+     * @param entities Entities to be updated
+     * @param create If true, entities that don't exist will be created
+     * @return Outcome of the update of every entity
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public BulkOperationResult updateAll(Collection<Entity> entities, Boolean create)
+            throws StanbolServiceException, StanbolClientException;
+
     /**
      * This service looks-up Symbols (Entities managed by the Entityhub) based on the passed URI. The passed ID can be
      * the URI of a Symbol or an Entity of any referenced site.
@@ -197,6 +274,67 @@ public interface EntityHub
     public Collection<Entity> search(String site, String name, String field, String language, LDPathProgram ldpath,
             int limit, int offset) throws StanbolServiceException, StanbolClientException;
 
+    /**
+     * Lazily iterate over all the locally managed Entities found by a label based search. Results are fetched page by
+     * page on demand, and the next page is fetched in background while the current one is consumed. Close the iterator
+     * if it is not fully consumed, to cancel the background request. Errors fetching any page but the first one are
+     * thrown by the iterator as {@link IllegalStateException}
+     * 
+     * @param name The name of the Entity to search. Supports '*' and '?
+     * @param field The name of the field to search the name. Optional, default is rdfs:label
+     * @param language The language of the parsed name (default: any)
+     * @param ldpath The LDPath program executed for entities selected by the find query
+     * @param pageSize Number of entities requested per page
+     * @return Iterator over the found entities
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public CloseableIterator<Entity> searchIterator(String name, String field, String language, LDPathProgram ldpath,
+            int pageSize) throws StanbolServiceException, StanbolClientException;
+
+    /**
+     * Lazily iterate over all the ReferencedSite managed Entities found by a label based search. Results are fetched
+     * page by page on demand, and the next page is fetched in background while the current one is consumed. Close the
+     * iterator if it is not fully consumed, to cancel the background request. Errors fetching any page but the first
+     * one are thrown by the iterator as {@link IllegalStateException}
+     * 
+     * @param site Referenced Site to search
+     * @param name The name of the Entity to search. Supports '*' and '?
+     * @param field The name of the field to search the name. Optional, default is rdfs:label
+     * @param language The language of the parsed name (default: any)
+     * @param ldpath The LDPath program executed for entities selected by the find query
+     * @param pageSize Number of entities requested per page
+     * @return Iterator over the found entities
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public CloseableIterator<Entity> searchIterator(String site, String name, String field, String language,
+            LDPathProgram ldpath, int pageSize) throws StanbolServiceException, StanbolClientException;
+
+    /**
+     * Find locally managed Entities by a Field Query. Only the fields selected by the query are returned for every
+     * Entity
+     * 
+     * @param query {@link FieldQuery} to execute
+     * @return List of found entities
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public Collection<Entity> query(FieldQuery query) throws StanbolServiceException, StanbolClientException;
+
+    /**
+     * Find ReferencedSite managed Entities by a Field Query. Only the fields selected by the query are returned for
+     * every Entity
+     * 
+     * @param site Referenced Site to search
+     * @param query {@link FieldQuery} to execute
+     * @return List of found entities
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public Collection<Entity> query(String site, FieldQuery query) throws StanbolServiceException,
+            StanbolClientException;
+
     /**
      * Allows to execute an LDPath program on one or more Entities (contexts)
      * 
@@ -222,4 +360,19 @@ public interface EntityHub
      */
     public Model ldpath(String site, String contexts, LDPathProgram ldPathProgram) throws StanbolServiceException, StanbolClientException;
 
+    /**
+     * Execute an LDPath program on many Entities (contexts) with as few server calls as possible. The contexts are
+     * split in chunks sent in parallel, and the returned graph is split by context
+     * 
+     * @param site Referenced Site to execute the ldpath. If null, the entities managed by the EntityHub are used
+     * @param contexts The entities' URIs used as context for the execution of the LDPath program
+     * @param ldPathProgram The LDPath program to execute
+     * @return Map of context - RDF Graph with the context as subject, the fields selected by the LDPath program as
+     *         properties and the selected values as object. Contexts without values are mapped to an empty graph
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     */
+    public Map<String, Model> ldpath(String site, Collection<String> contexts, LDPathProgram ldPathProgram)
+            throws StanbolServiceException, StanbolClientException;
+
 }
@@ -16,9 +16,15 @@
  */
 package org.apache.stanbol.client;
 
+import java.util.Map;
+
+import org.apache.stanbol.client.exception.StanbolClientException;
 import org.apache.stanbol.client.services.exception.StanbolServiceException;
+import org.apache.stanbol.client.sparql.model.CloseableResultSet;
+import org.apache.stanbol.client.sparql.model.PreparedQuery;
 
 import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.RDFNode;
 
 /**
  *  
@@ -38,12 +44,51 @@ public interface Sparql
     static final String STANBOL_SPARQL_PATH = "sparql/";
     
     /**
-     * Execute <code>sparqlQuery</code> query over <code>graphUri</code> graph in Stanbol
+     * Execute <code>sparqlQuery</code> query over <code>graphUri</code> graph in Stanbol. The results are parsed
+     * incrementally while they are iterated, so memory use does not depend on the number of results. The server
+     * response is released when the results are exhausted or closed
      * 
      * @param graphUri Uri of the registered graph in Stanbol
      * @param sparqlQuery SPARQL query
-     * @return Jena SPARQL {@link ResultSet}
+     * @return Jena SPARQL {@link ResultSet}, which must be closed if it is not fully iterated
      * @throws StanbolServiceException 
      */
-    ResultSet executeQuery(String graphUri, String sparqlQuery) throws StanbolServiceException;
+    CloseableResultSet executeQuery(String graphUri, String sparqlQuery) throws StanbolServiceException;
+
+    /**
+     * Parse and validate a SPARQL 1.1 query on the client side, so syntax errors are detected without a server
+     * round trip
+     * 
+     * @param sparqlQuery SPARQL query
+     * @return {@link PreparedQuery}, which can be executed many times with different bindings
+     * @throws StanbolClientException If the query is not valid
+     */
+    PreparedQuery prepare(String sparqlQuery) throws StanbolClientException;
+
+    /**
+     * Execute a prepared query over <code>graphUri</code> graph in Stanbol
+     * 
+     * @param graphUri Uri of the registered graph in Stanbol
+     * @param query {@link PreparedQuery}
+     * @return Jena SPARQL {@link ResultSet}, which must be closed if it is not fully iterated
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     * @see #executeQuery(String, String)
+     */
+    CloseableResultSet executeQuery(String graphUri, PreparedQuery query) throws StanbolServiceException,
+            StanbolClientException;
+
+    /**
+     * Execute a prepared query over <code>graphUri</code> graph in Stanbol, binding some of its variables
+     * 
+     * @param graphUri Uri of the registered graph in Stanbol
+     * @param query {@link PreparedQuery}
+     * @param bindings RDF terms by variable name
+     * @return Jena SPARQL {@link ResultSet}, which must be closed if it is not fully iterated
+     * @throws StanbolServiceException
+     * @throws StanbolClientException
+     * @see PreparedQuery#toString(Map)
+     */
+    CloseableResultSet executeQuery(String graphUri, PreparedQuery query, Map<String, ? extends RDFNode> bindings)
+            throws StanbolServiceException, StanbolClientException;
 }
@@ -19,7 +19,11 @@ package org.apache.stanbol.client;
 import javax.ws.rs.core.UriBuilder;
 
 import org.apache.stanbol.client.enhancer.impl.EnhancerImpl;
+import org.apache.stanbol.client.entityhub.impl.BulkEntityLoader;
+import org.apache.stanbol.client.entityhub.impl.BulkLoadConfiguration;
+import org.apache.stanbol.client.entityhub.impl.EntityHubConfiguration;
 import org.apache.stanbol.client.entityhub.impl.EntityHubImpl;
+import org.apache.stanbol.client.sparql.impl.SparqlConfiguration;
 import org.apache.stanbol.client.sparql.impl.SparqlImpl;
 
 
@@ -55,7 +59,27 @@ public class StanbolClientFactory
     public final EntityHub createEntityHubClient(){
     	return new EntityHubImpl(builder);
     }
+
+    /**
+     * Create an instance of the {@link EntityHub} client with client side settings like caching
+     * 
+     * @param configuration {@link EntityHubConfiguration} of the client
+     * @return Entityhub service
+     */
+    public final EntityHub createEntityHubClient(EntityHubConfiguration configuration){
+    	return new EntityHubImpl(builder, configuration);
+    }
     
+    /**
+     * Create a {@link BulkEntityLoader} loading RDF dumps into the EntityHub
+     * 
+     * @param configuration {@link BulkLoadConfiguration} of the loader
+     * @return Bulk entity loader
+     */
+    public final BulkEntityLoader createBulkEntityLoader(BulkLoadConfiguration configuration){
+    	return new BulkEntityLoader(builder, configuration);
+    }
+
     /**
      * Create an instance of the {@link Sparql} client
      * 
@@ -65,6 +89,16 @@ public class StanbolClientFactory
     	return new SparqlImpl(builder);
     }
 
+    /**
+     * Create an instance of the {@link Sparql} client with client side settings like the results formats
+     * 
+     * @param configuration {@link SparqlConfiguration} of the client
+     * @return StanbolSparqlService
+     */
+    public final Sparql createSparqlClient(SparqlConfiguration configuration){
+    	return new SparqlImpl(builder, configuration);
+    }
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#equals(java.lang.Object)
 	 */
@@ -134,7 +134,7 @@ public class EnhancementParser
      * @param resource Jena resource
      * @return Enhancement
      */
-    private static Enhancement parse(Resource resource)
+    static Enhancement parse(Resource resource)
     {
         Enhancement enhancement = null;
 
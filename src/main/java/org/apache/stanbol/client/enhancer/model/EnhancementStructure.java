@@ -22,10 +22,10 @@ import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.WebApplicationException;
@@ -34,8 +34,12 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.Provider;
 
+import org.apache.stanbol.client.EntityHub;
 import org.apache.stanbol.client.enhancer.impl.EnhancerParameters.OutputFormat;
 import org.apache.stanbol.client.entityhub.model.Entity;
+import org.apache.stanbol.client.entityhub.model.LDPathProgram;
+import org.apache.stanbol.client.exception.StanbolClientException;
+import org.apache.stanbol.client.services.exception.StanbolServiceException;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
@@ -46,6 +50,7 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -54,10 +59,13 @@ import com.google.common.collect.Sets;
 import com.google.common.primitives.Doubles;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.ResIterator;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
-import com.hp.hpl.jena.vocabulary.DC_11;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.vocabulary.DCTerms;
+import com.hp.hpl.jena.vocabulary.RDF;
 
 /**
  * Represents the result of Enhancement Services in Stanbol managing the list of
@@ -111,7 +119,9 @@ public class EnhancementStructure {
 			final EnhancementStructure result = new EnhancementStructure(model);
 			final Collection<Enhancement> enhancements = EnhancementParser
 					.parse(model);
-			result.enhancements = enhancements;
+			for (final Enhancement enhancement : enhancements) {
+				result.enhancements.put(enhancement.getUri(), enhancement);
+			}
 
 			final Collection<EntityAnnotation> eas = result
 					.getEntityAnnotations();
@@ -154,14 +164,41 @@ public class EnhancementStructure {
 	}
 
 	/**
-	 * Enhancement Structure based on Enhancements Relations
+	 * Merge a set of {@link EnhancementStructure}s into a new one. The passed
+	 * structures are not modified
+	 *
+	 * @param structures
+	 *            {@link EnhancementStructure}s to be merged
+	 * @return new {@link EnhancementStructure} containing the union of all the
+	 *         passed structures
+	 * @see #merge(EnhancementStructure)
+	 */
+	public static EnhancementStructure merge(
+			final Iterable<EnhancementStructure> structures) {
+		final EnhancementStructure result = new EnhancementStructure(
+				ModelFactory.createDefaultModel());
+		for (final EnhancementStructure structure : structures) {
+			result.merge(structure);
+		}
+		return result;
+	}
+
+	/**
+	 * Enhancement Structure based on Enhancements Relations, indexed by
+	 * Enhancement URI
 	 */
-	private Collection<Enhancement> enhancements = Sets.newHashSet();
+	private final Map<String, Enhancement> enhancements = Maps
+			.newLinkedHashMap();
 
 	private final Map<String, Entity> entities = Maps.newHashMap();
 
 	private final Collection<String> languages = Sets.newHashSet();
 
+	/**
+	 * URIs of the entities fetched by dereferenceEntities
+	 */
+	private final Set<String> dereferenced = Sets.newHashSet();
+
 	/**
 	 * Enhancement Graph
 	 */
@@ -186,18 +223,15 @@ public class EnhancementStructure {
 	 *            Threshold Value
 	 */
 	public void filterByConfidence(final Double confidenceThreshold) {
-		final List<Annotation> toBeRemoved = Lists.newArrayList();
+		final List<String> toBeRemoved = Lists.newArrayList();
 
 		for (final EntityAnnotation ea : getEntityAnnotations()) {
 			if (((Annotation) ea).getConfidence() < confidenceThreshold) {
-				toBeRemoved.add(ea);
+				toBeRemoved.add(ea.getUri());
 			}
 		}
 
-		for (final Annotation e : toBeRemoved) {
-			removeEnhancement(e.getUri());
-		}
-
+		removeEnhancements(toBeRemoved);
 	}
 
 	/**
@@ -247,13 +281,7 @@ public class EnhancementStructure {
 	 * @return {@link Annotation} within the list identified by its URI
 	 */
 	public Enhancement getEnhancement(final String URI) {
-		return FluentIterable.from(getEnhancements())
-				.firstMatch(new Predicate<Enhancement>() {
-					@Override
-					public boolean apply(final Enhancement input) {
-						return input.getUri().equals(URI);
-					}
-				}).orNull();
+		return enhancements.get(URI);
 	}
 
 	/**
@@ -271,7 +299,7 @@ public class EnhancementStructure {
 	 * @return {@link List} of {@link Annotation}s
 	 */
 	public Collection<Enhancement> getEnhancements() {
-		return enhancements;
+		return enhancements.values();
 	}
 
 	/**
@@ -316,6 +344,82 @@ public class EnhancementStructure {
 		return entities.get(URI);
 	}
 
+	/**
+	 * Dereference the entities of all the {@link EntityAnnotation}s, filling
+	 * them in place: the statements of the fetched entities are added to the
+	 * Enhancement Graph, so the {@link Entity} returned by
+	 * {@link EntityAnnotation#getDereferencedEntity()} exposes them. Every
+	 * distinct fise:entity-reference is fetched once, with one bulk
+	 * <code>EntityHub.getAll</code> call per referenced site, so the requests
+	 * run in the bulk fetch pool of the client and are bounded by its bulk
+	 * fetch parallelism.
+	 * Entities already dereferenced by a previous call are skipped. Entities
+	 * that can not be fetched, or that are not fetched before the deadline,
+	 * are left as they are and fetched again by the next call
+	 *
+	 * @param entityHub
+	 *            {@link EntityHub} the entities are fetched from
+	 * @param ldPathProgram
+	 *            LDPath program selecting the fetched properties. Its fields
+	 *            should be named as the properties they select (for instance,
+	 *            <code>rdfs:label = rdfs:label;</code>), so the entities look
+	 *            like the ones returned by {@link EntityHub#get(String)}
+	 * @param timeout
+	 *            Deadline for the whole operation
+	 * @param unit
+	 *            Time unit of <code>timeout</code>
+	 * @return Number of dereferenced entities
+	 */
+	public int dereferenceEntities(final EntityHub entityHub,
+			final LDPathProgram ldPathProgram, final long timeout,
+			final TimeUnit unit) {
+		// Distinct references by site. A null site is the local EntityHub
+		final Multimap<String, String> references = LinkedHashMultimap
+				.create();
+		for (final EntityAnnotation ea : getEntityAnnotations()) {
+			final Entity entity = ea.getDereferencedEntity();
+			if (entity != null && !dereferenced.contains(entity.getUri())) {
+				references.put(ea.getSite(), entity.getUri());
+			}
+		}
+
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int result = 0;
+		for (final String site : references.keySet()) {
+			final long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				break;
+			}
+			final Map<String, Entity> fetched;
+			try {
+				fetched = entityHub.getAll(site, references.get(site),
+						ldPathProgram, remaining, TimeUnit.NANOSECONDS);
+			} catch (final StanbolServiceException | StanbolClientException
+					| RuntimeException e) {
+				// Left as they are
+				continue;
+			}
+			for (final Entity entity : fetched.values()) {
+				enhancementGraph.add(entity.getResource().listProperties());
+				dereferenced.add(entity.getUri());
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Check whether an entity has been dereferenced by
+	 * {@link #dereferenceEntities(EntityHub, LDPathProgram, long, TimeUnit)}
+	 *
+	 * @param entityUri
+	 *            Entity URI
+	 * @return <code>true</code> if the entity statements have been fetched
+	 */
+	public boolean isDereferenced(final String entityUri) {
+		return dereferenced.contains(entityUri);
+	}
+
 	/**
 	 * Returns an {@link EntityAnnotation} by its associated dereferenced
 	 * {@link Entity} URI
@@ -498,6 +602,67 @@ public class EnhancementStructure {
 				}).toSet();
 	}
 
+	/**
+	 * Merge the passed {@link EnhancementStructure} into this one. Enhancements
+	 * are united by URI, dereferenced {@link Entity}s and languages are
+	 * deduplicated and the Enhancement Graph is extended with the statements of
+	 * the passed structure. Only the enhancements not already contained in this
+	 * structure are extracted from the graph, so the cost is linear in the size
+	 * of the passed structure. The passed structure is not modified
+	 *
+	 * @param other
+	 *            {@link EnhancementStructure} to be merged into this one
+	 * @return this {@link EnhancementStructure}
+	 */
+	public EnhancementStructure merge(final EnhancementStructure other) {
+		if (other == null || other == this) {
+			return this;
+		}
+
+		enhancementGraph.add(other.enhancementGraph);
+
+		for (final Enhancement e : other.getEnhancements()) {
+			if (!enhancements.containsKey(e.getUri())) {
+				final Enhancement merged = EnhancementParser
+						.parse(enhancementGraph.getResource(e.getUri()));
+				if (merged != null) {
+					enhancements.put(merged.getUri(), merged);
+					if (merged instanceof EntityAnnotation) {
+						final Entity entity = ((EntityAnnotation) merged)
+								.getDereferencedEntity();
+						if (entity != null
+								&& !entities.containsKey(entity.getUri())) {
+							entities.put(entity.getUri(), entity);
+						}
+					}
+				}
+			}
+		}
+
+		// Relations are rebuilt from the merged graph, so links between
+		// enhancements of different structures are resolved as well
+		for (final Enhancement e : enhancements.values()) {
+			e.getRelation().clear();
+			final StmtIterator relations = e.resource.listProperties(
+					DCTerms.relation);
+			while (relations.hasNext()) {
+				final RDFNode object = relations.next().getObject();
+				if (object.isURIResource()) {
+					final Enhancement related = enhancements.get(object
+							.asResource().getURI());
+					if (related != null) {
+						e.addRelation(related);
+					}
+				}
+			}
+		}
+
+		languages.addAll(other.languages);
+		dereferenced.addAll(other.dereferenced);
+
+		return this;
+	}
+
 	/**
 	 * Remove an {@link Annotation} from the results by its URI
 	 * 
@@ -505,17 +670,67 @@ public class EnhancementStructure {
 	 *            {@link Annotation} URI
 	 */
 	public void removeEnhancement(final String enhancementURI) {
+		removeEnhancements(Collections.singleton(enhancementURI));
+	}
 
-		if (isInTheGraph(enhancementURI)) {
-			final Enhancement enhancement = removeEnhancementFromList(enhancementURI);
+	/**
+	 * Remove a set of {@link Enhancement}s from the results by their URIs.
+	 * Removing a {@link TextAnnotation} also removes the
+	 * {@link EntityAnnotation}s related to it. All the statements of the
+	 * removed enhancements, and the dc:relation statements pointing to them,
+	 * are collected first and then removed from the Enhancement Graph in a
+	 * single bulk operation
+	 * 
+	 * @param enhancementURIs
+	 *            URIs of the {@link Enhancement}s to be removed
+	 */
+	public void removeEnhancements(final Collection<String> enhancementURIs) {
+		final Set<Enhancement> removed = Sets.newHashSet();
+		final List<Resource> resources = Lists.newArrayList();
+
+		for (final String uri : enhancementURIs) {
+			final Enhancement enhancement = enhancements.remove(uri);
+			if (enhancement == null) {
+				continue;
+			}
+			removed.add(enhancement);
+			final Resource resource = enhancementGraph.getResource(uri);
+			resources.add(resource);
 
 			if (enhancement instanceof TextAnnotation) {
-				removeTextAnnotation(enhancementGraph
-						.getResource(enhancementURI));
-			} else {
-				final Resource entityResource = enhancementGraph
-						.getResource(enhancementURI);
-				removeEntityAnnotation(entityResource);
+				final ResIterator entityIterator = enhancementGraph
+						.listSubjectsWithProperty(DCTerms.relation, resource);
+				while (entityIterator.hasNext()) {
+					final Resource related = entityIterator.next();
+					if (related.hasProperty(RDF.type,
+							EnhancementStructureOntology.ENTITY_ANNOTATION)) {
+						final Enhancement ea = enhancements.remove(related
+								.getURI());
+						if (ea != null) {
+							removed.add(ea);
+						}
+						resources.add(related);
+					}
+				}
+			}
+		}
+
+		if (removed.isEmpty()) {
+			return;
+		}
+
+		final List<Statement> statements = Lists.newArrayList();
+		for (final Resource resource : resources) {
+			statements.addAll(enhancementGraph.listStatements(resource, null,
+					(RDFNode) null).toList());
+			statements.addAll(enhancementGraph.listStatements(null,
+					DCTerms.relation, resource).toList());
+		}
+		enhancementGraph.remove(statements);
+
+		for (final Enhancement enhancement : enhancements.values()) {
+			if (!enhancement.getRelation().isEmpty()) {
+				enhancement.getRelation().removeAll(removed);
 			}
 		}
 	}
@@ -586,36 +801,6 @@ public class EnhancementStructure {
 		return json.toString();
 	}
 
-	private boolean isInTheGraph(final String URI) {
-		return FluentIterable.from(getEnhancements()).anyMatch(
-				new Predicate<Enhancement>() {
-					@Override
-					public boolean apply(final Enhancement input) {
-						return input.getUri().equals(URI);
-					}
-				});
-	}
-
-	private Enhancement removeEnhancementFromList(final String URI) {
-		final Iterator<Enhancement> it = enhancements.iterator();
-		while (it.hasNext()) {
-			final Enhancement next = it.next();
-			if (next.getUri().equals(URI)) {
-				enhancements.remove(next);
-				return next;
-			}
-		}
-
-		return null;
-	}
-
-	private void removeEntityAnnotation(final Resource entityAnnotation) {
-		final List<Statement> list = entityAnnotation.listProperties().toList();
-		for (final Statement nextStatement : list) {
-			enhancementGraph.remove(nextStatement);
-		}
-	}
-
 	// /**
 	// * For each {@link TextAnnotation}, remove all {@link EntityAnnotation}s
 	// with a confidence lower than the higher one
@@ -636,18 +821,4 @@ public class EnhancementStructure {
 	// for (Annotation e : toBeRemoved)
 	// this.removeEnhancement(e.getUri());
 	// }
-
-	private void removeTextAnnotation(final Resource enhancement) {
-		final ResIterator entityIterator = enhancementGraph
-				.listSubjectsWithProperty(DC_11.relation, enhancement);
-		while (entityIterator.hasNext()) {
-			removeEntityAnnotation(entityIterator.next());
-		}
-
-		final List<Statement> list = enhancement.listProperties().toList();
-		for (final Statement nextStatement : list) {
-			enhancementGraph.remove(nextStatement);
-		}
-
-	}
 }
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.enhancer.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.stanbol.client.enhancer.model.Annotation;
+
+/**
+ * Flyweight view over an {@link Annotation} record stored in an
+ * {@link OffHeapAnnotationStore}. A view can be moved over different records,
+ * so instances returned by the store iterators must not be kept once the
+ * iteration goes on
+ */
+public abstract class AnnotationRecord {
+
+	/* Record layout shared by all the annotations */
+	static final int KIND = 0;
+	static final int FLAGS = 4;
+	static final int URI = 8;
+	static final int CREATED = 12;
+	static final int CREATOR = 16;
+	static final int EXTRACTED_FROM = 20;
+	static final int CONFIDENCE = 24;
+	static final int RELATION_COUNT = 32;
+	static final int HEADER_LENGTH = 36;
+
+	/* Flags for nullable numeric values */
+	static final int HAS_CONFIDENCE = 1;
+	static final int HAS_START = 1 << 1;
+	static final int HAS_END = 1 << 2;
+	static final int HAS_SENTIMENT = 1 << 3;
+	static final int HAS_POSITIVE_SENTIMENT = 1 << 4;
+	static final int HAS_NEGATIVE_SENTIMENT = 1 << 5;
+
+	private final OffHeapStringDictionary dictionary;
+
+	ByteBuffer slab;
+
+	int offset;
+
+	AnnotationRecord(final OffHeapStringDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	void wrap(final ByteBuffer slab, final int offset) {
+		this.slab = slab;
+		this.offset = offset;
+	}
+
+	/**
+	 * Offset of the relation ids from the beginning of the record
+	 */
+	abstract int relationsOffset();
+
+	/**
+	 * Get resource URI
+	 *
+	 * @return Resource URI
+	 */
+	public String getUri() {
+		return string(URI);
+	}
+
+	/**
+	 * Get the dc:created property
+	 *
+	 * @return dc:created property
+	 */
+	public String getCreated() {
+		return string(CREATED);
+	}
+
+	/**
+	 * Get the dc:creator property
+	 *
+	 * @return dc:creator property
+	 */
+	public String getCreator() {
+		return string(CREATOR);
+	}
+
+	/**
+	 * Get the fise:extracted-from property
+	 *
+	 * @return fise:extracted-from property
+	 */
+	public String getExtractedFrom() {
+		return string(EXTRACTED_FROM);
+	}
+
+	/**
+	 * Get the fise:confidence property
+	 *
+	 * @return fise:confidence property
+	 */
+	public Double getConfidence() {
+		return doubleValue(CONFIDENCE, HAS_CONFIDENCE);
+	}
+
+	/**
+	 * Get the URIs of the dc:relation property. Relations are stored by URI
+	 * instead of as Enhancement objects
+	 *
+	 * @return dc:relation URIs
+	 */
+	public List<String> getRelationUris() {
+		return strings(RELATION_COUNT, relationsOffset());
+	}
+
+	String string(final int field) {
+		return dictionary.get(slab.getInt(offset + field));
+	}
+
+	List<String> strings(final int countField, final int from) {
+		final int count = slab.getInt(offset + countField);
+		if (count == 0) {
+			return Collections.emptyList();
+		}
+		final List<String> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(dictionary.get(slab.getInt(offset + from + 4 * i)));
+		}
+		return result;
+	}
+
+	Double doubleValue(final int field, final int flag) {
+		return hasFlag(flag) ? slab.getDouble(offset + field) : null;
+	}
+
+	Long longValue(final int field, final int flag) {
+		return hasFlag(flag) ? slab.getLong(offset + field) : null;
+	}
+
+	private boolean hasFlag(final int flag) {
+		return (slab.getInt(offset + FLAGS) & flag) != 0;
+	}
+}
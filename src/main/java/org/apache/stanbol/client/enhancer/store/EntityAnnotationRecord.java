@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.enhancer.store;
+
+import java.util.List;
+
+import org.apache.stanbol.client.enhancer.model.EntityAnnotation;
+
+/**
+ * Flyweight view over an {@link EntityAnnotation} record stored in an
+ * {@link OffHeapAnnotationStore}, exposing the same getters
+ */
+public class EntityAnnotationRecord extends AnnotationRecord {
+
+	static final int KIND_VALUE = 1;
+
+	/* Entity Annotation fields layout */
+	static final int ENTITY_LABEL = HEADER_LENGTH;
+	static final int ENTITY_REFERENCE = HEADER_LENGTH + 4;
+	static final int SITE = HEADER_LENGTH + 8;
+	static final int TYPE_COUNT = HEADER_LENGTH + 12;
+	static final int FIXED_LENGTH = HEADER_LENGTH + 16;
+
+	EntityAnnotationRecord(final OffHeapStringDictionary dictionary) {
+		super(dictionary);
+	}
+
+	@Override
+	int relationsOffset() {
+		return FIXED_LENGTH + 4 * Math.max(0, slab.getInt(offset + TYPE_COUNT));
+	}
+
+	/**
+	 * Get the fise:entity-label property
+	 *
+	 * @return fise:entity-label property
+	 */
+	public String getEntityLabel() {
+		return string(ENTITY_LABEL);
+	}
+
+	/**
+	 * Get the fise:entity-reference property
+	 *
+	 * @return fise:entity-reference property
+	 */
+	public String getEntityReference() {
+		return string(ENTITY_REFERENCE);
+	}
+
+	/**
+	 * Get the fise:entity-type property
+	 *
+	 * @return fise:entity-type property
+	 */
+	public List<String> getEntityTypes() {
+		// A negative count keeps the null value of annotations without types
+		if (slab.getInt(offset + TYPE_COUNT) < 0) {
+			return null;
+		}
+		return strings(TYPE_COUNT, FIXED_LENGTH);
+	}
+
+	/**
+	 * Get the fise:site property
+	 *
+	 * @return fise:site property
+	 */
+	public String getSite() {
+		return string(SITE);
+	}
+}
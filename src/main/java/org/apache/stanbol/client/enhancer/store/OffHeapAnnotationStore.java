@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.enhancer.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.stanbol.client.enhancer.model.Annotation;
+import org.apache.stanbol.client.enhancer.model.Enhancement;
+import org.apache.stanbol.client.enhancer.model.EnhancementStructure;
+import org.apache.stanbol.client.enhancer.model.EntityAnnotation;
+import org.apache.stanbol.client.enhancer.model.TextAnnotation;
+
+/**
+ * Store keeping {@link TextAnnotation}s and {@link EntityAnnotation}s out of
+ * the Java heap. Annotations are serialized into direct {@link ByteBuffer}
+ * slabs, with all their strings deduplicated in an
+ * {@link OffHeapStringDictionary}, and they are read back through flyweight
+ * {@link TextAnnotationRecord} and {@link EntityAnnotationRecord} views. Heap
+ * usage stays flat no matter how many annotations are stored, which makes this
+ * store suitable for keeping the results of very large batch enhancements for
+ * cross-document analysis.
+ * <p>
+ * The store is append-only and it is not thread safe for writing. Concurrent
+ * reads are safe once all the annotations have been added
+ */
+public class OffHeapAnnotationStore {
+
+	/**
+	 * Default slab size: 4 MB
+	 */
+	public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final OffHeapSlabs slabs;
+
+	private final OffHeapStringDictionary dictionary;
+
+	private long[] textAnnotations = new long[INITIAL_CAPACITY];
+
+	private int textAnnotationCount = 0;
+
+	private long[] entityAnnotations = new long[INITIAL_CAPACITY];
+
+	private int entityAnnotationCount = 0;
+
+	/**
+	 * Create a store using slabs of {@link #DEFAULT_SLAB_SIZE} bytes
+	 */
+	public OffHeapAnnotationStore() {
+		this(DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param slabSize
+	 *            Size in bytes of the off-heap slabs
+	 */
+	public OffHeapAnnotationStore(final int slabSize) {
+		this.slabs = new OffHeapSlabs(slabSize);
+		this.dictionary = new OffHeapStringDictionary(slabSize);
+	}
+
+	/**
+	 * Add all the {@link TextAnnotation}s and {@link EntityAnnotation}s of an
+	 * {@link EnhancementStructure} to the store
+	 *
+	 * @param structure
+	 *            {@link EnhancementStructure} to be stored
+	 */
+	public void add(final EnhancementStructure structure) {
+		for (final Enhancement enhancement : structure.getEnhancements()) {
+			if (enhancement instanceof TextAnnotation) {
+				add((TextAnnotation) enhancement);
+			} else if (enhancement instanceof EntityAnnotation) {
+				add((EntityAnnotation) enhancement);
+			}
+		}
+	}
+
+	/**
+	 * Add a {@link TextAnnotation} to the store
+	 *
+	 * @param ta
+	 *            {@link TextAnnotation} to be stored
+	 * @return Index of the stored record
+	 */
+	public int add(final TextAnnotation ta) {
+		final int[] relations = relationIds(ta.getRelation());
+		final long position = slabs.allocate(TextAnnotationRecord.FIXED_LENGTH
+				+ 4 * relations.length);
+		final ByteBuffer slab = slabs.slab(position);
+		final int offset = OffHeapSlabs.offset(position);
+
+		int flags = writeHeader(slab, offset, TextAnnotationRecord.KIND_VALUE,
+				ta, relations.length);
+		slab.putInt(offset + TextAnnotationRecord.TYPE,
+				dictionary.add(ta.getType()));
+		slab.putInt(offset + TextAnnotationRecord.SELECTED_TEXT,
+				dictionary.add(ta.getSelectedText()));
+		slab.putInt(offset + TextAnnotationRecord.SELECTION_CONTEXT,
+				dictionary.add(ta.getSelectionContext()));
+		slab.putInt(offset + TextAnnotationRecord.LANGUAGE,
+				dictionary.add(ta.getLanguage()));
+		if (ta.getStart() != null) {
+			flags |= AnnotationRecord.HAS_START;
+			slab.putLong(offset + TextAnnotationRecord.START, ta.getStart());
+		}
+		if (ta.getEnd() != null) {
+			flags |= AnnotationRecord.HAS_END;
+			slab.putLong(offset + TextAnnotationRecord.END, ta.getEnd());
+		}
+		if (ta.getSentiment() != null) {
+			flags |= AnnotationRecord.HAS_SENTIMENT;
+			slab.putDouble(offset + TextAnnotationRecord.SENTIMENT,
+					ta.getSentiment());
+		}
+		if (ta.getPositiveSentiment() != null) {
+			flags |= AnnotationRecord.HAS_POSITIVE_SENTIMENT;
+			slab.putDouble(offset + TextAnnotationRecord.POSITIVE_SENTIMENT,
+					ta.getPositiveSentiment());
+		}
+		if (ta.getNegativeSentiment() != null) {
+			flags |= AnnotationRecord.HAS_NEGATIVE_SENTIMENT;
+			slab.putDouble(offset + TextAnnotationRecord.NEGATIVE_SENTIMENT,
+					ta.getNegativeSentiment());
+		}
+		slab.putInt(offset + AnnotationRecord.FLAGS, flags);
+		writeIds(slab, offset + TextAnnotationRecord.FIXED_LENGTH, relations);
+
+		if (textAnnotationCount == textAnnotations.length) {
+			textAnnotations = Arrays.copyOf(textAnnotations,
+					textAnnotations.length * 2);
+		}
+		textAnnotations[textAnnotationCount] = position;
+		return textAnnotationCount++;
+	}
+
+	/**
+	 * Add an {@link EntityAnnotation} to the store
+	 *
+	 * @param ea
+	 *            {@link EntityAnnotation} to be stored
+	 * @return Index of the stored record
+	 */
+	public int add(final EntityAnnotation ea) {
+		final int[] relations = relationIds(ea.getRelation());
+		final List<String> entityTypes = ea.getEntityTypes();
+		final int[] types = new int[entityTypes == null ? 0 : entityTypes
+				.size()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = dictionary.add(entityTypes.get(i));
+		}
+
+		final long position = slabs
+				.allocate(EntityAnnotationRecord.FIXED_LENGTH + 4
+						* (types.length + relations.length));
+		final ByteBuffer slab = slabs.slab(position);
+		final int offset = OffHeapSlabs.offset(position);
+
+		final int flags = writeHeader(slab, offset,
+				EntityAnnotationRecord.KIND_VALUE, ea, relations.length);
+		slab.putInt(offset + AnnotationRecord.FLAGS, flags);
+		slab.putInt(offset + EntityAnnotationRecord.ENTITY_LABEL,
+				dictionary.add(ea.getEntityLabel()));
+		slab.putInt(offset + EntityAnnotationRecord.ENTITY_REFERENCE,
+				dictionary.add(ea.getEntityReference()));
+		slab.putInt(offset + EntityAnnotationRecord.SITE,
+				dictionary.add(ea.getSite()));
+		slab.putInt(offset + EntityAnnotationRecord.TYPE_COUNT,
+				entityTypes == null ? -1 : types.length);
+		writeIds(slab, offset + EntityAnnotationRecord.FIXED_LENGTH, types);
+		writeIds(slab, offset + EntityAnnotationRecord.FIXED_LENGTH + 4
+				* types.length, relations);
+
+		if (entityAnnotationCount == entityAnnotations.length) {
+			entityAnnotations = Arrays.copyOf(entityAnnotations,
+					entityAnnotations.length * 2);
+		}
+		entityAnnotations[entityAnnotationCount] = position;
+		return entityAnnotationCount++;
+	}
+
+	/**
+	 * Get the number of stored {@link TextAnnotation}s
+	 *
+	 * @return Number of {@link TextAnnotation}s
+	 */
+	public int getTextAnnotationCount() {
+		return textAnnotationCount;
+	}
+
+	/**
+	 * Get the number of stored {@link EntityAnnotation}s
+	 *
+	 * @return Number of {@link EntityAnnotation}s
+	 */
+	public int getEntityAnnotationCount() {
+		return entityAnnotationCount;
+	}
+
+	/**
+	 * Create a new {@link TextAnnotationRecord} view, to be positioned with
+	 * {@link #getTextAnnotation(int, TextAnnotationRecord)}
+	 *
+	 * @return Unpositioned {@link TextAnnotationRecord}
+	 */
+	public TextAnnotationRecord newTextAnnotationRecord() {
+		return new TextAnnotationRecord(dictionary);
+	}
+
+	/**
+	 * Create a new {@link EntityAnnotationRecord} view, to be positioned with
+	 * {@link #getEntityAnnotation(int, EntityAnnotationRecord)}
+	 *
+	 * @return Unpositioned {@link EntityAnnotationRecord}
+	 */
+	public EntityAnnotationRecord newEntityAnnotationRecord() {
+		return new EntityAnnotationRecord(dictionary);
+	}
+
+	/**
+	 * Position a {@link TextAnnotationRecord} view over a stored record
+	 *
+	 * @param index
+	 *            Index of the record, as returned by
+	 *            {@link #add(TextAnnotation)}
+	 * @param reuse
+	 *            View to be positioned
+	 * @return The passed view
+	 */
+	public TextAnnotationRecord getTextAnnotation(final int index,
+			final TextAnnotationRecord reuse) {
+		if (index < 0 || index >= textAnnotationCount) {
+			throw new IndexOutOfBoundsException("No Text Annotation at index "
+					+ index);
+		}
+		final long position = textAnnotations[index];
+		reuse.wrap(slabs.slab(position), OffHeapSlabs.offset(position));
+		return reuse;
+	}
+
+	/**
+	 * Position an {@link EntityAnnotationRecord} view over a stored record
+	 *
+	 * @param index
+	 *            Index of the record, as returned by
+	 *            {@link #add(EntityAnnotation)}
+	 * @param reuse
+	 *            View to be positioned
+	 * @return The passed view
+	 */
+	public EntityAnnotationRecord getEntityAnnotation(final int index,
+			final EntityAnnotationRecord reuse) {
+		if (index < 0 || index >= entityAnnotationCount) {
+			throw new IndexOutOfBoundsException(
+					"No Entity Annotation at index " + index);
+		}
+		final long position = entityAnnotations[index];
+		reuse.wrap(slabs.slab(position), OffHeapSlabs.offset(position));
+		return reuse;
+	}
+
+	/**
+	 * Iterate over the stored {@link TextAnnotation}s. The iterator returns
+	 * the same flyweight view positioned over every record
+	 *
+	 * @return {@link Iterator} of {@link TextAnnotationRecord}s
+	 */
+	public Iterator<TextAnnotationRecord> textAnnotations() {
+		final TextAnnotationRecord view = newTextAnnotationRecord();
+		return new RecordIterator<TextAnnotationRecord>(textAnnotationCount) {
+			@Override
+			TextAnnotationRecord get(final int index) {
+				return getTextAnnotation(index, view);
+			}
+		};
+	}
+
+	/**
+	 * Iterate over the stored {@link EntityAnnotation}s. The iterator returns
+	 * the same flyweight view positioned over every record
+	 *
+	 * @return {@link Iterator} of {@link EntityAnnotationRecord}s
+	 */
+	public Iterator<EntityAnnotationRecord> entityAnnotations() {
+		final EntityAnnotationRecord view = newEntityAnnotationRecord();
+		return new RecordIterator<EntityAnnotationRecord>(entityAnnotationCount) {
+			@Override
+			EntityAnnotationRecord get(final int index) {
+				return getEntityAnnotation(index, view);
+			}
+		};
+	}
+
+	/**
+	 * Get the number of off-heap bytes allocated by the store, including its
+	 * string dictionary
+	 *
+	 * @return Allocated bytes
+	 */
+	public long getAllocatedBytes() {
+		return slabs.getAllocatedBytes() + dictionary.getAllocatedBytes();
+	}
+
+	/**
+	 * Remove all the annotations from the store. Views obtained before
+	 * clearing the store must not be used anymore
+	 */
+	public void clear() {
+		slabs.clear();
+		dictionary.clear();
+		textAnnotations = new long[INITIAL_CAPACITY];
+		textAnnotationCount = 0;
+		entityAnnotations = new long[INITIAL_CAPACITY];
+		entityAnnotationCount = 0;
+	}
+
+	private int writeHeader(final ByteBuffer slab, final int offset,
+			final int kind, final Annotation annotation,
+			final int relationCount) {
+		int flags = 0;
+		slab.putInt(offset + AnnotationRecord.KIND, kind);
+		slab.putInt(offset + AnnotationRecord.URI,
+				dictionary.add(annotation.getUri()));
+		slab.putInt(offset + AnnotationRecord.CREATED,
+				dictionary.add(annotation.getCreated()));
+		slab.putInt(offset + AnnotationRecord.CREATOR,
+				dictionary.add(annotation.getCreator()));
+		slab.putInt(offset + AnnotationRecord.EXTRACTED_FROM,
+				dictionary.add(annotation.getExtractedFrom()));
+		if (annotation.getConfidence() != null) {
+			flags |= AnnotationRecord.HAS_CONFIDENCE;
+			slab.putDouble(offset + AnnotationRecord.CONFIDENCE,
+					annotation.getConfidence());
+		}
+		slab.putInt(offset + AnnotationRecord.RELATION_COUNT, relationCount);
+		return flags;
+	}
+
+	private int[] relationIds(final Collection<Enhancement> relations) {
+		if (relations == null) {
+			return new int[0];
+		}
+		final int[] result = new int[relations.size()];
+		int i = 0;
+		for (final Enhancement relation : relations) {
+			if (relation != null) {
+				result[i++] = dictionary.add(relation.getUri());
+			}
+		}
+		return i == result.length ? result : Arrays.copyOf(result, i);
+	}
+
+	private static void writeIds(final ByteBuffer slab, final int offset,
+			final int[] ids) {
+		for (int i = 0; i < ids.length; i++) {
+			slab.putInt(offset + 4 * i, ids[i]);
+		}
+	}
+
+	private abstract static class RecordIterator<T> implements Iterator<T> {
+
+		private final int count;
+
+		private int next = 0;
+
+		RecordIterator(final int count) {
+			this.count = count;
+		}
+
+		abstract T get(int index);
+
+		@Override
+		public boolean hasNext() {
+			return next < count;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return get(next++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException(
+					"Off-heap annotation stores are append-only");
+		}
+	}
+}
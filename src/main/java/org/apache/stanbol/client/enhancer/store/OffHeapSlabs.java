@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.enhancer.store;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only sequence of direct {@link ByteBuffer} slabs. Every record is
+ * written inside a single slab and addressed by a <code>long</code> position
+ * combining the slab index (high 32 bits) and the offset within the slab (low
+ * 32 bits). Records bigger than the slab size get a dedicated slab
+ */
+class OffHeapSlabs {
+
+	private final int slabSize;
+
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+
+	private ByteBuffer current;
+
+	private long allocated = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param slabSize
+	 *            Size in bytes of every regular slab
+	 */
+	OffHeapSlabs(final int slabSize) {
+		if (slabSize <= 0) {
+			throw new IllegalArgumentException("Slab size must be positive");
+		}
+		this.slabSize = slabSize;
+	}
+
+	/**
+	 * Reserve <code>length</code> bytes for a new record
+	 *
+	 * @param length
+	 *            Record length in bytes
+	 * @return Position of the reserved record
+	 */
+	long allocate(final int length) {
+		if (current == null || current.remaining() < length) {
+			current = ByteBuffer.allocateDirect(Math.max(slabSize, length));
+			slabs.add(current);
+			allocated += current.capacity();
+		}
+		final long position = ((long) (slabs.size() - 1) << 32)
+				| current.position();
+		current.position(current.position() + length);
+		return position;
+	}
+
+	/**
+	 * Get the slab holding the record at <code>position</code>. Reads and
+	 * writes must use absolute offsets obtained through {@link #offset(long)}
+	 *
+	 * @param position
+	 *            Record position
+	 * @return Slab {@link ByteBuffer}
+	 */
+	ByteBuffer slab(final long position) {
+		return slabs.get((int) (position >>> 32));
+	}
+
+	/**
+	 * Get the offset of the record at <code>position</code> within its slab
+	 *
+	 * @param position
+	 *            Record position
+	 * @return Offset within the slab
+	 */
+	static int offset(final long position) {
+		return (int) position;
+	}
+
+	/**
+	 * Get the total number of off-heap bytes allocated
+	 *
+	 * @return Allocated bytes
+	 */
+	long getAllocatedBytes() {
+		return allocated;
+	}
+
+	/**
+	 * Release all slabs. Direct memory is given back once the slabs are
+	 * garbage collected
+	 */
+	void clear() {
+		slabs.clear();
+		current = null;
+		allocated = 0;
+	}
+}
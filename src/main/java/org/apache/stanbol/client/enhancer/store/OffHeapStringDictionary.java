@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.enhancer.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * String dictionary storing every distinct string once in off-heap slabs.
+ * Strings are identified by an <code>int</code> id. The only on-heap state are
+ * primitive arrays (an open addressing hash table, the positions and the hashes
+ * of the strings), so the garbage collector has no object graph to trace
+ * regardless of the number of strings
+ */
+public class OffHeapStringDictionary {
+
+	/**
+	 * Id used for <code>null</code> strings
+	 */
+	public static final int NULL_ID = -1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final OffHeapSlabs slabs;
+
+	/*
+	 * Open addressing table of (id + 1). 0 means empty slot
+	 */
+	private int[] table = new int[INITIAL_CAPACITY * 2];
+
+	private long[] positions = new long[INITIAL_CAPACITY];
+
+	private int[] hashes = new int[INITIAL_CAPACITY];
+
+	private int size = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param slabSize
+	 *            Size in bytes of the off-heap slabs
+	 */
+	public OffHeapStringDictionary(final int slabSize) {
+		this.slabs = new OffHeapSlabs(slabSize);
+	}
+
+	/**
+	 * Get the id of a string, adding it to the dictionary if needed
+	 *
+	 * @param value
+	 *            String to be added
+	 * @return String id or {@link #NULL_ID} for <code>null</code> values
+	 */
+	public int add(final String value) {
+		if (value == null) {
+			return NULL_ID;
+		}
+
+		final byte[] bytes = value.getBytes(UTF8);
+		final int hash = value.hashCode();
+		int slot = slot(hash, table.length);
+		while (table[slot] != 0) {
+			final int id = table[slot] - 1;
+			if (hashes[id] == hash && matches(id, bytes)) {
+				return id;
+			}
+			slot = (slot + 1) & (table.length - 1);
+		}
+
+		final int id = size++;
+		ensureCapacity(size);
+		final long position = slabs.allocate(4 + bytes.length);
+		final ByteBuffer slab = slabs.slab(position);
+		final int offset = OffHeapSlabs.offset(position);
+		slab.putInt(offset, bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			slab.put(offset + 4 + i, bytes[i]);
+		}
+		positions[id] = position;
+		hashes[id] = hash;
+		table[slot] = id + 1;
+
+		if (size * 2 > table.length) {
+			rehash();
+		}
+
+		return id;
+	}
+
+	/**
+	 * Get a string by its id
+	 *
+	 * @param id
+	 *            String id
+	 * @return String value or <code>null</code> for {@link #NULL_ID}
+	 */
+	public String get(final int id) {
+		if (id == NULL_ID) {
+			return null;
+		}
+		if (id < 0 || id >= size) {
+			throw new IllegalArgumentException("Unknown string id " + id);
+		}
+
+		final ByteBuffer slab = slabs.slab(positions[id]);
+		final int offset = OffHeapSlabs.offset(positions[id]);
+		final byte[] bytes = new byte[slab.getInt(offset)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = slab.get(offset + 4 + i);
+		}
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Get the number of distinct strings in the dictionary
+	 *
+	 * @return Number of strings
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get the number of off-heap bytes allocated by the dictionary
+	 *
+	 * @return Allocated bytes
+	 */
+	public long getAllocatedBytes() {
+		return slabs.getAllocatedBytes();
+	}
+
+	/**
+	 * Remove all the strings from the dictionary
+	 */
+	public void clear() {
+		slabs.clear();
+		table = new int[INITIAL_CAPACITY * 2];
+		positions = new long[INITIAL_CAPACITY];
+		hashes = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	private boolean matches(final int id, final byte[] bytes) {
+		final ByteBuffer slab = slabs.slab(positions[id]);
+		final int offset = OffHeapSlabs.offset(positions[id]);
+		if (slab.getInt(offset) != bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (slab.get(offset + 4 + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity > positions.length) {
+			final int newLength = positions.length * 2;
+			positions = Arrays.copyOf(positions, newLength);
+			hashes = Arrays.copyOf(hashes, newLength);
+		}
+	}
+
+	private void rehash() {
+		final int[] newTable = new int[table.length * 2];
+		for (int id = 0; id < size; id++) {
+			int slot = slot(hashes[id], newTable.length);
+			while (newTable[slot] != 0) {
+				slot = (slot + 1) & (newTable.length - 1);
+			}
+			newTable[slot] = id + 1;
+		}
+		table = newTable;
+	}
+
+	private static int slot(final int hash, final int length) {
+		// Spread the bits as HashMap does, the String hash is weak on the low
+		// bits for URIs sharing long prefixes
+		final int h = hash ^ (hash >>> 16);
+		return h & (length - 1);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.enhancer.store;
+
+import org.apache.stanbol.client.enhancer.model.TextAnnotation;
+
+/**
+ * Flyweight view over a {@link TextAnnotation} record stored in an
+ * {@link OffHeapAnnotationStore}, exposing the same getters
+ */
+public class TextAnnotationRecord extends AnnotationRecord {
+
+	static final int KIND_VALUE = 0;
+
+	/* Text Annotation fields layout */
+	static final int TYPE = HEADER_LENGTH;
+	static final int SELECTED_TEXT = HEADER_LENGTH + 4;
+	static final int SELECTION_CONTEXT = HEADER_LENGTH + 8;
+	static final int LANGUAGE = HEADER_LENGTH + 12;
+	static final int START = HEADER_LENGTH + 16;
+	static final int END = HEADER_LENGTH + 24;
+	static final int SENTIMENT = HEADER_LENGTH + 32;
+	static final int POSITIVE_SENTIMENT = HEADER_LENGTH + 40;
+	static final int NEGATIVE_SENTIMENT = HEADER_LENGTH + 48;
+	static final int FIXED_LENGTH = HEADER_LENGTH + 56;
+
+	TextAnnotationRecord(final OffHeapStringDictionary dictionary) {
+		super(dictionary);
+	}
+
+	@Override
+	int relationsOffset() {
+		return FIXED_LENGTH;
+	}
+
+	/**
+	 * Get the dc:type property
+	 *
+	 * @return dc:type property
+	 */
+	public String getType() {
+		return string(TYPE);
+	}
+
+	/**
+	 * Get the fise:selected-text property
+	 *
+	 * @return fise:selected-text property
+	 */
+	public String getSelectedText() {
+		return string(SELECTED_TEXT);
+	}
+
+	/**
+	 * Get the fise:selection-context property
+	 *
+	 * @return fise:selection-context property
+	 */
+	public String getSelectionContext() {
+		return string(SELECTION_CONTEXT);
+	}
+
+	/**
+	 * Get the fise:start property
+	 *
+	 * @return fise:start property
+	 */
+	public Long getStart() {
+		return longValue(START, HAS_START);
+	}
+
+	/**
+	 * Get the fise:end property
+	 *
+	 * @return fise:end property
+	 */
+	public Long getEnd() {
+		return longValue(END, HAS_END);
+	}
+
+	/**
+	 * Get dc:language property
+	 *
+	 * @return dc:language property
+	 */
+	public String getLanguage() {
+		return string(LANGUAGE);
+	}
+
+	/**
+	 * Get the fise:positive-sentiment property
+	 *
+	 * @return fise:positive-sentiment property
+	 */
+	public Double getPositiveSentiment() {
+		return doubleValue(POSITIVE_SENTIMENT, HAS_POSITIVE_SENTIMENT);
+	}
+
+	/**
+	 * Get the fise:negative-sentiment property
+	 *
+	 * @return fise:negative-sentiment property
+	 */
+	public Double getNegativeSentiment() {
+		return doubleValue(NEGATIVE_SENTIMENT, HAS_NEGATIVE_SENTIMENT);
+	}
+
+	/**
+	 * Get the fise:sentiment property
+	 *
+	 * @return fise:sentiment property
+	 */
+	public Double getSentiment() {
+		return doubleValue(SENTIMENT, HAS_SENTIMENT);
+	}
+}
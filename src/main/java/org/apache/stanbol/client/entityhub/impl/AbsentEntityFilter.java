@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Filter rejecting locally the requests for entities known not to exist. It
+ * combines a short lived cache of ids for which the server answered 404 and
+ * optional per site Bloom filters preloaded with the ids of all the entities
+ * of a site: an id not contained in the Bloom filter of a site is guaranteed
+ * not to exist in that site
+ */
+class AbsentEntityFilter {
+
+	/**
+	 * Bloom filters key for the EntityHub itself
+	 */
+	private static final String LOCAL_SITE = "";
+
+	private final Cache<EntityCache.Key, Boolean> negativeCache;
+
+	private final ConcurrentMap<String, BloomFilter<CharSequence>> filters = new ConcurrentHashMap<>();
+
+	private final AtomicLong negativeHits = new AtomicLong();
+
+	private final AtomicLong filterRejections = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maximumSize
+	 *            Maximum number of ids kept in the negative cache. Zero
+	 *            disables the negative cache
+	 * @param expireAfterWrite
+	 *            Time to live of the negative cache entries
+	 * @param unit
+	 *            Time unit of <code>expireAfterWrite</code>
+	 */
+	AbsentEntityFilter(final long maximumSize, final long expireAfterWrite,
+			final TimeUnit unit) {
+		if (maximumSize > 0) {
+			this.negativeCache = CacheBuilder.newBuilder()
+					.maximumSize(maximumSize)
+					.expireAfterWrite(expireAfterWrite, unit).build();
+		} else {
+			this.negativeCache = null;
+		}
+	}
+
+	/**
+	 * Check whether an entity is known not to exist
+	 *
+	 * @param key
+	 *            Entity {@link EntityCache.Key}
+	 * @return true if the entity does not exist
+	 */
+	boolean isAbsent(final EntityCache.Key key) {
+		if (!key.isLookup() && !filters.isEmpty()) {
+			final BloomFilter<CharSequence> filter = filters.get(siteOf(key));
+			if (filter != null) {
+				final boolean mightContain;
+				synchronized (filter) {
+					mightContain = filter.mightContain(key.getId());
+				}
+				if (!mightContain) {
+					filterRejections.incrementAndGet();
+					return true;
+				}
+			}
+		}
+
+		if (negativeCache != null && negativeCache.getIfPresent(key) != null) {
+			negativeHits.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Record that the server could not find an entity
+	 *
+	 * @param key
+	 *            Entity {@link EntityCache.Key}
+	 */
+	void recordAbsent(final EntityCache.Key key) {
+		if (negativeCache != null) {
+			negativeCache.put(key, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Replace the Bloom filter of a site with one containing the passed ids
+	 *
+	 * @param site
+	 *            Referenced site, null for the EntityHub itself
+	 * @param ids
+	 *            Ids of all the entities of the site
+	 * @param expectedInsertions
+	 *            Expected number of ids
+	 * @param fpp
+	 *            False positive probability
+	 */
+	void preload(final String site, final Iterable<String> ids,
+			final int expectedInsertions, final double fpp) {
+		final BloomFilter<CharSequence> filter = BloomFilter.create(
+				Funnels.stringFunnel(), Math.max(1, expectedInsertions), fpp);
+		for (final String id : ids) {
+			filter.put(id);
+		}
+		filters.put(site == null ? LOCAL_SITE : site, filter);
+	}
+
+	/**
+	 * Remove the Bloom filter of a site
+	 *
+	 * @param site
+	 *            Referenced site, null for the EntityHub itself
+	 */
+	void clearFilter(final String site) {
+		filters.remove(site == null ? LOCAL_SITE : site);
+	}
+
+	/**
+	 * Forget that an EntityHub entity is absent, after it has been created or
+	 * updated
+	 *
+	 * @param id
+	 *            Entity id
+	 */
+	void invalidateLocal(final String id) {
+		final BloomFilter<CharSequence> filter = filters.get(LOCAL_SITE);
+		if (filter != null) {
+			synchronized (filter) {
+				filter.put(id);
+			}
+		}
+		if (negativeCache != null) {
+			negativeCache.invalidate(new EntityCache.Key(null, id, false));
+			negativeCache.invalidate(new EntityCache.Key(null, id, true));
+		}
+	}
+
+	/**
+	 * Forget all the EntityHub absent entities. The EntityHub Bloom filter is
+	 * dropped since the created ids are unknown
+	 */
+	void invalidateLocal() {
+		filters.remove(LOCAL_SITE);
+		if (negativeCache != null) {
+			final Iterator<EntityCache.Key> it = negativeCache.asMap()
+					.keySet().iterator();
+			while (it.hasNext()) {
+				if (it.next().isLocal()) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forget all the absent entities of every site
+	 */
+	void invalidateAll() {
+		if (negativeCache != null) {
+			negativeCache.invalidateAll();
+		}
+	}
+
+	/**
+	 * Get the number of requests answered by the negative cache
+	 *
+	 * @return Negative cache hits
+	 */
+	long getNegativeHitCount() {
+		return negativeHits.get();
+	}
+
+	/**
+	 * Get the number of requests rejected by the Bloom filters
+	 *
+	 * @return Bloom filter rejections
+	 */
+	long getFilterRejectionCount() {
+		return filterRejections.get();
+	}
+
+	private static String siteOf(final EntityCache.Key key) {
+		return key.isLocal() ? LOCAL_SITE : key.getSite();
+	}
+}
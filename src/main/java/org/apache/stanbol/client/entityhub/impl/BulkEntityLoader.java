@@ -0,0 +1,515 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.StatusType;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.stanbol.client.EntityHub;
+import org.apache.stanbol.client.exception.StanbolClientException;
+import org.apache.stanbol.client.rest.RestClientExecutor;
+import org.apache.stanbol.client.services.exception.StanbolServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Quad;
+
+/**
+ * Load large RDF dumps (N-Triples, Turtle, RDF/XML or any other triple
+ * syntax supported by Jena RIOT) into the EntityHub. Quad syntaxes such as
+ * N-Quads or TriG are rejected, as the EntityHub has no notion of named
+ * graphs. The dump is parsed as a stream and its triples are grouped by
+ * subject, so the triples of every entity must be contiguous, as in dumps
+ * sorted by subject. Triples with a blank node subject belong to the entity
+ * referencing that blank node, directly or through other blank nodes, and
+ * are always uploaded in the same batch. They must appear next to the
+ * triples of that entity, before or after them, as written by the usual
+ * serializers; a load with blank nodes not referenced by an adjacent entity
+ * fails. Entities are uploaded in batches
+ * of many entities per POST as N-Triples, with bounded parallelism and
+ * retries of the batches failing with server or connection errors. Memory
+ * use is bounded by the batch size and the parallelism whatever the size of
+ * the dump.
+ * 
+ * When a checkpoint file is configured, the number of entities of the input
+ * loaded so far is recorded after every batch, and a new load of the same
+ * input skips them
+ */
+public class BulkEntityLoader {
+
+	/**
+	 * Receive the progress of a load. It is called from the upload threads
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param entities
+		 *            Entities loaded so far by the current load
+		 * @param triples
+		 *            Triples loaded so far by the current load
+		 * @param entitiesPerSecond
+		 *            Throughput of the current load
+		 */
+		void onProgress(long entities, long triples, double entitiesPerSecond);
+	}
+
+	private static final MediaType N_TRIPLES = new MediaType("text", "rdf+nt");
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(BulkEntityLoader.class);
+
+	private final UriBuilder builder;
+
+	private final BulkLoadConfiguration configuration;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param builder
+	 *            Stanbol endpoint {@link UriBuilder}
+	 * @param configuration
+	 *            {@link BulkLoadConfiguration} of the loader
+	 */
+	public BulkEntityLoader(UriBuilder builder,
+			BulkLoadConfiguration configuration) {
+		this.builder = builder;
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Load a dump file. The RDF syntax is guessed from the file extension,
+	 * N-Triples by default
+	 * 
+	 * @param file
+	 *            Dump file
+	 * @return Number of entities loaded
+	 * @throws IllegalArgumentException
+	 *             If the file extension is the one of a quad syntax
+	 * @throws IOException
+	 * @throws StanbolServiceException
+	 * @throws StanbolClientException
+	 */
+	public long load(File file) throws IOException, StanbolServiceException,
+			StanbolClientException {
+		final Lang lang = RDFLanguages.filenameToLang(file.getName(),
+				Lang.NTRIPLES);
+		try (InputStream in = new BufferedInputStream(new FileInputStream(
+				file), 1 << 16)) {
+			return load(in, lang);
+		}
+	}
+
+	/**
+	 * Load a dump
+	 * 
+	 * @param in
+	 *            Dump stream. It is not closed
+	 * @param lang
+	 *            RDF syntax of the dump
+	 * @return Number of entities loaded
+	 * @throws IllegalArgumentException
+	 *             If the syntax is a quad syntax
+	 * @throws IOException
+	 * @throws StanbolServiceException
+	 * @throws StanbolClientException
+	 */
+	public long load(InputStream in, Lang lang) throws IOException,
+			StanbolServiceException, StanbolClientException {
+		if (RDFLanguages.isQuads(lang)) {
+			throw new IllegalArgumentException("Quad syntax "
+					+ lang.getLabel() + " is not supported, use a triple syntax");
+		}
+		final URI uri = builder.clone().path(EntityHub.STANBOL_ENTITYHUB_PATH)
+				.path("entity").queryParam("update", true).build();
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				configuration.getParallelism(), new ThreadFactoryBuilder()
+						.setDaemon(true).setNameFormat("entityhub-load-%d")
+						.build());
+		final LoadSession session = new LoadSession(uri, executor,
+				readCheckpoint());
+
+		try {
+			RDFDataMgr.parse(session, in, lang);
+			session.flush();
+		} catch (AbortedLoadException e) {
+			// The failure is thrown below
+		} catch (RiotException e) {
+			session.fail(new StanbolClientException("Malformed RDF dump: "
+					+ e.getMessage(), e));
+		} finally {
+			session.await();
+			executor.shutdownNow();
+		}
+		session.rethrowFailure();
+
+		final File checkpoint = configuration.getCheckpointFile();
+		if (checkpoint != null) {
+			Files.deleteIfExists(checkpoint.toPath());
+		}
+		return session.getLoadedEntities();
+	}
+
+	private long readCheckpoint() throws IOException {
+		final File checkpoint = configuration.getCheckpointFile();
+		if (checkpoint == null || !checkpoint.exists()) {
+			return 0;
+		}
+		final String value = new String(Files.readAllBytes(checkpoint
+				.toPath()), StandardCharsets.UTF_8).trim();
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed checkpoint file " + checkpoint);
+		}
+	}
+
+	private void writeCheckpoint(long entities) throws IOException {
+		final Path checkpoint = configuration.getCheckpointFile().toPath();
+		final Path tmp = checkpoint.resolveSibling(checkpoint.getFileName()
+				+ ".tmp");
+		Files.write(tmp, Long.toString(entities)
+				.getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void post(URI uri, final List<Triple> triples)
+			throws StanbolServiceException, StanbolClientException {
+		final StreamingOutput body = new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException {
+				RDFDataMgr.writeTriples(output, triples.iterator());
+			}
+		};
+
+		final Response response = RestClientExecutor.post(uri,
+				javax.ws.rs.client.Entity.entity(body, N_TRIPLES),
+				MediaType.TEXT_XML_TYPE);
+		try {
+			final StatusType statusInfo = response.getStatusInfo();
+			switch (statusInfo.getFamily()) {
+			case CLIENT_ERROR: {
+				throw new StanbolClientException(
+						String.format(
+								"An error occurred loading entities into Stanbol EntityHub: [HTTP %d] %s",
+								statusInfo.getStatusCode(),
+								statusInfo.getReasonPhrase()));
+			}
+			case SUCCESSFUL: {
+				break;
+			}
+			default: {
+				throw new StanbolServiceException(
+						"Error while loading entities into Stanbol EntityHub: [HTTP "
+								+ statusInfo.getStatusCode() + "] "
+								+ statusInfo.getReasonPhrase());
+			}
+			}
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Batch of entities. The triples are released once uploaded
+	 */
+	private static final class Batch {
+		private final long sequence;
+		private final int entities;
+		private final int triples;
+		private final long lastEntity;
+		private List<Triple> body;
+
+		private Batch(long sequence, List<Triple> body, int entities,
+				long lastEntity) {
+			this.sequence = sequence;
+			this.body = body;
+			this.entities = entities;
+			this.triples = body.size();
+			this.lastEntity = lastEntity;
+		}
+	}
+
+	/**
+	 * Thrown from the parser callbacks to stop parsing after a failure
+	 */
+	private static final class AbortedLoadException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Parser sink grouping triples by subject and uploading them in batches
+	 */
+	private final class LoadSession extends StreamRDFBase {
+
+		private final URI uri;
+		private final ExecutorService executor;
+		private final Semaphore permits;
+		private final long skip;
+		private final long start = System.nanoTime();
+
+		// Parser thread state
+		private Node subject = null;
+		private final List<Triple> entity = new ArrayList<Triple>();
+		// Blank nodes referenced by the current entity
+		private final Set<Node> entityBlanks = new HashSet<Node>();
+		// Triples of blank nodes not referenced yet
+		private final Map<Node, List<Triple>> pendingBlanks = new HashMap<Node, List<Triple>>();
+		private List<Triple> batch = new ArrayList<Triple>();
+		private int batchEntities = 0;
+		private long entities = 0;
+		private long sequence = 0;
+
+		// Upload threads state, guarded by this
+		private final Map<Long, Batch> uploaded = new TreeMap<Long, Batch>();
+		private long nextToCommit = 0;
+		private long loadedEntities = 0;
+		private long loadedTriples = 0;
+
+		private volatile Exception failure = null;
+
+		LoadSession(URI uri, ExecutorService executor, long skip) {
+			this.uri = uri;
+			this.executor = executor;
+			this.permits = new Semaphore(configuration.getParallelism());
+			this.skip = skip;
+			if (skip > 0) {
+				logger.info("Resuming bulk load after " + skip + " entities");
+			}
+		}
+
+		@Override
+		public void triple(Triple triple) {
+			if (failure != null) {
+				throw new AbortedLoadException();
+			}
+			final Node next = triple.getSubject();
+			if (next.isBlank() && !entityBlanks.contains(next)) {
+				// Nested blank nodes are written before the triple
+				// referencing them by some serializers
+				List<Triple> pending = pendingBlanks.get(next);
+				if (pending == null) {
+					pending = new ArrayList<Triple>();
+					pendingBlanks.put(next, pending);
+				}
+				pending.add(triple);
+				return;
+			}
+			if (!next.isBlank() && !next.equals(subject)) {
+				endEntity();
+				subject = next;
+			}
+			entity.add(triple);
+			claim(triple.getObject());
+		}
+
+		@Override
+		public void quad(Quad quad) {
+			throw new IllegalArgumentException(
+					"Quads are not supported, use a triple syntax");
+		}
+
+		/**
+		 * Add a blank node referenced by the current entity, and the blank
+		 * nodes it references, to the entity
+		 */
+		private void claim(Node node) {
+			if (!node.isBlank() || !entityBlanks.add(node)) {
+				return;
+			}
+			final List<Triple> pending = pendingBlanks.remove(node);
+			if (pending != null) {
+				for (Triple triple : pending) {
+					entity.add(triple);
+					claim(triple.getObject());
+				}
+			}
+		}
+
+		void flush() {
+			endEntity();
+			if (!pendingBlanks.isEmpty()) {
+				fail(new StanbolClientException(pendingBlanks.size()
+						+ " blank nodes of the dump are not referenced by an adjacent entity"));
+				return;
+			}
+			if (!batch.isEmpty()) {
+				submit();
+			}
+		}
+
+		private void endEntity() {
+			if (entity.isEmpty()) {
+				return;
+			}
+			entities++;
+			if (entities > skip) {
+				batch.addAll(entity);
+				batchEntities++;
+				if (batchEntities >= configuration.getBatchSize()) {
+					submit();
+				}
+			}
+			entity.clear();
+			entityBlanks.clear();
+		}
+
+		private void submit() {
+			final Batch next = new Batch(sequence++, batch, batchEntities,
+					entities);
+			batch = new ArrayList<Triple>();
+			batchEntities = 0;
+
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail(new StanbolClientException("Bulk load interrupted", e));
+				throw new AbortedLoadException();
+			}
+			if (failure != null) {
+				permits.release();
+				throw new AbortedLoadException();
+			}
+
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						upload(next);
+						committed(next);
+					} catch (Exception e) {
+						fail(e);
+					} finally {
+						permits.release();
+					}
+				}
+			});
+		}
+
+		private void upload(Batch next) throws StanbolServiceException,
+				StanbolClientException, InterruptedException {
+			for (int attempt = 0;; attempt++) {
+				try {
+					post(uri, next.body);
+					next.body = null;
+					return;
+				} catch (StanbolServiceException | ProcessingException e) {
+					if (attempt >= configuration.getMaxRetries()) {
+						throw e;
+					}
+					logger.warn("Batch " + next.sequence + " failed, retrying: "
+							+ e.getMessage());
+					Thread.sleep(configuration.getRetryDelayMillis() << attempt);
+				}
+			}
+		}
+
+		private synchronized void committed(Batch next) throws IOException {
+			uploaded.put(next.sequence, next);
+			long lastEntity = -1;
+			Batch done;
+			while ((done = uploaded.remove(nextToCommit)) != null) {
+				nextToCommit++;
+				loadedEntities += done.entities;
+				loadedTriples += done.triples;
+				lastEntity = done.lastEntity;
+			}
+			if (lastEntity < 0) {
+				return;
+			}
+
+			if (configuration.getCheckpointFile() != null) {
+				writeCheckpoint(lastEntity);
+			}
+			final ProgressListener listener = configuration
+					.getProgressListener();
+			if (listener != null) {
+				final double seconds = (System.nanoTime() - start) / 1e9;
+				listener.onProgress(loadedEntities, loadedTriples,
+						loadedEntities / Math.max(seconds, 1e-9));
+			}
+		}
+
+		synchronized void fail(Exception e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+
+		void await() {
+			permits.acquireUninterruptibly(configuration.getParallelism());
+			permits.release(configuration.getParallelism());
+		}
+
+		synchronized long getLoadedEntities() {
+			return loadedEntities;
+		}
+
+		void rethrowFailure() throws IOException, StanbolServiceException,
+				StanbolClientException {
+			final Exception e = failure;
+			if (e == null) {
+				return;
+			} else if (e instanceof StanbolServiceException) {
+				throw (StanbolServiceException) e;
+			} else if (e instanceof StanbolClientException) {
+				throw (StanbolClientException) e;
+			} else if (e instanceof IOException) {
+				throw (IOException) e;
+			} else if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+				throw new StanbolClientException("Bulk load interrupted", e);
+			}
+			throw new StanbolServiceException(
+					"Error while loading entities into Stanbol EntityHub", e);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collect the settings of a {@link BulkEntityLoader}: batching, parallelism,
+ * retries, checkpointing and progress reporting
+ */
+public class BulkLoadConfiguration {
+
+	public static class BulkLoadConfigurationBuilder {
+		private final BulkLoadConfiguration configuration = new BulkLoadConfiguration();
+
+		public BulkLoadConfiguration build() {
+			return configuration;
+		}
+
+		/**
+		 * @param batchSize
+		 *            Number of entities uploaded by a single POST
+		 * @return this builder
+		 */
+		public BulkLoadConfigurationBuilder setBatchSize(final int batchSize) {
+			if (batchSize < 1) {
+				throw new IllegalArgumentException(
+						"Batch size must be positive");
+			}
+			configuration.batchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * @param parallelism
+		 *            Maximum number of batches uploaded at the same time
+		 * @return this builder
+		 */
+		public BulkLoadConfigurationBuilder setParallelism(
+				final int parallelism) {
+			if (parallelism < 1) {
+				throw new IllegalArgumentException(
+						"Parallelism must be positive");
+			}
+			configuration.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * Retry batches failing with server or connection errors. The delay
+		 * is doubled after every attempt
+		 *
+		 * @param maxRetries
+		 *            Maximum number of retries of a batch
+		 * @param retryDelay
+		 *            Delay before the first retry
+		 * @param unit
+		 *            Time unit of <code>retryDelay</code>
+		 * @return this builder
+		 */
+		public BulkLoadConfigurationBuilder setRetries(final int maxRetries,
+				final long retryDelay, final TimeUnit unit) {
+			configuration.maxRetries = maxRetries;
+			configuration.retryDelayMillis = unit.toMillis(retryDelay);
+			return this;
+		}
+
+		/**
+		 * Record in a file the number of entities of the input already
+		 * loaded, so an interrupted load resumes after them
+		 *
+		 * @param checkpointFile
+		 *            Checkpoint file. It is deleted when a load completes
+		 * @return this builder
+		 */
+		public BulkLoadConfigurationBuilder setCheckpointFile(
+				final File checkpointFile) {
+			configuration.checkpointFile = checkpointFile;
+			return this;
+		}
+
+		public BulkLoadConfigurationBuilder setProgressListener(
+				final BulkEntityLoader.ProgressListener listener) {
+			configuration.progressListener = listener;
+			return this;
+		}
+	}
+
+	/**
+	 * Create a new Bulk Load Configuration Builder
+	 *
+	 * @return Created {@link BulkLoadConfigurationBuilder}
+	 */
+	public static BulkLoadConfigurationBuilder builder() {
+		return new BulkLoadConfigurationBuilder();
+	}
+
+	private int batchSize = 500;
+	private int parallelism = 4;
+	private int maxRetries = 3;
+	private long retryDelayMillis = 1000;
+	private File checkpointFile = null;
+	private BulkEntityLoader.ProgressListener progressListener = null;
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public long getRetryDelayMillis() {
+		return retryDelayMillis;
+	}
+
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	public BulkEntityLoader.ProgressListener getProgressListener() {
+		return progressListener;
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.stanbol.client.entityhub.model.Entity;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Near-cache of {@link Entity}s retrieved from the EntityHub, keyed by
+ * referenced site and entity id. The cache is bounded by weight (number of RDF
+ * statements of the entities) and entries expire after a configurable time.
+ * Eviction is delegated to Guava, while admission follows the TinyLFU idea:
+ * once the cache is full, an entity is only admitted if it has been requested
+ * often enough recently, so one-off requests can not flush popular entities.
+ * The cache keeps its own copy of every entity and hands out copies, so
+ * callers can modify the entities they get
+ */
+class EntityCache {
+
+	/**
+	 * Minimum recent frequency required to admit an entity in a full cache
+	 */
+	private static final int ADMISSION_FREQUENCY = 2;
+
+	/**
+	 * Assumed average weight of the cached entities, used to size the
+	 * frequency sketch
+	 */
+	private static final int AVERAGE_WEIGHT = 32;
+
+	/**
+	 * Cache key: referenced site (null for the EntityHub itself, also when
+	 * given as the empty string) and entity id
+	 */
+	static final class Key {
+
+		private final String site;
+
+		private final String id;
+
+		private final boolean lookup;
+
+		Key(final String site, final String id, final boolean lookup) {
+			this.site = Strings.emptyToNull(site);
+			this.id = id;
+			this.lookup = lookup;
+		}
+
+		boolean isLocal() {
+			return site == null;
+		}
+
+		String getSite() {
+			return site;
+		}
+
+		String getId() {
+			return id;
+		}
+
+		boolean isLookup() {
+			return lookup;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(site, id, lookup);
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return lookup == other.lookup && Objects.equal(site, other.site)
+					&& Objects.equal(id, other.id);
+		}
+
+		@Override
+		public String toString() {
+			return (lookup ? "lookup:" : "") + (site == null ? "" : site + ":")
+					+ id;
+		}
+	}
+
+	private final Cache<Key, Entity> cache;
+
+	private final long maximumWeight;
+
+	private final AtomicLong weight = new AtomicLong();
+
+	private final FrequencySketch sketch;
+
+	private final SimpleStatsCounter stats = new SimpleStatsCounter();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maximumWeight
+	 *            Maximum number of RDF statements kept in the cache
+	 * @param expireAfterWrite
+	 *            Time to live of the cached entities
+	 * @param unit
+	 *            Time unit of <code>expireAfterWrite</code>
+	 */
+	EntityCache(final long maximumWeight, final long expireAfterWrite,
+			final TimeUnit unit) {
+		this.maximumWeight = maximumWeight;
+		this.sketch = new FrequencySketch(maximumWeight / AVERAGE_WEIGHT);
+
+		final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+		if (expireAfterWrite > 0) {
+			builder.expireAfterWrite(expireAfterWrite, unit);
+		}
+		// A single segment keeps the weight bound global, so admission
+		// decisions match the actual evictions
+		this.cache = builder.concurrencyLevel(1).maximumWeight(maximumWeight)
+				.weigher(new Weigher<Key, Entity>() {
+					@Override
+					public int weigh(final Key key, final Entity value) {
+						return weightOf(value);
+					}
+				}).removalListener(new RemovalListener<Key, Entity>() {
+					@Override
+					public void onRemoval(
+							final RemovalNotification<Key, Entity> notification) {
+						weight.addAndGet(-weightOf(notification.getValue()));
+						if (notification.getCause() == RemovalCause.SIZE
+								|| notification.getCause() == RemovalCause.EXPIRED) {
+							stats.recordEviction();
+						}
+					}
+				}).build();
+	}
+
+	/**
+	 * Get a cached entity, recording a hit or a miss
+	 *
+	 * @param key
+	 *            Entity {@link Key}
+	 * @return Copy of the cached {@link Entity} or <code>null</code>
+	 */
+	Entity get(final Key key) {
+		sketch.increment(key.hashCode());
+		final Entity entity = cache.getIfPresent(key);
+		if (entity == null) {
+			stats.recordMisses(1);
+			return null;
+		}
+		stats.recordHits(1);
+		return copyOf(entity);
+	}
+
+	/**
+	 * Get a cached entity without recording a hit or a miss nor copying it.
+	 * The returned entity must not be modified
+	 *
+	 * @param key
+	 *            Entity {@link Key}
+	 * @return Cached {@link Entity} or <code>null</code>
+	 */
+	Entity peek(final Key key) {
+		return cache.getIfPresent(key);
+	}
+
+	/**
+	 * Record a successful load from the server, caching the loaded entity if
+	 * it is admitted
+	 *
+	 * @param key
+	 *            Entity {@link Key}
+	 * @param entity
+	 *            Loaded {@link Entity}, might be <code>null</code>. It is not
+	 *            referenced by the cache
+	 * @param loadTime
+	 *            Load time in nanoseconds
+	 */
+	void put(final Key key, final Entity entity, final long loadTime) {
+		stats.recordLoadSuccess(loadTime);
+		if (entity == null) {
+			return;
+		}
+		final int entityWeight = weightOf(entity);
+		if (weight.get() + entityWeight > maximumWeight
+				&& sketch.frequency(key.hashCode()) < ADMISSION_FREQUENCY) {
+			return;
+		}
+		weight.addAndGet(entityWeight);
+		cache.put(key, copyOf(entity));
+	}
+
+	/**
+	 * Record a failed load from the server
+	 *
+	 * @param loadTime
+	 *            Load time in nanoseconds
+	 */
+	void recordLoadException(final long loadTime) {
+		stats.recordLoadException(loadTime);
+	}
+
+	/**
+	 * Invalidate all the EntityHub (not referenced sites) entries of an entity
+	 *
+	 * @param id
+	 *            Entity id
+	 */
+	void invalidateLocal(final String id) {
+		cache.invalidate(new Key(null, id, false));
+		cache.invalidate(new Key(null, id, true));
+	}
+
+	/**
+	 * Invalidate all the EntityHub (not referenced sites) entries
+	 */
+	void invalidateLocal() {
+		final Iterator<Key> it = cache.asMap().keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().isLocal()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Invalidate all the entries
+	 */
+	void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Get the number of cached entities
+	 *
+	 * @return Number of cached entities
+	 */
+	long size() {
+		return cache.size();
+	}
+
+	/**
+	 * Get a snapshot of the cache statistics: hit ratio, load times, evictions
+	 *
+	 * @return {@link CacheStats}
+	 */
+	CacheStats stats() {
+		cache.cleanUp();
+		return stats.snapshot();
+	}
+
+	/**
+	 * Copy an entity with its own model, so changes to the copy do not reach
+	 * the cache and the other way around
+	 */
+	private static Entity copyOf(final Entity entity) {
+		final Model source = entity.getResource().getModel();
+		final Model model = ModelFactory.createDefaultModel().add(source);
+		model.setNsPrefixes(source.getNsPrefixMap());
+		final Entity copy = new Entity(model.getResource(entity.getUri()),
+				entity.getReferencedSite());
+		copy.setIndexed(entity.isIndexed());
+		return copy;
+	}
+
+	private static int weightOf(final Entity entity) {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, entity
+				.getResource().getModel().size()));
+	}
+}
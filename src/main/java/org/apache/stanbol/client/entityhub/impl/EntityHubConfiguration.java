@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.stanbol.client.EntityHub;
+import org.apache.stanbol.client.entityhub.local.EntityMirror;
+import org.apache.stanbol.client.entityhub.local.EntityStore;
+import org.apache.stanbol.client.entityhub.model.Entity;
+
+/**
+ * Collect the client side settings of the {@link EntityHub} client, like
+ * caching. The default configuration disables every client side feature, so
+ * the client behaves as a plain REST client
+ */
+public class EntityHubConfiguration {
+
+	public static class EntityHubConfigurationBuilder {
+		private final EntityHubConfiguration configuration = new EntityHubConfiguration();
+
+		public EntityHubConfiguration build() {
+			return configuration;
+		}
+
+		/**
+		 * Enable the {@link Entity} near-cache for <code>get</code> and
+		 * <code>lookup</code> operations. Every call returns its own copy of
+		 * the cached entity, so callers can modify it
+		 *
+		 * @param maximumWeight
+		 *            Maximum number of RDF statements kept in the cache
+		 * @param expireAfterWrite
+		 *            Time to live of the cached entities. Zero or negative
+		 *            values disable expiration
+		 * @param unit
+		 *            Time unit of <code>expireAfterWrite</code>
+		 * @return this builder
+		 */
+		public EntityHubConfigurationBuilder setEntityCache(
+				final long maximumWeight, final long expireAfterWrite,
+				final TimeUnit unit) {
+			configuration.entityCacheMaximumWeight = maximumWeight;
+			configuration.entityCacheExpireAfterWrite = expireAfterWrite;
+			configuration.entityCacheTimeUnit = unit;
+			return this;
+		}
+
+		/**
+		 * Enable the negative cache remembering for a short time the ids the
+		 * server could not find, so repeated <code>get</code> and
+		 * <code>lookup</code> requests for unknown ids are answered locally
+		 *
+		 * @param maximumSize
+		 *            Maximum number of ids kept in the negative cache
+		 * @param expireAfterWrite
+		 *            Time to live of the negative cache entries
+		 * @param unit
+		 *            Time unit of <code>expireAfterWrite</code>
+		 * @return this builder
+		 */
+		public EntityHubConfigurationBuilder setNegativeCache(
+				final long maximumSize, final long expireAfterWrite,
+				final TimeUnit unit) {
+			configuration.negativeCacheMaximumSize = maximumSize;
+			configuration.negativeCacheExpireAfterWrite = expireAfterWrite;
+			configuration.negativeCacheTimeUnit = unit;
+			return this;
+		}
+
+		/**
+		 * Enable the cache of <code>ldpath(context, program)</code> results,
+		 * keyed by referenced site, context and canonical program
+		 *
+		 * @param maximumWeight
+		 *            Maximum number of RDF statements kept in the cache
+		 * @param expireAfterWrite
+		 *            Time to live of the cached results. Zero or negative
+		 *            values disable expiration
+		 * @param unit
+		 *            Time unit of <code>expireAfterWrite</code>
+		 * @return this builder
+		 */
+		public EntityHubConfigurationBuilder setLDPathCache(
+				final long maximumWeight, final long expireAfterWrite,
+				final TimeUnit unit) {
+			configuration.ldpathCacheMaximumWeight = maximumWeight;
+			configuration.ldpathCacheExpireAfterWrite = expireAfterWrite;
+			configuration.ldpathCacheTimeUnit = unit;
+			return this;
+		}
+
+		/**
+		 * Enable the client side evaluation of LDPath programs over the
+		 * entities of the {@link Entity} near-cache. Programs using the subset
+		 * of LDPath supported by {@link LDPathEvaluator} are answered locally
+		 * when every entity they reach is cached, and sent to the server
+		 * otherwise
+		 *
+		 * @param localLDPath
+		 *            If true, LDPath programs are evaluated locally when
+		 *            possible
+		 * @return this builder
+		 */
+		public EntityHubConfigurationBuilder setLocalLDPath(
+				final boolean localLDPath) {
+			configuration.localLDPath = localLDPath;
+			return this;
+		}
+
+		/**
+		 * Cache the list of referenced sites. Once loaded, the list is
+		 * refreshed in background when it is requested after the refresh
+		 * interval, so callers never wait for the server: they get the
+		 * previous list until the new one is loaded, and keep getting it if
+		 * the refresh fails
+		 *
+		 * @param refreshInterval
+		 *            Time after which the cached list is refreshed. Zero or
+		 *            negative values disable the cache
+		 * @param unit
+		 *            Time unit of <code>refreshInterval</code>
+		 * @return this builder
+		 */
+		public EntityHubConfigurationBuilder setReferencedSitesRefresh(
+				final long refreshInterval, final TimeUnit unit) {
+			configuration.referencedSitesRefresh = refreshInterval;
+			configuration.referencedSitesTimeUnit = unit;
+			return this;
+		}
+
+		/**
+		 * Serve <code>get</code> requests from a local mirror of the
+		 * entities, falling back to the server for the entities that are not
+		 * mirrored. Local writes remove the written entities from the mirror
+		 *
+		 * @param mirror
+		 *            {@link EntityStore} kept up to date by an
+		 *            {@link EntityMirror}
+		 * @return this builder
+		 */
+		public EntityHubConfigurationBuilder setMirror(final EntityStore mirror) {
+			configuration.mirror = mirror;
+			return this;
+		}
+
+		/**
+		 * Enable the indexed mode of the returned entities, so their accessors
+		 * are hash lookups instead of scans of the entity statements
+		 *
+		 * @param indexedEntities
+		 *            If true, returned entities are indexed
+		 * @return this builder
+		 * @see Entity#setIndexed(boolean)
+		 */
+		public EntityHubConfigurationBuilder setIndexedEntities(
+				final boolean indexedEntities) {
+			configuration.indexedEntities = indexedEntities;
+			return this;
+		}
+
+		/**
+		 * Configure the bulk <code>deleteAll(ids)</code> and
+		 * <code>updateAll(entities)</code> operations
+		 *
+		 * @param concurrency
+		 *            Maximum number of write requests sent at the same time,
+		 *            counted across all the bulk writes of the client
+		 * @param batchSize
+		 *            Maximum number of entities updated by a single request
+		 * @return this builder
+		 */
+		public EntityHubConfigurationBuilder setBulkWrite(
+				final int concurrency, final int batchSize) {
+			if (concurrency < 1 || batchSize < 1) {
+				throw new IllegalArgumentException(
+						"Bulk write concurrency and batch size must be positive");
+			}
+			configuration.bulkWriteConcurrency = concurrency;
+			configuration.bulkWriteBatchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * Configure how <code>getAll</code> splits the requested ids in
+		 * server calls
+		 *
+		 * @param chunkSize
+		 *            Maximum number of ids resolved by a single server call
+		 * @param parallelism
+		 *            Maximum number of chunks fetched at the same time,
+		 *            counted across all the bulk fetches and LDPath calls of
+		 *            the client
+		 * @return this builder
+		 */
+		public EntityHubConfigurationBuilder setBulkFetch(final int chunkSize,
+				final int parallelism) {
+			if (chunkSize < 1 || parallelism < 1) {
+				throw new IllegalArgumentException(
+						"Bulk fetch chunk size and parallelism must be positive");
+			}
+			configuration.bulkFetchChunkSize = chunkSize;
+			configuration.bulkFetchParallelism = parallelism;
+			return this;
+		}
+	}
+
+	/**
+	 * Create a new EntityHub Configuration Builder
+	 *
+	 * @return Created {@link EntityHubConfigurationBuilder}
+	 */
+	public static EntityHubConfigurationBuilder builder() {
+		return new EntityHubConfigurationBuilder();
+	}
+
+	private long entityCacheMaximumWeight = 0;
+	private long entityCacheExpireAfterWrite = 0;
+	private TimeUnit entityCacheTimeUnit = TimeUnit.SECONDS;
+	private long negativeCacheMaximumSize = 0;
+	private long negativeCacheExpireAfterWrite = 0;
+	private TimeUnit negativeCacheTimeUnit = TimeUnit.SECONDS;
+	private long ldpathCacheMaximumWeight = 0;
+	private long ldpathCacheExpireAfterWrite = 0;
+	private TimeUnit ldpathCacheTimeUnit = TimeUnit.SECONDS;
+	private boolean localLDPath = false;
+	private long referencedSitesRefresh = 0;
+	private TimeUnit referencedSitesTimeUnit = TimeUnit.SECONDS;
+	private EntityStore mirror = null;
+	private boolean indexedEntities = false;
+	private int bulkWriteConcurrency = 4;
+	private int bulkWriteBatchSize = 50;
+	private int bulkFetchChunkSize = 50;
+	private int bulkFetchParallelism = 4;
+
+	public boolean isEntityCacheEnabled() {
+		return entityCacheMaximumWeight > 0;
+	}
+
+	public long getEntityCacheMaximumWeight() {
+		return entityCacheMaximumWeight;
+	}
+
+	public long getEntityCacheExpireAfterWrite() {
+		return entityCacheExpireAfterWrite;
+	}
+
+	public TimeUnit getEntityCacheTimeUnit() {
+		return entityCacheTimeUnit;
+	}
+
+	public long getNegativeCacheMaximumSize() {
+		return negativeCacheMaximumSize;
+	}
+
+	public long getNegativeCacheExpireAfterWrite() {
+		return negativeCacheExpireAfterWrite;
+	}
+
+	public TimeUnit getNegativeCacheTimeUnit() {
+		return negativeCacheTimeUnit;
+	}
+
+	public boolean isLDPathCacheEnabled() {
+		return ldpathCacheMaximumWeight > 0;
+	}
+
+	public long getLDPathCacheMaximumWeight() {
+		return ldpathCacheMaximumWeight;
+	}
+
+	public long getLDPathCacheExpireAfterWrite() {
+		return ldpathCacheExpireAfterWrite;
+	}
+
+	public TimeUnit getLDPathCacheTimeUnit() {
+		return ldpathCacheTimeUnit;
+	}
+
+	public boolean isLocalLDPath() {
+		return localLDPath;
+	}
+
+	public long getReferencedSitesRefresh() {
+		return referencedSitesRefresh;
+	}
+
+	public TimeUnit getReferencedSitesTimeUnit() {
+		return referencedSitesTimeUnit;
+	}
+
+	public EntityStore getMirror() {
+		return mirror;
+	}
+
+	public boolean isIndexedEntities() {
+		return indexedEntities;
+	}
+
+	public int getBulkWriteConcurrency() {
+		return bulkWriteConcurrency;
+	}
+
+	public int getBulkWriteBatchSize() {
+		return bulkWriteBatchSize;
+	}
+
+	public int getBulkFetchChunkSize() {
+		return bulkFetchChunkSize;
+	}
+
+	public int getBulkFetchParallelism() {
+		return bulkFetchParallelism;
+	}
+}
@@ -16,20 +16,43 @@
  */
 package org.apache.stanbol.client.entityhub.impl;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.core.Form;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.Response.StatusType;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 
 import org.apache.stanbol.client.EntityHub;
+import org.apache.stanbol.client.entityhub.local.EntityStore;
+import org.apache.stanbol.client.entityhub.model.BulkOperationResult;
+import org.apache.stanbol.client.entityhub.model.BulkOperationResult.Outcome;
+import org.apache.stanbol.client.entityhub.model.CloseableIterator;
 import org.apache.stanbol.client.entityhub.model.Entity;
+import org.apache.stanbol.client.entityhub.model.FieldQuery;
 import org.apache.stanbol.client.entityhub.model.LDPathProgram;
 import org.apache.stanbol.client.exception.StanbolClientException;
 import org.apache.stanbol.client.rest.RestClientExecutor;
@@ -39,10 +62,18 @@ import org.codehaus.jettison.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
-import com.hp.hpl.jena.rdf.model.RDFNode;
-import com.hp.hpl.jena.rdf.model.ResIterator;
 
 /**
  * EntityHub Service Client Implementation
@@ -59,16 +90,249 @@ public class EntityHubImpl implements EntityHub {
 				+ statusInfo.getReasonPhrase();
 	}
 
+	/*
+	 * LDPath program used by getAll when no program is passed. Every field
+	 * is named as the property it selects, so the returned entities look
+	 * like the ones returned by get
+	 */
+	private static final String DEFAULT_PROJECTION_PROGRAM = "@prefix rdf:<http://www.w3.org/1999/02/22-rdf-syntax-ns#>;"
+			+ "@prefix rdfs:<http://www.w3.org/2000/01/rdf-schema#>;"
+			+ "@prefix owl:<http://www.w3.org/2002/07/owl#>;"
+			+ "rdfs:label = rdfs:label;"
+			+ "rdfs:comment = rdfs:comment;"
+			+ "rdf:type = rdf:type;" + "owl:sameAs = owl:sameAs;";
+
+	/**
+	 * Maximum length of the contexts sent in a single LDPath request
+	 */
+	private static final int MAX_LDPATH_CONTEXTS_LENGTH = 32 * 1024;
+
+	private static final Object REFERENCED_SITES_KEY = new Object();
+
+	private static final MediaType N_TRIPLES = new MediaType("text", "rdf+nt");
+
 	private Logger logger = LoggerFactory.getLogger(EntityHubImpl.class);
 
 	private UriBuilder builder;
 
+	private final EntityCache entityCache;
+
+	private final AbsentEntityFilter absentFilter;
+
+	private final LDPathResultCache ldpathCache;
+
+	private final boolean localLDPath;
+
+	private final LoadingCache<Object, List<String>> referencedSites;
+
+	private final EntityStore mirror;
+
+	private final AtomicLong localLDPathCount = new AtomicLong();
+
+	private final boolean indexedEntities;
+
+	private final int bulkFetchChunkSize;
+
+	private final int bulkFetchParallelism;
+
+	private final int bulkWriteConcurrency;
+
+	private final int bulkWriteBatchSize;
+
+	private volatile ExecutorService fetchExecutor;
+
+	private volatile ExecutorService writeExecutor;
+
+	private volatile ExecutorService backgroundExecutor;
+
 	/**
 	 * Constructor
 	 * 
 	 */
 	public EntityHubImpl(UriBuilder builder) {
+		this(builder, EntityHubConfiguration.builder().build());
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param builder
+	 *            Stanbol endpoint {@link UriBuilder}
+	 * @param configuration
+	 *            Client side {@link EntityHubConfiguration}
+	 */
+	public EntityHubImpl(UriBuilder builder,
+			EntityHubConfiguration configuration) {
 		this.builder = builder;
+		if (configuration.isEntityCacheEnabled()) {
+			this.entityCache = new EntityCache(
+					configuration.getEntityCacheMaximumWeight(),
+					configuration.getEntityCacheExpireAfterWrite(),
+					configuration.getEntityCacheTimeUnit());
+		} else {
+			this.entityCache = null;
+		}
+		this.absentFilter = new AbsentEntityFilter(
+				configuration.getNegativeCacheMaximumSize(),
+				configuration.getNegativeCacheExpireAfterWrite(),
+				configuration.getNegativeCacheTimeUnit());
+		if (configuration.isLDPathCacheEnabled()) {
+			this.ldpathCache = new LDPathResultCache(
+					configuration.getLDPathCacheMaximumWeight(),
+					configuration.getLDPathCacheExpireAfterWrite(),
+					configuration.getLDPathCacheTimeUnit());
+		} else {
+			this.ldpathCache = null;
+		}
+		this.localLDPath = configuration.isLocalLDPath()
+				&& entityCache != null;
+		this.indexedEntities = configuration.isIndexedEntities();
+		if (configuration.getReferencedSitesRefresh() > 0) {
+			this.referencedSites = CacheBuilder
+					.newBuilder()
+					.refreshAfterWrite(
+							configuration.getReferencedSitesRefresh(),
+							configuration.getReferencedSitesTimeUnit())
+					.build(new CacheLoader<Object, List<String>>() {
+						@Override
+						public List<String> load(Object key)
+								throws StanbolServiceException,
+								StanbolClientException {
+							return ImmutableList.copyOf(getReferencedSitesAux());
+						}
+
+						/*
+						 * Refreshes run in background: callers keep getting
+						 * the previous list until the new one is loaded. A
+						 * failed refresh, including an unreachable server,
+						 * keeps the previous list until the next refresh
+						 * interval
+						 */
+						@Override
+						public ListenableFuture<List<String>> reload(
+								final Object key, final List<String> oldValue) {
+							final ListenableFutureTask<List<String>> task = ListenableFutureTask
+									.create(new Callable<List<String>>() {
+										@Override
+										public List<String> call() {
+											try {
+												return load(key);
+											} catch (StanbolServiceException
+													| StanbolClientException
+													| RuntimeException e) {
+												logger.warn(
+														"Error refreshing referenced sites, keeping the previous list",
+														e);
+												return oldValue;
+											}
+										}
+									});
+							getBackgroundExecutor().execute(task);
+							return task;
+						}
+					});
+		} else {
+			this.referencedSites = null;
+		}
+		this.mirror = configuration.getMirror();
+		this.bulkFetchChunkSize = configuration.getBulkFetchChunkSize();
+		this.bulkFetchParallelism = configuration.getBulkFetchParallelism();
+		this.bulkWriteConcurrency = configuration.getBulkWriteConcurrency();
+		this.bulkWriteBatchSize = configuration.getBulkWriteBatchSize();
+	}
+
+	/**
+	 * Get the local mirror serving <code>get</code> requests
+	 * 
+	 * @return Mirror {@link EntityStore} or null if there is no mirror
+	 */
+	public EntityStore getMirror() {
+		return mirror;
+	}
+
+	/**
+	 * Get the statistics of the {@link Entity} cache: hit ratio, load times
+	 * and evictions
+	 * 
+	 * @return {@link CacheStats} or null if the cache is not enabled
+	 */
+	public CacheStats getEntityCacheStats() {
+		return entityCache != null ? entityCache.stats() : null;
+	}
+
+	/**
+	 * Get the statistics of the LDPath results cache
+	 * 
+	 * @return {@link CacheStats} or null if the cache is not enabled
+	 */
+	public CacheStats getLDPathCacheStats() {
+		return ldpathCache != null ? ldpathCache.stats() : null;
+	}
+
+	/**
+	 * Get the number of LDPath requests answered by evaluating the program
+	 * over the cached entities
+	 * 
+	 * @return Number of LDPath requests evaluated locally
+	 */
+	public long getLocalLDPathCount() {
+		return localLDPathCount.get();
+	}
+
+	/**
+	 * Remove all the entries of the {@link Entity} cache, the negative cache
+	 * and the LDPath results cache
+	 */
+	public void invalidateEntityCache() {
+		if (entityCache != null) {
+			entityCache.invalidateAll();
+		}
+		if (ldpathCache != null) {
+			ldpathCache.invalidateAll();
+		}
+		absentFilter.invalidateAll();
+	}
+
+	/**
+	 * Preload the ids of all the entities of a site in a Bloom filter, so
+	 * <code>get</code> requests for ids not contained in the filter are
+	 * answered locally with null. Entities created through this client are
+	 * added to the EntityHub filter, but entities created by other clients
+	 * would be wrongly rejected until the filter is preloaded again
+	 * 
+	 * @param site
+	 *            Referenced Site. If null, the filter applies to the
+	 *            EntityHub itself
+	 * @param ids
+	 *            Ids of all the entities of the site
+	 * @param fpp
+	 *            Desired false positive probability, e.g. 0.01
+	 */
+	public void preloadKnownIds(String site, Collection<String> ids,
+			double fpp) {
+		absentFilter.preload(site, ids, ids.size(), fpp);
+	}
+
+	/**
+	 * Remove the Bloom filter of known ids of a site
+	 * 
+	 * @param site
+	 *            Referenced Site. If null, the EntityHub filter is removed
+	 */
+	public void clearKnownIds(String site) {
+		absentFilter.clearFilter(site);
+	}
+
+	/**
+	 * Get the number of <code>get</code> and <code>lookup</code> requests
+	 * answered locally as not found, either by the negative cache or by the
+	 * Bloom filters of known ids
+	 * 
+	 * @return Number of requests rejected locally
+	 */
+	public long getAbsentEntityHitCount() {
+		return absentFilter.getNegativeHitCount()
+				+ absentFilter.getFilterRejectionCount();
 	}
 
 	/*
@@ -79,14 +343,34 @@ public class EntityHubImpl implements EntityHub {
 	@Override
 	public Collection<String> getReferencedSites()
 			throws StanbolServiceException, StanbolClientException {
+		if (referencedSites == null) {
+			return getReferencedSitesAux();
+		}
+		try {
+			return referencedSites.get(REFERENCED_SITES_KEY);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof StanbolServiceException) {
+				throw (StanbolServiceException) cause;
+			} else if (cause instanceof StanbolClientException) {
+				throw (StanbolClientException) cause;
+			}
+			throw new StanbolServiceException(
+					"Error retrieving referenced sites from Stanbol server",
+					cause);
+		}
+	}
+
+	private List<String> getReferencedSitesAux()
+			throws StanbolServiceException, StanbolClientException {
 		List<String> result;
 
 		UriBuilder clientBuilder = builder.clone().path(STANBOL_ENTITYHUB_PATH)
 				.path(STANBOL_ENTITYHUB_SITEMANAGER_PATH).path("referenced");
 
 		URI uri = clientBuilder.build();
-		Response response = RestClientExecutor.get(uri, new MediaType(
-				"application", "rdf+xml"));
+		Response response = RestClientExecutor.get(uri,
+				MediaType.APPLICATION_JSON_TYPE);
 
 		// Check HTTP status code
 		final StatusType statusInfo = response.getStatusInfo();
@@ -109,16 +393,16 @@ public class EntityHubImpl implements EntityHub {
 				logger.debug("Sites sucessfully retrieved from "
 						+ response.getLocation());
 			}
-			JSONArray array = response.readEntity(JSONArray.class);
-			result = new ArrayList<String>(array.length());
-			for (int i = 0; i < array.length(); i++) {
-				try {
+			try {
+				JSONArray array = new JSONArray(response.readEntity(String.class));
+				result = new ArrayList<String>(array.length());
+				for (int i = 0; i < array.length(); i++) {
 					result.add(array.getString(i));
-				} catch (JSONException e) {
-					String message = "Malformed JSON response for EntityHub referenced service";
-					logger.error(message);
-					throw new StanbolServiceException(message);
 				}
+			} catch (JSONException e) {
+				String message = "Malformed JSON response for EntityHub referenced service";
+				logger.error(message);
+				throw new StanbolServiceException(message);
 			}
 			break;
 		}
@@ -141,7 +425,7 @@ public class EntityHubImpl implements EntityHub {
 			StanbolClientException {
 		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH).path("entity")
 				.queryParam("id", id).build();
-		return getAux(uri, id);
+		return getCached(new EntityCache.Key(null, id, false), uri);
 	}
 
 	/*
@@ -156,7 +440,319 @@ public class EntityHubImpl implements EntityHub {
 		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH)
 				.path(STANBOL_ENTITYHUB_SITE_PATH).path(site).path("entity")
 				.queryParam("id", id).build();
-		return getAux(uri, id);
+		return getCached(new EntityCache.Key(site, id, false), uri);
+	}
+
+	/**
+	 * @see EntityHub#getAll(String, Collection)
+	 */
+	@Override
+	public Map<String, Entity> getAll(String site, Collection<String> ids)
+			throws StanbolServiceException, StanbolClientException {
+		return getAllAux(site, ids, DEFAULT_PROJECTION_PROGRAM, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @see EntityHub#getAll(String, Collection, LDPathProgram)
+	 */
+	@Override
+	public Map<String, Entity> getAll(String site, Collection<String> ids,
+			LDPathProgram ldPathProgram) throws StanbolServiceException,
+			StanbolClientException {
+		return getAllAux(site, ids, ldPathProgram.toString(), Long.MAX_VALUE);
+	}
+
+	/**
+	 * @see EntityHub#getAll(String, Collection, LDPathProgram, long, TimeUnit)
+	 */
+	@Override
+	public Map<String, Entity> getAll(String site, Collection<String> ids,
+			LDPathProgram ldPathProgram, long timeout, TimeUnit unit)
+			throws StanbolServiceException, StanbolClientException {
+		return getAllAux(site, ids, ldPathProgram.toString(),
+				unit.toNanos(timeout));
+	}
+
+	private Map<String, Entity> getAllAux(String site, Collection<String> ids,
+			final String program, final long timeoutNanos)
+			throws StanbolServiceException, StanbolClientException {
+		final Map<String, Entity> result = new LinkedHashMap<String, Entity>();
+
+		final List<String> pending = new ArrayList<String>(ids.size());
+		for (String id : new LinkedHashSet<String>(ids)) {
+			if (!absentFilter.isAbsent(new EntityCache.Key(site, id, false))) {
+				pending.add(id);
+			}
+		}
+		if (pending.isEmpty()) {
+			return result;
+		}
+
+		UriBuilder ldpathBuilder = builder.clone().path(STANBOL_ENTITYHUB_PATH);
+		if (site != null && !site.equals("")) {
+			ldpathBuilder = ldpathBuilder.path(STANBOL_ENTITYHUB_SITE_PATH)
+					.path(site);
+		}
+		final URI uri = ldpathBuilder.path("ldpath").build();
+
+		final Map<String, Model> models = ldpathChunked(uri, pending, program,
+				timeoutNanos);
+		for (String id : pending) {
+			final Model entity = models.get(id);
+			if (entity != null
+					&& entity.contains(entity.createResource(id), null)) {
+				result.put(id, newEntity(entity, id));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Execute an LDPath program over many contexts, splitting the contexts in
+	 * chunks sent in parallel as POST forms. The returned graphs are split by
+	 * subject. The chunks not fetched within <code>timeoutNanos</code> are
+	 * left out, unless it is Long.MAX_VALUE
+	 */
+	private Map<String, Model> ldpathChunked(final URI uri,
+			List<String> contexts, final String program,
+			final long timeoutNanos) throws StanbolServiceException,
+			StanbolClientException {
+		final Map<String, Model> result = new HashMap<String, Model>();
+		final boolean bounded = timeoutNanos != Long.MAX_VALUE;
+		final long deadline = System.nanoTime() + timeoutNanos;
+
+		final List<List<String>> chunks = chunk(contexts, bulkFetchChunkSize,
+				MAX_LDPATH_CONTEXTS_LENGTH);
+		if (chunks.size() == 1 && !bounded) {
+			collect(result, contexts, ldpathAux(uri, contexts, program));
+			return result;
+		}
+
+		final ExecutorService executor = getFetchExecutor();
+		final List<Future<Model>> futures = new ArrayList<Future<Model>>(
+				chunks.size());
+		for (final List<String> chunk : chunks) {
+			futures.add(executor.submit(new Callable<Model>() {
+				@Override
+				public Model call() throws Exception {
+					return ldpathAux(uri, chunk, program);
+				}
+			}));
+		}
+
+		try {
+			for (int i = 0; i < chunks.size(); i++) {
+				collect(result, chunks.get(i), bounded ? futures.get(i).get(
+						deadline - System.nanoTime(), TimeUnit.NANOSECONDS)
+						: futures.get(i).get());
+			}
+		} catch (TimeoutException e) {
+			// The chunks not fetched yet are cancelled below
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StanbolClientException(
+					"Interrupted while fetching entities from Stanbol server", e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof StanbolServiceException) {
+				throw (StanbolServiceException) cause;
+			} else if (cause instanceof StanbolClientException) {
+				throw (StanbolClientException) cause;
+			}
+			throw new StanbolServiceException(
+					"Error fetching entities from Stanbol server", cause);
+		} finally {
+			for (Future<Model> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		return result;
+	}
+
+	private static void collect(Map<String, Model> result,
+			List<String> contexts, Model model) {
+		final Map<String, Model> models = ModelPartitioner.bySubject(model);
+		for (String context : contexts) {
+			final Model contextModel = models.get(context);
+			if (contextModel != null) {
+				contextModel.setNsPrefixes(model.getNsPrefixMap());
+				result.put(context, contextModel);
+			}
+		}
+	}
+
+	/**
+	 * Split a list of ids in chunks of at most <code>maxSize</code> ids and
+	 * <code>maxLength</code> characters
+	 */
+	private static List<List<String>> chunk(List<String> ids, int maxSize,
+			int maxLength) {
+		final List<List<String>> result = new ArrayList<List<String>>();
+		List<String> current = new ArrayList<String>();
+		int length = 0;
+		for (String id : ids) {
+			if (!current.isEmpty()
+					&& (current.size() == maxSize || length + id.length() > maxLength)) {
+				result.add(current);
+				current = new ArrayList<String>();
+				length = 0;
+			}
+			current.add(id);
+			length += id.length();
+		}
+		if (!current.isEmpty()) {
+			result.add(current);
+		}
+		return result;
+	}
+
+	/**
+	 * Chunks of bulk fetches and LDPath calls run here, so no more than
+	 * bulkFetchParallelism of them are in flight across the whole client
+	 */
+	private ExecutorService getFetchExecutor() {
+		ExecutorService result = fetchExecutor;
+		if (result == null) {
+			synchronized (this) {
+				result = fetchExecutor;
+				if (result == null) {
+					result = Executors.newFixedThreadPool(bulkFetchParallelism,
+							new ThreadFactoryBuilder().setDaemon(true)
+									.setNameFormat("entityhub-fetch-%d")
+									.build());
+					fetchExecutor = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Batches of bulk deletes and updates run here, so no more than
+	 * bulkWriteConcurrency of them are in flight across the whole client
+	 */
+	private ExecutorService getWriteExecutor() {
+		ExecutorService result = writeExecutor;
+		if (result == null) {
+			synchronized (this) {
+				result = writeExecutor;
+				if (result == null) {
+					result = Executors.newFixedThreadPool(bulkWriteConcurrency,
+							new ThreadFactoryBuilder().setDaemon(true)
+									.setNameFormat("entityhub-write-%d")
+									.build());
+					writeExecutor = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Search iterator prefetches and referenced sites reloads run here, so
+	 * they never hold the threads of bulk operations. There is at most one
+	 * prefetch per open iterator and one reload at a time
+	 */
+	private ExecutorService getBackgroundExecutor() {
+		ExecutorService result = backgroundExecutor;
+		if (result == null) {
+			synchronized (this) {
+				result = backgroundExecutor;
+				if (result == null) {
+					result = Executors
+							.newCachedThreadPool(new ThreadFactoryBuilder()
+									.setDaemon(true)
+									.setNameFormat("entityhub-background-%d")
+									.build());
+					backgroundExecutor = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private Entity getCached(EntityCache.Key key, URI uri)
+			throws StanbolServiceException, StanbolClientException {
+		return getCached(key, uri, true);
+	}
+
+	private Entity getCached(EntityCache.Key key, URI uri, boolean useAbsent)
+			throws StanbolServiceException, StanbolClientException {
+		if (useAbsent && absentFilter.isAbsent(key)) {
+			return null;
+		}
+
+		if (mirror != null && !key.isLookup()) {
+			try {
+				final Entity mirrored = mirror.get(key.getSite(), key.getId());
+				if (mirrored != null) {
+					mirrored.setIndexed(indexedEntities);
+					return mirrored;
+				}
+			} catch (IOException e) {
+				logger.warn("Error reading entity " + key.getId()
+						+ " from the local mirror", e);
+			}
+		}
+
+		Entity result = entityCache != null ? entityCache.get(key) : null;
+		if (result == null) {
+			final long start = System.nanoTime();
+			try {
+				result = key.isLookup() ? lookupAux(uri, key.getId())
+						: getAux(uri, key.getId());
+			} catch (StanbolServiceException | StanbolClientException e) {
+				if (entityCache != null) {
+					entityCache.recordLoadException(System.nanoTime() - start);
+				}
+				throw e;
+			}
+			if (entityCache != null) {
+				entityCache.put(key, result, System.nanoTime() - start);
+			}
+
+			if (result == null) {
+				if (useAbsent) {
+					absentFilter.recordAbsent(key);
+				}
+			} else if (key.isLookup()) {
+				// The lookup might have created the Symbol in the EntityHub
+				absentFilter.invalidateLocal(key.getId());
+			}
+		}
+		return result;
+	}
+
+	private void invalidate(String id) {
+		if (ldpathCache != null) {
+			ldpathCache.invalidateLocal();
+		}
+		if (id == null || id.equals("") || id.equals("*")) {
+			if (entityCache != null) {
+				entityCache.invalidateLocal();
+			}
+			absentFilter.invalidateLocal();
+		} else {
+			if (entityCache != null) {
+				entityCache.invalidateLocal(id);
+			}
+			absentFilter.invalidateLocal(id);
+		}
+		if (mirror != null) {
+			try {
+				if (id == null || id.equals("") || id.equals("*")) {
+					for (String mirrored : mirror.getIds(null)) {
+						mirror.remove(null, mirrored);
+					}
+				} else {
+					mirror.remove(null, id);
+				}
+			} catch (IOException e) {
+				logger.warn("Error removing entity " + id
+						+ " from the local mirror", e);
+			}
+		}
 	}
 
 	private Entity getAux(URI uri, String id) throws StanbolServiceException,
@@ -179,6 +775,7 @@ public class EntityHubImpl implements EntityHub {
 								"An error occurred retrieving content from Stanbol server: [HTTP %d] %s",
 								statusCode, statusInfo.getReasonPhrase()));
 			}
+			break;
 		}
 		case SERVER_ERROR: {
 			throw new StanbolServiceException(
@@ -214,46 +811,74 @@ public class EntityHubImpl implements EntityHub {
 	@Override
 	public String create(InputStream is, String id, Boolean update)
 			throws StanbolServiceException, StanbolClientException {
+		return createAux(javax.ws.rs.client.Entity.entity(is, new MediaType(
+				"application", "rdf+xml")), id, update);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.stanbol.client.EntityHub#create(org.apache.stanbol.client.
+	 * entityhub.model.Entity, java.lang.Boolean)
+	 */
+	@Override
+	public String create(Entity entity, Boolean update)
+			throws StanbolServiceException, StanbolClientException {
+		return createAux(streamingBody(entity), entity.getUri(), update);
+	}
+
+	private String createAux(javax.ws.rs.client.Entity<?> entity, String id,
+			Boolean update) throws StanbolServiceException,
+			StanbolClientException {
 		String result;
 
 		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH).path("entity")
 				.queryParam("id", id).queryParam("update", update).build();
-		javax.ws.rs.client.Entity<?> entity = javax.ws.rs.client.Entity.entity(
-				is, new MediaType("application", "rdf+xml"));
-
-		Response response = RestClientExecutor.post(uri, entity,
-				MediaType.TEXT_XML_TYPE);
 
-		final StatusType statusInfo = response.getStatusInfo();
-		switch (statusInfo.getFamily()) {
-		case CLIENT_ERROR: {
-			final int statusCode = statusInfo.getStatusCode();
-			final String errorMessage = (Status.BAD_REQUEST.equals(Status.fromStatusCode(statusCode))) ? id
-					+ " already exists within EntityHub. You might want to pass updated param with a true value"
-					: String.format(
-							"An unknown client error occurred while trying to add entity for ID \"%s\": [HTTP %d] %s",
-							id, statusCode, statusInfo.getReasonPhrase());
-			throw new StanbolClientException(errorMessage);
+		Response response;
+		try {
+			response = RestClientExecutor.post(uri, entity,
+					MediaType.TEXT_XML_TYPE);
+		} finally {
+			invalidate(id);
 		}
-		case SERVER_ERROR: {
-			final int statusCode = statusInfo.getStatusCode();
-			throw new StanbolServiceException(
-					"Error while posting content into Stanbol EntityHub: [HTTP "
-							+ statusCode + "] " + statusInfo.getReasonPhrase());
-		}
-		case SUCCESSFUL: {
-			final URI location = response.getLocation();
-			if (logger.isDebugEnabled()) {
-				logger.debug("Entity " + id
-						+ " has been sucessfully created at " + location);
+
+		try {
+			final StatusType statusInfo = response.getStatusInfo();
+			switch (statusInfo.getFamily()) {
+			case CLIENT_ERROR: {
+				final int statusCode = statusInfo.getStatusCode();
+				final String errorMessage = (Status.BAD_REQUEST.equals(Status.fromStatusCode(statusCode))) ? id
+						+ " already exists within EntityHub. You might want to pass updated param with a true value"
+						: String.format(
+								"An unknown client error occurred while trying to add entity for ID \"%s\": [HTTP %d] %s",
+								id, statusCode, statusInfo.getReasonPhrase());
+				throw new StanbolClientException(errorMessage);
 			}
-			result = location.toString();
-			break;
-		}
-		default: {
-			throw new StanbolServiceException(
-					createUnknownResponseErrorMessageString(statusInfo));
-		}
+			case SERVER_ERROR: {
+				final int statusCode = statusInfo.getStatusCode();
+				throw new StanbolServiceException(
+						"Error while posting content into Stanbol EntityHub: [HTTP "
+								+ statusCode + "] " + statusInfo.getReasonPhrase());
+			}
+			case SUCCESSFUL: {
+				final URI location = response.getLocation();
+				if (logger.isDebugEnabled()) {
+					logger.debug("Entity " + id
+							+ " has been sucessfully created at " + location);
+				}
+				result = location.toString();
+				break;
+			}
+			default: {
+				throw new StanbolServiceException(
+						createUnknownResponseErrorMessageString(statusInfo));
+			}
+			}
+		} finally {
+			// Release the connection, the body is not read or has been parsed
+			response.close();
 		}
 
 		return result;
@@ -262,25 +887,32 @@ public class EntityHubImpl implements EntityHub {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see
-	 * org.apache.stanbol.client.EntityHub#create(org.apache.stanbol.client.
-	 * entityhub.model.Entity, java.lang.Boolean)
+	 * @see org.apache.stanbol.client.EntityHub#update(java.io.InputStream,
+	 * java.lang.String, java.lang.Boolean)
 	 */
 	@Override
-	public String create(Entity entity, Boolean update)
+	public Entity update(InputStream is, String id, Boolean create)
 			throws StanbolServiceException, StanbolClientException {
-		return create(entity.getStream(), entity.getUri(), update);
+		return updateAux(javax.ws.rs.client.Entity.entity(is, new MediaType(
+				"application", "rdf+xml")), id, create);
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see org.apache.stanbol.client.EntityHub#update(java.io.InputStream,
-	 * java.lang.String, java.lang.Boolean)
+	 * @see
+	 * org.apache.stanbol.client.EntityHub#update(org.apache.stanbol.client.
+	 * entityhub.model.Entity, java.lang.Boolean)
 	 */
 	@Override
-	public Entity update(InputStream is, String id, Boolean create)
+	public Entity update(Entity entity, Boolean create)
 			throws StanbolServiceException, StanbolClientException {
+		return updateAux(streamingBody(entity), entity.getUri(), create);
+	}
+
+	private Entity updateAux(javax.ws.rs.client.Entity<?> entity, String id,
+			Boolean create) throws StanbolServiceException,
+			StanbolClientException {
 		Entity result;
 
 		UriBuilder createBuilder = builder.clone().path(STANBOL_ENTITYHUB_PATH)
@@ -294,58 +926,67 @@ public class EntityHubImpl implements EntityHub {
 
 		URI uri = createBuilder.build();
 
-		javax.ws.rs.client.Entity<?> entity = javax.ws.rs.client.Entity.entity(
-				is, new MediaType("application", "rdf+xml"));
-
-		Response response = RestClientExecutor.post(uri, entity, new MediaType(
-				"application", "rdf+xml"));
-
-		final StatusType statusInfo = response.getStatusInfo();
-		switch (statusInfo.getFamily()) {
-		case CLIENT_ERROR: {
-			final int statusCode = statusInfo.getStatusCode();
-			final String errorMessage = (Status.BAD_REQUEST.equals(Status.fromStatusCode(statusCode))) ? id
-					+ " already exists within EntityHub. You might want to pass updated param with a true value"
-					: String.format(
-							"An unknown client error occurred while trying to update entity for ID \"%s\": [HTTP %d] %s",
-							id, statusCode, statusInfo.getReasonPhrase());
-			throw new StanbolClientException(errorMessage);
+		Response response;
+		try {
+			response = RestClientExecutor.post(uri, entity, new MediaType(
+					"application", "rdf+xml"));
+		} finally {
+			invalidate(id);
 		}
-		case SERVER_ERROR: {
-			final int statusCode = statusInfo.getStatusCode();
-			throw new StanbolServiceException(
-					"Error while posting content into Stanbol EntityHub: [HTTP "
-							+ statusCode + "] " + statusInfo.getReasonPhrase());
-		}
-		case SUCCESSFUL: {
-			if (logger.isDebugEnabled()) {
-				logger.debug("Entity " + id
-						+ " has been sucessfully updated at "
-						+ response.getLocation());
+
+		try {
+			final StatusType statusInfo = response.getStatusInfo();
+			switch (statusInfo.getFamily()) {
+			case CLIENT_ERROR: {
+				final int statusCode = statusInfo.getStatusCode();
+				final String errorMessage = (Status.BAD_REQUEST.equals(Status.fromStatusCode(statusCode))) ? id
+						+ " already exists within EntityHub. You might want to pass updated param with a true value"
+						: String.format(
+								"An unknown client error occurred while trying to update entity for ID \"%s\": [HTTP %d] %s",
+								id, statusCode, statusInfo.getReasonPhrase());
+				throw new StanbolClientException(errorMessage);
 			}
-			result = parse(id, response.readEntity(InputStream.class), false);
-			break;
-		}
-		default: {
-			throw new StanbolServiceException(
-					createUnknownResponseErrorMessageString(statusInfo));
-		}
+			case SERVER_ERROR: {
+				final int statusCode = statusInfo.getStatusCode();
+				throw new StanbolServiceException(
+						"Error while posting content into Stanbol EntityHub: [HTTP "
+								+ statusCode + "] " + statusInfo.getReasonPhrase());
+			}
+			case SUCCESSFUL: {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Entity " + id
+							+ " has been sucessfully updated at "
+							+ response.getLocation());
+				}
+				result = parse(id, response.readEntity(InputStream.class), false);
+				break;
+			}
+			default: {
+				throw new StanbolServiceException(
+						createUnknownResponseErrorMessageString(statusInfo));
+			}
+			}
+		} finally {
+			// Release the connection, the body is not read or has been parsed
+			response.close();
 		}
 
 		return result;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * org.apache.stanbol.client.EntityHub#update(org.apache.stanbol.client.
-	 * entityhub.model.Entity, java.lang.Boolean)
+	/**
+	 * Request body writing the statements of the entity as N-Triples directly
+	 * to the connection
 	 */
-	@Override
-	public Entity update(Entity entity, Boolean create)
-			throws StanbolServiceException, StanbolClientException {
-		return update(entity.getStream(), entity.getUri(), create);
+	private static javax.ws.rs.client.Entity<StreamingOutput> streamingBody(
+			final Entity entity) {
+		final StreamingOutput body = new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException {
+				entity.write(output);
+			}
+		};
+		return javax.ws.rs.client.Entity.entity(body, N_TRIPLES);
 	}
 
 	/*
@@ -370,48 +1011,247 @@ public class EntityHubImpl implements EntityHub {
 		return deleteAux("*");
 	}
 
-	private Boolean deleteAux(String id) throws StanbolServiceException,
+	/**
+	 * @see EntityHub#deleteAll(Collection)
+	 */
+	@Override
+	public BulkOperationResult deleteAll(Collection<String> ids)
+			throws StanbolServiceException, StanbolClientException {
+		// The server takes "*" as every entity
+		if (ids.contains("*")) {
+			throw new IllegalArgumentException(
+					"\"*\" is not an entity id, use deleteAll() to delete every entity");
+		}
+		final BulkOperationResult result = new BulkOperationResult();
+		forEachConcurrently(new LinkedHashSet<String>(ids),
+				new BulkTask<String>() {
+					@Override
+					public void run(String id) {
+						try {
+							result.setOutcome(id, deleteAux(id) ? Outcome.SUCCEEDED
+									: Outcome.NOT_FOUND);
+						} catch (StanbolServiceException
+								| StanbolClientException | RuntimeException e) {
+							result.setFailure(id, e);
+						}
+					}
+				});
+		return result;
+	}
+
+	/**
+	 * @see EntityHub#updateAll(Collection, Boolean)
+	 */
+	@Override
+	public BulkOperationResult updateAll(Collection<Entity> entities,
+			final Boolean create) throws StanbolServiceException,
 			StanbolClientException {
-		Boolean result;
+		final BulkOperationResult result = new BulkOperationResult();
+		forEachConcurrently(
+				Lists.partition(new ArrayList<Entity>(entities), bulkWriteBatchSize),
+				new BulkTask<List<Entity>>() {
+					@Override
+					public void run(List<Entity> batch) {
+						try {
+							updateBatch(batch, create);
+							for (Entity entity : batch) {
+								result.setOutcome(entity.getUri(),
+										Outcome.SUCCEEDED);
+							}
+							return;
+						} catch (StanbolServiceException
+								| StanbolClientException | RuntimeException e) {
+							if (batch.size() == 1) {
+								result.setFailure(batch.get(0).getUri(), e);
+								return;
+							}
+							logger.debug("Batch update failed, updating entities one by one", e);
+						}
+
+						// Isolate the entities making the batch fail
+						for (Entity entity : batch) {
+							try {
+								update(entity, create);
+								result.setOutcome(entity.getUri(),
+										Outcome.SUCCEEDED);
+							} catch (StanbolServiceException
+									| StanbolClientException | RuntimeException e) {
+								result.setFailure(entity.getUri(), e);
+							}
+						}
+					}
+				});
+		return result;
+	}
 
-		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH).path("entity")
-				.queryParam("id", id).build();
+	private void updateBatch(final List<Entity> entities, Boolean create)
+			throws StanbolServiceException, StanbolClientException {
+		UriBuilder updateBuilder = builder.clone().path(STANBOL_ENTITYHUB_PATH)
+				.path("entity");
+		if (!create)
+			updateBuilder = updateBuilder.queryParam("create",
+					create.toString());
+		URI uri = updateBuilder.build();
 
-		Response response = RestClientExecutor.delete(uri);
+		final StreamingOutput body = new StreamingOutput() {
+			@Override
+			public void write(OutputStream output) throws IOException {
+				for (Entity entity : entities) {
+					entity.write(output);
+				}
+			}
+		};
+
+		Response response;
+		try {
+			response = RestClientExecutor.post(uri,
+					javax.ws.rs.client.Entity.entity(body, N_TRIPLES),
+					new MediaType("application", "rdf+xml"));
+		} finally {
+			for (Entity entity : entities) {
+				invalidate(entity.getUri());
+			}
+		}
 
-		final StatusType statusInfo = response.getStatusInfo();
-		switch (statusInfo.getFamily()) {
-		case CLIENT_ERROR: {
-			final int statusCode = statusInfo.getStatusCode();
-			if (Status.NOT_FOUND.equals(Status.fromStatusCode(statusCode))) {
-				result = false;
-			} else {
+		try {
+			final StatusType statusInfo = response.getStatusInfo();
+			switch (statusInfo.getFamily()) {
+			case CLIENT_ERROR: {
 				throw new StanbolClientException(
 						String.format(
-								"An unknown client error occurred while deleting content for entity ID \"%s\": [HTTP %d] %s",
-								id, statusCode, statusInfo.getReasonPhrase()));
+								"An unknown client error occurred while trying to update %d entities: [HTTP %d] %s",
+								entities.size(), statusInfo.getStatusCode(),
+								statusInfo.getReasonPhrase()));
 			}
+			case SERVER_ERROR: {
+				throw new StanbolServiceException(
+						"Error while posting content into Stanbol EntityHub: [HTTP "
+								+ statusInfo.getStatusCode() + "] "
+								+ statusInfo.getReasonPhrase());
+			}
+			case SUCCESSFUL: {
+				if (logger.isDebugEnabled()) {
+					logger.debug(entities.size()
+							+ " entities have been sucessfully updated");
+				}
+				break;
+			}
+			default: {
+				throw new StanbolServiceException(
+						createUnknownResponseErrorMessageString(statusInfo));
+			}
+			}
+		} finally {
+			response.close();
 		}
-		case SERVER_ERROR: {
-			final int statusCode = statusInfo.getStatusCode();
-			throw new StanbolServiceException(
-					"Error while deleting content from Stanbol server: [HTTP "
-							+ statusCode + "] " + statusInfo.getReasonPhrase());
-		}
-		case SUCCESSFUL: {
-			if (logger.isDebugEnabled()) {
-				logger.debug("Entity " + id
-						+ " has been sucessfully deleted at "
-						+ response.getLocation());
+	}
+
+	/**
+	 * Operation applied to every item of a bulk operation. Failures must be
+	 * recorded by the task itself
+	 */
+	private interface BulkTask<T> {
+		void run(T item);
+	}
+
+	/**
+	 * Apply a task to every item with at most the configured bulk write
+	 * concurrency
+	 */
+	private <T> void forEachConcurrently(Collection<T> items,
+			final BulkTask<T> task) throws StanbolServiceException,
+			StanbolClientException {
+		final Queue<T> queue = new ConcurrentLinkedQueue<T>(items);
+		final int workers = Math.min(bulkWriteConcurrency, items.size());
+		if (workers <= 1) {
+			for (T item : items) {
+				task.run(item);
 			}
+			return;
+		}
 
-			result = true;
-			break;
+		final List<Future<?>> futures = new ArrayList<Future<?>>(workers);
+		final Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				T item;
+				while ((item = queue.poll()) != null) {
+					task.run(item);
+				}
+			}
+		};
+		for (int i = 0; i < workers; i++) {
+			futures.add(getWriteExecutor().submit(worker));
 		}
-		default: {
+
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			queue.clear();
+			Thread.currentThread().interrupt();
+			throw new StanbolClientException(
+					"Interrupted while running a bulk EntityHub operation", e);
+		} catch (ExecutionException e) {
+			queue.clear();
 			throw new StanbolServiceException(
-					createUnknownResponseErrorMessageString(statusInfo));
+					"Error running a bulk EntityHub operation", e.getCause());
 		}
+	}
+
+	private Boolean deleteAux(String id) throws StanbolServiceException,
+			StanbolClientException {
+		Boolean result;
+
+		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH).path("entity")
+				.queryParam("id", id).build();
+
+		Response response;
+		try {
+			response = RestClientExecutor.delete(uri);
+		} finally {
+			invalidate(id);
+		}
+
+		try {
+			final StatusType statusInfo = response.getStatusInfo();
+			switch (statusInfo.getFamily()) {
+			case CLIENT_ERROR: {
+				final int statusCode = statusInfo.getStatusCode();
+				if (Status.NOT_FOUND.equals(Status.fromStatusCode(statusCode))) {
+					result = false;
+				} else {
+					throw new StanbolClientException(
+							String.format(
+									"An unknown client error occurred while deleting content for entity ID \"%s\": [HTTP %d] %s",
+									id, statusCode, statusInfo.getReasonPhrase()));
+				}
+				break;
+			}
+			case SERVER_ERROR: {
+				final int statusCode = statusInfo.getStatusCode();
+				throw new StanbolServiceException(
+						"Error while deleting content from Stanbol server: [HTTP "
+								+ statusCode + "] " + statusInfo.getReasonPhrase());
+			}
+			case SUCCESSFUL: {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Entity " + id
+							+ " has been sucessfully deleted at "
+							+ response.getLocation());
+				}
+
+				result = true;
+				break;
+			}
+			default: {
+				throw new StanbolServiceException(
+						createUnknownResponseErrorMessageString(statusInfo));
+			}
+			}
+		} finally {
+			response.close();
 		}
 
 		return result;
@@ -426,11 +1266,18 @@ public class EntityHubImpl implements EntityHub {
 	@Override
 	public Entity lookup(String id, Boolean create)
 			throws StanbolServiceException, StanbolClientException {
-		Entity result;
-
 		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH).path("lookup")
 				.queryParam("id", id).queryParam("create", create.toString())
 				.build();
+		// A lookup creating the Symbol must reach the server even if a
+		// previous lookup without creation could not find it
+		return getCached(new EntityCache.Key(null, id, true), uri,
+				!create.booleanValue());
+	}
+
+	private Entity lookupAux(URI uri, String id)
+			throws StanbolServiceException, StanbolClientException {
+		Entity result;
 
 		Response response = RestClientExecutor.get(uri, new MediaType(
 				"application", "rdf+xml"));
@@ -500,20 +1347,9 @@ public class EntityHubImpl implements EntityHub {
 	public Collection<Entity> search(String name, String field,
 			String language, LDPathProgram ldpath, int limit, int offset)
 			throws StanbolServiceException, StanbolClientException {
-
-		UriBuilder findBuilder = builder.clone().path(STANBOL_ENTITYHUB_PATH)
-				.path("find").queryParam("name", name);
-
-		if (field != null && !field.equals(""))
-			findBuilder = findBuilder.queryParam("field", field);
-		if (language != null && !language.equals(""))
-			findBuilder = findBuilder.queryParam("language", language);
-
-		URI uri = findBuilder.queryParam("ldpath", ldpath.toString())
-				.queryParam("limit", "" + limit)
-				.queryParam("offset", "" + offset).build();
-
-		return searchAux(uri, name);
+		return searchAux(
+				findUri(null, name, field, language, ldpath, limit, offset),
+				name);
 	}
 
 	/**
@@ -525,28 +1361,109 @@ public class EntityHubImpl implements EntityHub {
 	public Collection<Entity> search(String site, String name, String field,
 			String language, LDPathProgram ldpath, int limit, int offset)
 			throws StanbolServiceException, StanbolClientException {
-		UriBuilder findBuilder = builder.clone().path(STANBOL_ENTITYHUB_PATH)
-				.path(STANBOL_ENTITYHUB_SITE_PATH).path(site).path("find")
-				.queryParam("name", name);
+		return searchAux(
+				findUri(site, name, field, language, ldpath, limit, offset),
+				name);
+	}
+
+	/**
+	 * @see EntityHub#searchIterator(String, String, String, LDPathProgram,
+	 *      int)
+	 */
+	@Override
+	public CloseableIterator<Entity> searchIterator(String name, String field,
+			String language, LDPathProgram ldpath, int pageSize)
+			throws StanbolServiceException, StanbolClientException {
+		return searchIterator(null, name, field, language, ldpath, pageSize);
+	}
+
+	/**
+	 * @see EntityHub#searchIterator(String, String, String, String,
+	 *      LDPathProgram, int)
+	 */
+	@Override
+	public CloseableIterator<Entity> searchIterator(final String site,
+			final String name, final String field, final String language,
+			final LDPathProgram ldpath, int pageSize)
+			throws StanbolServiceException, StanbolClientException {
+		return new PagedSearchIterator(new PagedSearchIterator.PageLoader() {
+			@Override
+			public List<Entity> load(int offset, int limit)
+					throws StanbolServiceException, StanbolClientException {
+				return searchAux(
+						findUri(site, name, field, language, ldpath, limit,
+								offset), name);
+			}
+		}, pageSize, getBackgroundExecutor());
+	}
+
+	private URI findUri(String site, String name, String field,
+			String language, LDPathProgram ldpath, int limit, int offset) {
+		UriBuilder findBuilder = builder.clone().path(STANBOL_ENTITYHUB_PATH);
+		if (site != null) {
+			findBuilder = findBuilder.path(STANBOL_ENTITYHUB_SITE_PATH).path(
+					site);
+		}
+		findBuilder = findBuilder.path("find").queryParam("name", name);
 
 		if (field != null && !field.equals(""))
 			findBuilder = findBuilder.queryParam("field", field);
 		if (language != null && !language.equals(""))
 			findBuilder = findBuilder.queryParam("language", language);
 
-		URI uri = findBuilder.queryParam("ldpath", ldpath.toString())
+		return findBuilder.queryParam("ldpath", ldpath.toURLEncodedString())
 				.queryParam("limit", "" + limit)
 				.queryParam("offset", "" + offset).build();
+	}
+
+	/**
+	 * @see EntityHub#query(FieldQuery)
+	 */
+	@Override
+	public Collection<Entity> query(FieldQuery query)
+			throws StanbolServiceException, StanbolClientException {
+		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH).path("query")
+				.build();
+		return queryAux(uri, query);
+	}
+
+	/**
+	 * @see EntityHub#query(String, FieldQuery)
+	 */
+	@Override
+	public Collection<Entity> query(String site, FieldQuery query)
+			throws StanbolServiceException, StanbolClientException {
+		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH)
+				.path(STANBOL_ENTITYHUB_SITE_PATH).path(site).path("query")
+				.build();
+		return queryAux(uri, query);
+	}
 
-		return searchAux(uri, name);
+	private List<Entity> queryAux(URI uri, FieldQuery query)
+			throws StanbolServiceException, StanbolClientException {
+		String json;
+		try {
+			json = query.toJSON().toString();
+		} catch (JSONException e) {
+			throw new StanbolClientException("Malformed Field Query", e);
+		}
+
+		Response response = RestClientExecutor.post(uri,
+				javax.ws.rs.client.Entity.entity(json,
+						MediaType.APPLICATION_JSON_TYPE), new MediaType(
+						"application", "rdf+xml"));
+		return searchAux(uri, "field query", response);
 	}
 
 	private List<Entity> searchAux(URI uri, String name)
 			throws StanbolServiceException, StanbolClientException {
+		return searchAux(uri, name, RestClientExecutor.get(uri,
+				new MediaType("application", "rdf+xml")));
+	}
+
+	private List<Entity> searchAux(URI uri, String name, Response response)
+			throws StanbolServiceException, StanbolClientException {
 		List<Entity> result;
-		
-		Response response = RestClientExecutor.get(uri, new MediaType(
-				"application", "rdf+xml"));
 
 		// Check HTTP status code
 		final StatusType statusInfo = response.getStatusInfo();
@@ -574,18 +1491,12 @@ public class EntityHubImpl implements EntityHub {
 			Model model = ModelFactory.createDefaultModel();
 			model.read(response.readEntity(InputStream.class), null);
 
-			result = new ArrayList<>();
-			ResIterator iterator = model.listSubjects();
-
-			while (iterator.hasNext()) {
-				RDFNode next = iterator.next();
-				if (next.isResource())
-					if (!next
-							.asResource()
-							.getURI()
-							.equals("http://stanbol.apache.org/ontology/entityhub/query#QueryResultSet"))
-						result.add(new Entity(next.asResource().getModel(), next
-								.asResource().getURI()));
+			// Every Entity only keeps its own statements, in rank order
+			Map<String, Model> entities = ModelPartitioner.byScore(model);
+			entities.remove("http://stanbol.apache.org/ontology/entityhub/query#QueryResultSet");
+			result = new ArrayList<>(entities.size());
+			for (Map.Entry<String, Model> entity : entities.entrySet()) {
+				result.add(newEntity(entity.getValue(), entity.getKey()));
 			}
 			break;
 		}
@@ -607,8 +1518,8 @@ public class EntityHubImpl implements EntityHub {
 			throws StanbolServiceException, StanbolClientException {
 		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH).path("ldpath")
 				.queryParam("context", context.toString())
-				.queryParam("ldpath", ldPathProgram.toString()).build();
-		return ldpathAux(uri);
+				.queryParam("ldpath", ldPathProgram.toURLEncodedString()).build();
+		return ldpathCached(null, context, ldPathProgram, uri);
 	}
 
 	/**
@@ -621,15 +1532,127 @@ public class EntityHubImpl implements EntityHub {
 		URI uri = builder.clone().path(STANBOL_ENTITYHUB_PATH)
 				.path(STANBOL_ENTITYHUB_SITE_PATH).path(site).path("ldpath")
 				.queryParam("context", context.toString())
-				.queryParam("ldpath", ldPathProgram.toString()).build();
-		return ldpathAux(uri);
+				.queryParam("ldpath", ldPathProgram.toURLEncodedString()).build();
+		return ldpathCached(site, context, ldPathProgram, uri);
+	}
+
+	/**
+	 * @see EntityHub#ldpath(String, Collection, LDPathProgram)
+	 */
+	@Override
+	public Map<String, Model> ldpath(String site, Collection<String> contexts,
+			LDPathProgram ldPathProgram) throws StanbolServiceException,
+			StanbolClientException {
+		final Map<String, Model> result = new LinkedHashMap<String, Model>();
+
+		final List<String> pending = new ArrayList<String>(contexts.size());
+		final LDPathEvaluator evaluator = localLDPath ? new LDPathEvaluator(
+				ldPathProgram) : null;
+		for (String context : new LinkedHashSet<String>(contexts)) {
+			Model cached = ldpathCache != null ? ldpathCache
+					.get(new LDPathResultCache.Key(site, context,
+							ldPathProgram)) : null;
+			if (cached == null) {
+				cached = evaluateLocally(evaluator, site, context);
+			}
+			result.put(context, cached);
+			if (cached == null) {
+				pending.add(context);
+			}
+		}
+		if (pending.isEmpty()) {
+			return result;
+		}
+
+		UriBuilder ldpathBuilder = builder.clone().path(STANBOL_ENTITYHUB_PATH);
+		if (site != null && !site.equals("")) {
+			ldpathBuilder = ldpathBuilder.path(STANBOL_ENTITYHUB_SITE_PATH)
+					.path(site);
+		}
+		final Map<String, Model> models = ldpathChunked(ldpathBuilder.path(
+				"ldpath").build(), pending, ldPathProgram.toString(),
+				Long.MAX_VALUE);
+		for (String context : pending) {
+			Model model = models.get(context);
+			if (model == null) {
+				model = ModelFactory.createDefaultModel();
+			}
+			if (ldpathCache != null) {
+				ldpathCache.put(new LDPathResultCache.Key(site, context,
+						ldPathProgram), model);
+			}
+			result.put(context, model);
+		}
+		return result;
+	}
+
+	private Model ldpathCached(String site, String context,
+			LDPathProgram ldPathProgram, URI uri)
+			throws StanbolServiceException, StanbolClientException {
+		final LDPathResultCache.Key key = ldpathCache != null ? new LDPathResultCache.Key(
+				site, context, ldPathProgram) : null;
+		Model result = key != null ? ldpathCache.get(key) : null;
+		if (result == null && localLDPath) {
+			result = evaluateLocally(new LDPathEvaluator(ldPathProgram), site,
+					context);
+		}
+		if (result == null) {
+			result = ldpathAux(uri);
+			if (key != null) {
+				ldpathCache.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluate an LDPath program over the cached entities of a site
+	 * 
+	 * @return Result or null if the program can not be evaluated locally
+	 */
+	private Model evaluateLocally(LDPathEvaluator evaluator, final String site,
+			String context) {
+		if (evaluator == null || !evaluator.isSupported()) {
+			return null;
+		}
+		final Model result = evaluator.evaluate(context,
+				new LDPathEvaluator.Resolver() {
+					@Override
+					public Model getModel(String uri) {
+						final Entity entity = entityCache
+								.peek(new EntityCache.Key(site, uri, false));
+						return entity != null ? entity.getResource()
+								.getModel() : null;
+					}
+				});
+		if (result != null) {
+			localLDPathCount.incrementAndGet();
+		}
+		return result;
 	}
 
 	private Model ldpathAux(URI uri) throws StanbolServiceException, StanbolClientException {
+		return ldpathAux(uri, RestClientExecutor.get(uri, new MediaType(
+				"application", "rdf+xml")));
+	}
+
+	private Model ldpathAux(URI uri, Collection<String> contexts,
+			String program) throws StanbolServiceException,
+			StanbolClientException {
+		final Form form = new Form();
+		for (String context : contexts) {
+			form.param("context", context);
+		}
+		form.param("ldpath", program);
+
+		return ldpathAux(uri, RestClientExecutor.post(uri,
+				javax.ws.rs.client.Entity.form(form), new MediaType(
+						"application", "rdf+xml")));
+	}
+
+	private Model ldpathAux(URI uri, Response response)
+			throws StanbolServiceException, StanbolClientException {
 		Model result;
-		
-		Response response = RestClientExecutor.get(uri, new MediaType(
-				"application", "rdf+xml"));
 
 		// Check HTTP status code
 		final StatusType statusInfo = response.getStatusInfo();
@@ -676,10 +1699,16 @@ public class EntityHubImpl implements EntityHub {
 		model.read(is, null);
 
 		if (extractId)
-			return new Entity(model, model.listSubjects().next().getURI()
+			return newEntity(model, model.listSubjects().next().getURI()
 					.replace(".meta", ""));
 		else
-			return new Entity(model, id);
+			return newEntity(model, id);
+	}
+
+	private Entity newEntity(Model model, String id) {
+		final Entity entity = new Entity(model, id);
+		entity.setIndexed(indexedEntities);
+		return entity;
 	}
 
 	/*
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+/**
+ * Count-Min sketch of 4-bit counters estimating the access frequency of cache
+ * keys within a recent window, as used by TinyLFU admission policies. Once the
+ * number of recorded accesses reaches the sample size, all counters are halved
+ * so old popularity fades away
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L,
+			0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final int MAX_COUNT = 15;
+
+	private final long[] table;
+
+	private final int tableMask;
+
+	private final int sampleSize;
+
+	private int additions = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param expectedEntries
+	 *            Expected number of entries kept by the cache
+	 */
+	FrequencySketch(final long expectedEntries) {
+		final int entries = (int) Math.max(16,
+				Math.min(expectedEntries, 1 << 24));
+		// 16 counters per long, 4 counters touched per key
+		this.table = new long[Integer.highestOneBit(entries - 1) << 1];
+		this.tableMask = table.length - 1;
+		this.sampleSize = 10 * entries;
+	}
+
+	/**
+	 * Record an access to a key
+	 *
+	 * @param hashCode
+	 *            Key hash code
+	 */
+	synchronized void increment(final int hashCode) {
+		final int hash = spread(hashCode);
+		final int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * Estimate the number of recent accesses to a key
+	 *
+	 * @param hashCode
+	 *            Key hash code
+	 * @return Estimated frequency, between 0 and 15
+	 */
+	synchronized int frequency(final int hashCode) {
+		final int hash = spread(hashCode);
+		final int start = (hash & 3) << 2;
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < 4; i++) {
+			final int index = indexOf(hash, i);
+			final int offset = (start + i) << 2;
+			final int count = (int) ((table[index] >>> offset) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	private boolean incrementAt(final int index, final int counter) {
+		final int offset = counter << 2;
+		final long mask = 0xfL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	private int indexOf(final int hash, final int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return ((int) h) & tableMask;
+	}
+
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions = additions >>> 1;
+	}
+
+	private static int spread(final int x) {
+		int h = ((x >>> 16) ^ x) * 0x45d9f3b;
+		h = ((h >>> 16) ^ h) * 0x45d9f3b;
+		return (h >>> 16) ^ h;
+	}
+}
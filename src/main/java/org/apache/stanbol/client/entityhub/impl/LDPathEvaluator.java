@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.stanbol.client.entityhub.model.Entity;
+import org.apache.stanbol.client.entityhub.model.LDPathProgram;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.hp.hpl.jena.datatypes.RDFDatatype;
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.NodeIterator;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.vocabulary.OWL;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import com.hp.hpl.jena.vocabulary.XSD;
+
+/**
+ * Client side evaluator of a subset of LDPath, used to answer LDPath requests
+ * from the RDF data the client already holds. The supported subset is made of
+ * field definitions like
+ *
+ * <pre>
+ * field = step ( / step )* ( :: type )?
+ * </pre>
+ *
+ * where every step is a property, as prefixed name or <code>&lt;uri&gt;</code>,
+ * optionally followed by a language filter (<code>[@en]</code>,
+ * <code>[@none]</code>), and the type is <code>xsd:string</code>,
+ * <code>xsd:anyURI</code> or any other XML Schema datatype. Field names must
+ * be prefixed. Programs with any other construct (functions, unions, tests,
+ * reverse or recursive paths...) are not supported and must be evaluated by
+ * the server.
+ *
+ * Besides the prefixes defined by the program, the default prefixes of the
+ * Stanbol LDPath endpoint for the common vocabularies can be used
+ */
+public class LDPathEvaluator {
+
+	/**
+	 * Source of the RDF data of the resources reached by the evaluated paths
+	 */
+	public interface Resolver {
+
+		/**
+		 * Get the RDF data of a resource
+		 *
+		 * @param uri
+		 *            Resource URI
+		 * @return {@link Model} with the statements of the resource or
+		 *         <code>null</code> if they are not available
+		 */
+		Model getModel(String uri);
+	}
+
+	private static final Map<String, String> DEFAULT_NAMESPACES = ImmutableMap
+			.<String, String> builder().put("rdf", RDF.getURI())
+			.put("rdfs", RDFS.getURI()).put("owl", OWL.getURI())
+			.put("xsd", XSD.getURI())
+			.put("skos", "http://www.w3.org/2004/02/skos/core#")
+			.put("dc", "http://purl.org/dc/terms/")
+			.put("dc-elements", "http://purl.org/dc/elements/1.1/")
+			.put("foaf", "http://xmlns.com/foaf/0.1/")
+			.put("geo", "http://www.w3.org/2003/01/geo/wgs84_pos#")
+			.put("dbp-ont", "http://dbpedia.org/ontology/")
+			.put("dbp-prop", "http://dbpedia.org/property/")
+			.put("schema", "http://schema.org/").build();
+
+	private static final String NO_LANGUAGE = "none";
+
+	private static final String NAME = "(?:<([^<>\\s]+)>|([A-Za-z][\\w.-]*):([\\w.-]+))";
+
+	private static final Pattern STEP = Pattern.compile("\\s*" + NAME
+			+ "(?:\\[@([A-Za-z0-9-]+)\\])?\\s*");
+
+	private static final Pattern TYPE = Pattern.compile("\\s*" + NAME
+			+ "\\s*");
+
+	private static final class Step {
+
+		private final Property property;
+
+		private final String language;
+
+		Step(final Property property, final String language) {
+			this.property = property;
+			this.language = language;
+		}
+
+		boolean accept(final RDFNode node) {
+			if (language == null) {
+				return true;
+			}
+			if (!node.isLiteral()) {
+				return false;
+			}
+			final String nodeLanguage = node.asLiteral().getLanguage();
+			return language.equals(NO_LANGUAGE) ? nodeLanguage.isEmpty()
+					: language.equalsIgnoreCase(nodeLanguage);
+		}
+	}
+
+	private static final class Field {
+
+		private final Property property;
+
+		private final List<Step> path;
+
+		private final String type;
+
+		Field(final Property property, final List<Step> path,
+				final String type) {
+			this.property = property;
+			this.path = path;
+			this.type = type;
+		}
+	}
+
+	private final List<Field> fields;
+
+	private final Map<String, String> prefixes;
+
+	/**
+	 * Constructor. Parses the field definitions of the program
+	 *
+	 * @param program
+	 *            {@link LDPathProgram} to evaluate
+	 */
+	public LDPathEvaluator(final LDPathProgram program) {
+		final Map<String, String> namespaces = new HashMap<String, String>(
+				DEFAULT_NAMESPACES);
+		namespaces.putAll(program.getNamespaces());
+		this.prefixes = ImmutableMap.copyOf(program.getNamespaces());
+
+		final List<Field> parsed = new ArrayList<Field>();
+		for (Entry<String, String> definition : program
+				.getFieldDefinitions().entrySet()) {
+			final Field field = parseField(namespaces, definition.getKey(),
+					definition.getValue());
+			if (field == null) {
+				parsed.clear();
+				break;
+			}
+			parsed.add(field);
+		}
+		this.fields = parsed.isEmpty() ? null : ImmutableList.copyOf(parsed);
+	}
+
+	/**
+	 * Check if the program only uses the LDPath subset supported by the
+	 * evaluator
+	 *
+	 * @return true if the program can be evaluated locally
+	 */
+	public boolean isSupported() {
+		return fields != null;
+	}
+
+	/**
+	 * Evaluate the program over the statements of an {@link Entity}. Paths
+	 * leaving the entity can not be evaluated
+	 *
+	 * @param entity
+	 *            Context {@link Entity}
+	 * @return Result graph, with the same shape as the results of the Stanbol
+	 *         LDPath endpoint, or <code>null</code> if the program is not
+	 *         supported or needs data of other resources
+	 */
+	public Model evaluate(final Entity entity) {
+		final Model model = entity.getResource().getModel();
+		final String id = entity.getUri();
+		return evaluate(id, new Resolver() {
+			@Override
+			public Model getModel(final String uri) {
+				return id.equals(uri) ? model : null;
+			}
+		});
+	}
+
+	/**
+	 * Evaluate the program for a context
+	 *
+	 * @param context
+	 *            Context URI
+	 * @param resolver
+	 *            {@link Resolver} of the data of the context and of the
+	 *            resources reached by the paths
+	 * @return Result graph, with the same shape as the results of the Stanbol
+	 *         LDPath endpoint, or <code>null</code> if the program is not
+	 *         supported or the resolver misses some data
+	 */
+	public Model evaluate(final String context, final Resolver resolver) {
+		if (fields == null) {
+			return null;
+		}
+		final Model contextModel = resolver.getModel(context);
+		if (contextModel == null) {
+			return null;
+		}
+
+		final Model result = ModelFactory.createDefaultModel();
+		result.setNsPrefixes(prefixes);
+		final Resource subject = result.createResource(context);
+		for (Field field : fields) {
+			final List<RDFNode> values = walk(field,
+					contextModel.getResource(context), resolver);
+			if (values == null) {
+				return null;
+			}
+			for (RDFNode value : values) {
+				final RDFNode converted = convert(result, value, field.type);
+				if (converted != null) {
+					result.add(subject, field.property, converted);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static List<RDFNode> walk(final Field field,
+			final Resource context, final Resolver resolver) {
+		List<RDFNode> current = Collections.<RDFNode> singletonList(context);
+		for (Step step : field.path) {
+			final List<RDFNode> next = new ArrayList<RDFNode>();
+			for (RDFNode node : current) {
+				if (node.isLiteral()) {
+					continue;
+				}
+				Resource resource = node.asResource();
+				if (resource.isURIResource() && resource != context) {
+					final Model model = resolver.getModel(resource.getURI());
+					if (model == null) {
+						return null;
+					}
+					resource = model.getResource(resource.getURI());
+				}
+				final NodeIterator objects = resource.getModel()
+						.listObjectsOfProperty(resource, step.property);
+				while (objects.hasNext()) {
+					final RDFNode object = objects.next();
+					if (step.accept(object)) {
+						next.add(object);
+					}
+				}
+			}
+			current = next;
+		}
+		return current;
+	}
+
+	private static RDFNode convert(final Model result, final RDFNode value,
+			final String type) {
+		if (type == null) {
+			return value;
+		}
+		if (type.equals(XSD.xstring.getURI())) {
+			if (value.isLiteral()) {
+				return result.createLiteral(value.asLiteral().getLexicalForm());
+			}
+			return value.isURIResource() ? result.createLiteral(value
+					.asResource().getURI()) : null;
+		}
+		if (type.equals(XSD.anyURI.getURI())) {
+			if (value.isLiteral()) {
+				return result.createResource(value.asLiteral()
+						.getLexicalForm());
+			}
+			return value.isURIResource() ? value : null;
+		}
+		if (!value.isLiteral()) {
+			return null;
+		}
+		final Literal literal = value.asLiteral();
+		final RDFDatatype datatype = TypeMapper.getInstance().getTypeByName(
+				type);
+		return datatype.isValid(literal.getLexicalForm()) ? result
+				.createTypedLiteral(literal.getLexicalForm(), datatype) : null;
+	}
+
+	private static Field parseField(final Map<String, String> namespaces,
+			final String name, String definition) {
+		final int qIndex = name.indexOf(':');
+		if (qIndex == -1) {
+			return null;
+		}
+		final String fieldNamespace = namespaces.get(name.substring(0, qIndex));
+		if (fieldNamespace == null) {
+			return null;
+		}
+
+		definition = definition.trim();
+		if (definition.endsWith(";")) {
+			definition = definition.substring(0, definition.length() - 1);
+		}
+		String path = definition;
+		String type = null;
+		final int typeIndex = definition.indexOf("::");
+		if (typeIndex != -1) {
+			path = definition.substring(0, typeIndex);
+			final Matcher matcher = TYPE.matcher(definition
+					.substring(typeIndex + 2));
+			if (!matcher.matches()) {
+				return null;
+			}
+			type = expand(namespaces, matcher, 1);
+			if (type == null || !isSupportedType(type)) {
+				return null;
+			}
+		}
+
+		final List<Step> steps = new ArrayList<Step>();
+		final Matcher matcher = STEP.matcher(path);
+		int position = 0;
+		while (true) {
+			matcher.region(position, path.length());
+			if (!matcher.lookingAt()) {
+				return null;
+			}
+			final String property = expand(namespaces, matcher, 1);
+			if (property == null) {
+				return null;
+			}
+			steps.add(new Step(ResourceFactory.createProperty(property),
+					matcher.group(4)));
+			position = matcher.end();
+			if (position == path.length()) {
+				break;
+			}
+			if (path.charAt(position) != '/') {
+				return null;
+			}
+			position++;
+		}
+
+		return new Field(ResourceFactory.createProperty(fieldNamespace
+				+ name.substring(qIndex + 1)),
+				ImmutableList.copyOf(steps), type);
+	}
+
+	/**
+	 * Get the URI matched by the {@link #NAME} groups starting at
+	 * <code>group</code>
+	 */
+	private static String expand(final Map<String, String> namespaces,
+			final Matcher matcher, final int group) {
+		if (matcher.group(group) != null) {
+			return matcher.group(group);
+		}
+		final String namespace = namespaces.get(matcher.group(group + 1));
+		return namespace != null ? namespace + matcher.group(group + 2) : null;
+	}
+
+	private static boolean isSupportedType(final String type) {
+		return type.startsWith(XSD.getURI())
+				&& TypeMapper.getInstance().getTypeByName(type) != null;
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.stanbol.client.entityhub.model.LDPathProgram;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Cache of LDPath results, keyed by referenced site, context and canonical
+ * form of the executed {@link LDPathProgram}. Results are not kept as
+ * {@link Model}s: only the parsed triples and the namespace prefixes are
+ * stored, and a new {@link Model} is filled from them on every hit, so callers
+ * can freely modify the returned results. The cache is bounded by weight
+ * (number of triples) and entries expire after a configurable time
+ */
+class LDPathResultCache {
+
+	/**
+	 * Cache key: referenced site (null for the EntityHub itself, also when
+	 * given as the empty string), context and canonical LDPath program
+	 */
+	static final class Key {
+
+		private final String site;
+
+		private final String context;
+
+		private final String program;
+
+		private final int hash;
+
+		Key(final String site, final String context,
+				final LDPathProgram program) {
+			this.site = Strings.emptyToNull(site);
+			this.context = context;
+			this.program = program.toCanonicalString();
+			this.hash = Objects.hashCode(site, context, this.program);
+		}
+
+		boolean isLocal() {
+			return site == null;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return hash == other.hash && Objects.equal(site, other.site)
+					&& Objects.equal(context, other.context)
+					&& program.equals(other.program);
+		}
+	}
+
+	/**
+	 * Compact LDPath result: the triples of the returned graph and its
+	 * namespace prefixes
+	 */
+	private static final class Result {
+
+		private final Triple[] triples;
+
+		private final Map<String, String> prefixes;
+
+		Result(final Model model) {
+			this.triples = model.getGraph().find(null, null, null).toList()
+					.toArray(new Triple[0]);
+			this.prefixes = ImmutableMap.copyOf(model.getNsPrefixMap());
+		}
+
+		Model toModel() {
+			final Model model = ModelFactory.createDefaultModel();
+			model.setNsPrefixes(prefixes);
+			final Graph graph = model.getGraph();
+			for (Triple triple : triples) {
+				graph.add(triple);
+			}
+			return model;
+		}
+
+		int weight() {
+			return Math.max(1, triples.length);
+		}
+	}
+
+	private final Cache<Key, Result> cache;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maximumWeight
+	 *            Maximum number of triples kept in the cache
+	 * @param expireAfterWrite
+	 *            Time to live of the cached results
+	 * @param unit
+	 *            Time unit of <code>expireAfterWrite</code>
+	 */
+	LDPathResultCache(final long maximumWeight, final long expireAfterWrite,
+			final TimeUnit unit) {
+		final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+		if (expireAfterWrite > 0) {
+			builder.expireAfterWrite(expireAfterWrite, unit);
+		}
+		this.cache = builder.maximumWeight(maximumWeight)
+				.weigher(new Weigher<Key, Result>() {
+					@Override
+					public int weigh(final Key key, final Result value) {
+						return value.weight();
+					}
+				}).recordStats().build();
+	}
+
+	/**
+	 * Get a cached LDPath result
+	 *
+	 * @param key
+	 *            LDPath result {@link Key}
+	 * @return New {@link Model} with the cached result or <code>null</code>
+	 */
+	Model get(final Key key) {
+		final Result result = cache.getIfPresent(key);
+		return result != null ? result.toModel() : null;
+	}
+
+	/**
+	 * Cache an LDPath result returned by the server
+	 *
+	 * @param key
+	 *            LDPath result {@link Key}
+	 * @param model
+	 *            Returned {@link Model}. It is not referenced by the cache
+	 */
+	void put(final Key key, final Model model) {
+		cache.put(key, new Result(model));
+	}
+
+	/**
+	 * Invalidate all the EntityHub (not referenced sites) results. LDPath
+	 * programs can follow paths through any entity, so a change in a single
+	 * entity can affect results of other contexts
+	 */
+	void invalidateLocal() {
+		final Iterator<Key> it = cache.asMap().keySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().isLocal()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Invalidate all the entries
+	 */
+	void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	/**
+	 * Get a snapshot of the cache statistics
+	 *
+	 * @return {@link CacheStats}
+	 */
+	CacheStats stats() {
+		return cache.stats();
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+/**
+ * Split a multi-entity EntityHub response in one small {@link Model} per
+ * entity, so every entity only holds and scans its own statements. The
+ * statements about the <code>.meta</code> resource of an entity and about
+ * the blank nodes it references are kept with the entity
+ */
+final class ModelPartitioner {
+
+	private static final String META_SUFFIX = ".meta";
+
+	/**
+	 * Score of a query result
+	 */
+	static final Property SCORE = ResourceFactory
+			.createProperty("http://stanbol.apache.org/ontology/entityhub/query#score");
+
+	private ModelPartitioner() {
+	}
+
+	/**
+	 * Partition the statements of a model by subject in a single pass
+	 * 
+	 * @param model
+	 *            Parsed response
+	 * @return Map of Entity URI - Entity {@link Model}, in no particular
+	 *         order, since the statements of a parsed model are not kept in
+	 *         response order
+	 */
+	static Map<String, Model> bySubject(final Model model) {
+		final Map<String, Model> result = new LinkedHashMap<String, Model>();
+		final Map<AnonId, Model> blankOwners = new LinkedHashMap<AnonId, Model>();
+		final ListMultimap<AnonId, Statement> pending = ArrayListMultimap
+				.create();
+
+		final StmtIterator iterator = model.listStatements();
+		while (iterator.hasNext()) {
+			final Statement statement = iterator.next();
+			final Resource subject = statement.getSubject();
+			if (subject.isAnon()) {
+				pending.put(subject.getId(), statement);
+				continue;
+			}
+
+			String uri = subject.getURI();
+			if (uri.endsWith(META_SUFFIX)) {
+				uri = uri.substring(0, uri.length() - META_SUFFIX.length());
+			}
+			Model entityModel = result.get(uri);
+			if (entityModel == null) {
+				entityModel = ModelFactory.createDefaultModel();
+				result.put(uri, entityModel);
+			}
+			entityModel.add(statement);
+
+			final RDFNode object = statement.getObject();
+			if (object.isAnon()) {
+				blankOwners.put(object.asResource().getId(), entityModel);
+			}
+		}
+
+		// Blank nodes are attached to the entity referencing them, possibly
+		// through other blank nodes
+		boolean attached = true;
+		while (attached && !pending.isEmpty()) {
+			attached = false;
+			final Iterator<AnonId> it = pending.keySet().iterator();
+			while (it.hasNext()) {
+				final AnonId id = it.next();
+				final Model owner = blankOwners.get(id);
+				if (owner == null) {
+					continue;
+				}
+				final List<Statement> statements = new ArrayList<Statement>(
+						pending.get(id));
+				it.remove();
+				for (Statement statement : statements) {
+					owner.add(statement);
+					if (statement.getObject().isAnon()) {
+						blankOwners.put(statement.getObject().asResource()
+								.getId(), owner);
+					}
+				}
+				attached = true;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Partition the statements of a query response by subject, ranking the
+	 * entities as the server did. RDF responses do not keep the order of the
+	 * results, so entities are sorted by descending query score. Entities
+	 * without a score go last, and ties are sorted by URI
+	 * 
+	 * @param model
+	 *            Parsed response
+	 * @return Map of Entity URI - Entity {@link Model}, in rank order
+	 */
+	static Map<String, Model> byScore(final Model model) {
+		final Map<String, Model> partitions = bySubject(model);
+		final Map<String, Double> scores = new HashMap<String, Double>();
+		for (Map.Entry<String, Model> partition : partitions.entrySet()) {
+			scores.put(partition.getKey(), score(partition.getValue(),
+					partition.getKey()));
+		}
+
+		final List<String> uris = new ArrayList<String>(partitions.keySet());
+		Collections.sort(uris, new Comparator<String>() {
+			@Override
+			public int compare(final String a, final String b) {
+				final int result = Double.compare(scores.get(b),
+						scores.get(a));
+				return result != 0 ? result : a.compareTo(b);
+			}
+		});
+
+		final Map<String, Model> result = new LinkedHashMap<String, Model>();
+		for (String uri : uris) {
+			result.put(uri, partitions.get(uri));
+		}
+		return result;
+	}
+
+	private static double score(final Model entity, final String uri) {
+		for (String subject : new String[] { uri, uri + META_SUFFIX }) {
+			final Statement statement = entity.getProperty(
+					entity.createResource(subject), SCORE);
+			if (statement != null && statement.getObject().isLiteral()
+					&& statement.getLiteral().getValue() instanceof Number) {
+				return ((Number) statement.getLiteral().getValue())
+						.doubleValue();
+			}
+		}
+		return Double.NEGATIVE_INFINITY;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.stanbol.client.entityhub.model.CloseableIterator;
+import org.apache.stanbol.client.entityhub.model.Entity;
+import org.apache.stanbol.client.exception.StanbolClientException;
+import org.apache.stanbol.client.services.exception.StanbolServiceException;
+
+/**
+ * Lazy iterator over all the results of an EntityHub search. Results are
+ * fetched page by page and the next page is requested in background while the
+ * current one is consumed, so at most two pages are kept in memory whatever
+ * the size of the result set. Closing the iterator cancels the request of the
+ * next page. Errors fetching a page after the first one are thrown as
+ * {@link IllegalStateException} with the original exception as cause
+ */
+class PagedSearchIterator implements CloseableIterator<Entity> {
+
+	/**
+	 * Fetch a page of search results
+	 */
+	interface PageLoader {
+		List<Entity> load(int offset, int limit)
+				throws StanbolServiceException, StanbolClientException;
+	}
+
+	private final PageLoader loader;
+
+	private final int pageSize;
+
+	private final ExecutorService executor;
+
+	private Iterator<Entity> current;
+
+	private Future<List<Entity>> next = null;
+
+	private int nextOffset;
+
+	/**
+	 * Constructor. The first page is fetched synchronously
+	 * 
+	 * @param loader
+	 *            Page loader
+	 * @param pageSize
+	 *            Number of results requested per page
+	 * @param executor
+	 *            Executor used to prefetch the next page
+	 * @throws StanbolServiceException
+	 * @throws StanbolClientException
+	 */
+	PagedSearchIterator(final PageLoader loader, final int pageSize,
+			final ExecutorService executor) throws StanbolServiceException,
+			StanbolClientException {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be positive");
+		}
+		this.loader = loader;
+		this.pageSize = pageSize;
+		this.executor = executor;
+		accept(loader.load(0, pageSize));
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (!current.hasNext()) {
+			if (next == null) {
+				return false;
+			}
+			accept(await(next));
+		}
+		return true;
+	}
+
+	@Override
+	public Entity next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return current.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		if (next != null) {
+			next.cancel(true);
+			next = null;
+		}
+		current = Collections.<Entity> emptyList().iterator();
+	}
+
+	private void accept(final List<Entity> page) {
+		current = page.iterator();
+		nextOffset += pageSize;
+		if (page.size() < pageSize) {
+			next = null;
+		} else {
+			final int offset = nextOffset;
+			next = executor.submit(new Callable<List<Entity>>() {
+				@Override
+				public List<Entity> call() throws Exception {
+					return loader.load(offset, pageSize);
+				}
+			});
+		}
+	}
+
+	private static List<Entity> await(final Future<List<Entity>> page) {
+		try {
+			return page.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while fetching search results", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(
+					"Error fetching search results from Stanbol server",
+					e.getCause());
+		}
+	}
+}
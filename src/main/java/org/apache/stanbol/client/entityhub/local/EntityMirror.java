@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.local;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.stanbol.client.EntityHub;
+import org.apache.stanbol.client.entityhub.impl.EntityHubImpl;
+import org.apache.stanbol.client.entityhub.model.Entity;
+import org.apache.stanbol.client.entityhub.model.FieldQuery;
+import org.apache.stanbol.client.exception.StanbolClientException;
+import org.apache.stanbol.client.services.exception.StanbolServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hp.hpl.jena.datatypes.DatatypeFormatException;
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.datatypes.xsd.XSDDateTime;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+
+/**
+ * Incremental local mirror of selected EntityHub entities. Every selection is
+ * a {@link FieldQuery} against the EntityHub or one of its referenced sites.
+ * A {@link #sync()} pages through the results of every selection and fetches
+ * only the entities whose modification time is newer than the mirrored one,
+ * storing them in an {@link EntityStore}. Mirrored entities of a site that
+ * are no longer selected are removed.
+ *
+ * The modification time of a candidate is read from the query results, as
+ * the value of the modification property of the entity or of its
+ * <code>.meta</code> resource, so the selections should select that property.
+ * Candidates without a modification time are fetched on every sync
+ */
+public class EntityMirror implements Closeable {
+
+	/**
+	 * Default modification property, used by the EntityHub metadata
+	 */
+	public static final String DEFAULT_MODIFIED_PROPERTY = "http://purl.org/dc/terms/modified";
+
+	private static final int PAGE_SIZE = 100;
+
+	private static final String META_SUFFIX = ".meta";
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(EntityMirror.class);
+
+	private static final class Selection {
+
+		private final String site;
+
+		private final FieldQuery query;
+
+		Selection(final String site, final FieldQuery query) {
+			this.site = site;
+			this.query = query;
+		}
+	}
+
+	private final EntityHub entityHub;
+
+	private final EntityStore store;
+
+	private final String modifiedProperty;
+
+	private final List<Selection> selections = new ArrayList<Selection>();
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Constructor
+	 *
+	 * @param entityHub
+	 *            Mirrored {@link EntityHub}, not reading from the store
+	 * @param store
+	 *            Local {@link EntityStore}
+	 * @throws IllegalArgumentException
+	 *             If the EntityHub serves <code>get</code> requests from the
+	 *             store
+	 */
+	public EntityMirror(final EntityHub entityHub, final EntityStore store) {
+		this(entityHub, store, DEFAULT_MODIFIED_PROPERTY);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param entityHub
+	 *            Mirrored {@link EntityHub}. It must not be configured to
+	 *            serve <code>get</code> requests from the same store, or the
+	 *            syncs would read the stale mirrored entities instead of the
+	 *            server ones
+	 * @param store
+	 *            Local {@link EntityStore}
+	 * @param modifiedProperty
+	 *            URI of the property holding the modification time of the
+	 *            entities
+	 * @throws IllegalArgumentException
+	 *             If the EntityHub serves <code>get</code> requests from the
+	 *             store
+	 */
+	public EntityMirror(final EntityHub entityHub, final EntityStore store,
+			final String modifiedProperty) {
+		if (entityHub instanceof EntityHubImpl
+				&& ((EntityHubImpl) entityHub).getMirror() == store) {
+			throw new IllegalArgumentException(
+					"The mirrored EntityHub must not read from the mirror it syncs");
+		}
+		this.entityHub = entityHub;
+		this.store = store;
+		this.modifiedProperty = modifiedProperty;
+	}
+
+	/**
+	 * Mirror the results of a query
+	 *
+	 * @param site
+	 *            Referenced site, or null for the entities of the EntityHub
+	 * @param query
+	 *            {@link FieldQuery} selecting the mirrored entities. Its
+	 *            limit and offset are ignored
+	 * @return This mirror
+	 */
+	public synchronized EntityMirror mirror(final String site,
+			final FieldQuery query) {
+		selections.add(new Selection(site, query));
+		return this;
+	}
+
+	/**
+	 * Get the local store
+	 *
+	 * @return {@link EntityStore} holding the mirrored entities
+	 */
+	public EntityStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Bring the mirror up to date
+	 *
+	 * @return Number of fetched entities
+	 * @throws IOException
+	 * @throws StanbolServiceException
+	 * @throws StanbolClientException
+	 */
+	public synchronized int sync() throws IOException,
+			StanbolServiceException, StanbolClientException {
+		final Map<String, Set<String>> selected = new HashMap<String, Set<String>>();
+		int fetched = 0;
+		for (Selection selection : selections) {
+			Set<String> ids = selected.get(selection.site);
+			if (ids == null) {
+				ids = new HashSet<String>();
+				selected.put(selection.site, ids);
+			}
+
+			for (int offset = 0;; offset += PAGE_SIZE) {
+				final FieldQuery page = selection.query.page(offset, PAGE_SIZE);
+				final Collection<Entity> results = selection.site == null ? entityHub
+						.query(page) : entityHub.query(selection.site, page);
+
+				for (Entity candidate : results) {
+					final String id = candidate.getUri();
+					if (!ids.add(id)) {
+						continue;
+					}
+					final long modified = getModified(candidate);
+					if (modified > 0
+							&& modified <= store.getModified(selection.site, id)) {
+						continue;
+					}
+					final Entity entity = selection.site == null ? entityHub
+							.get(id) : entityHub.get(selection.site, id);
+					if (entity != null) {
+						final long stored = getModified(entity);
+						store.put(selection.site, entity,
+								stored > 0 ? stored : modified);
+						fetched++;
+					}
+				}
+				if (results.size() < PAGE_SIZE) {
+					break;
+				}
+			}
+		}
+
+		for (Map.Entry<String, Set<String>> entry : selected.entrySet()) {
+			for (String id : store.getIds(entry.getKey())) {
+				if (!entry.getValue().contains(id)) {
+					store.remove(entry.getKey(), id);
+				}
+			}
+		}
+		store.flush();
+		store.compact();
+		return fetched;
+	}
+
+	/**
+	 * Start syncing the mirror periodically in background. Failed syncs are
+	 * logged and retried after the next period
+	 *
+	 * @param period
+	 *            Time between the end of a sync and the start of the next
+	 * @param unit
+	 *            Time unit of <code>period</code>
+	 */
+	public synchronized void start(final long period, final TimeUnit unit) {
+		if (scheduler != null) {
+			throw new IllegalStateException("Entity mirror sync already started");
+		}
+		scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+						.setDaemon(true).setNameFormat("entity-mirror-%d")
+						.build());
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sync();
+				} catch (IOException | StanbolServiceException
+						| StanbolClientException | RuntimeException e) {
+					logger.warn("Error syncing entity mirror", e);
+				}
+			}
+		}, 0, period, unit);
+	}
+
+	/**
+	 * Stop the periodic syncs. The store is not closed
+	 */
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Modification time of an entity, from the entity itself or its metadata
+	 */
+	private long getModified(final Entity entity) {
+		final Resource resource = entity.getResource();
+		final long result = getModified(resource);
+		return result > 0 ? result : getModified(resource.getModel()
+				.getResource(entity.getUri() + META_SUFFIX));
+	}
+
+	private long getModified(final Resource resource) {
+		return getModified(resource.getProperty(resource.getModel()
+				.createProperty(modifiedProperty)));
+	}
+
+	private static long getModified(final Statement statement) {
+		if (statement == null) {
+			return 0;
+		}
+		final RDFNode node = statement.getObject();
+		if (!node.isLiteral()) {
+			return 0;
+		}
+		final Literal literal = node.asLiteral();
+		try {
+			final Object value = literal.getDatatype() == null ? XSDDatatype.XSDdateTime
+					.parse(literal.getLexicalForm()) : literal.getValue();
+			if (value instanceof XSDDateTime) {
+				return ((XSDDateTime) value).asCalendar().getTimeInMillis();
+			}
+		} catch (DatatypeFormatException e) {
+			logger.debug("Invalid modification time " + literal);
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,517 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.stanbol.client.entityhub.model.Entity;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Local, append-only store of {@link Entity} records, used by
+ * {@link EntityMirror}. Every record holds the referenced site and id of an
+ * entity, its modification time and its statements as N-Triples. Records are
+ * appended to segment files of bounded size; full segments are sealed and
+ * memory-mapped for reading. An in-memory index maps every entity to its last
+ * record, and is rebuilt by scanning the segments when the store is opened.
+ * Replaced and removed records are reclaimed by {@link #compact()}.
+ *
+ * Stores are thread safe, but a store directory must only be opened by one
+ * store at a time
+ */
+public class EntityStore implements Closeable {
+
+	/**
+	 * Default maximum size of a segment file
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String SEGMENT_PREFIX = "segment-";
+
+	private static final String SEGMENT_SUFFIX = ".dat";
+
+	/* Record layout: length (4), removed flag (1), modified (8), strings */
+	private static final int RECORD_HEADER = 13;
+
+	/**
+	 * Last record of an entity
+	 */
+	private static final class Slot {
+
+		private final Segment segment;
+
+		private final int offset;
+
+		private final int length;
+
+		private final long modified;
+
+		Slot(final Segment segment, final int offset, final int length,
+				final long modified) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.modified = modified;
+		}
+	}
+
+	private static final class Segment {
+
+		private final File file;
+
+		private final FileChannel channel;
+
+		private ByteBuffer mapped;
+
+		private int size;
+
+		Segment(final File file) throws IOException {
+			this.file = file;
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+			this.size = (int) channel.size();
+		}
+
+		void seal() throws IOException {
+			mapped = channel.map(MapMode.READ_ONLY, 0, size);
+		}
+
+		ByteBuffer read(final int offset, final int length)
+				throws IOException {
+			if (mapped != null) {
+				final ByteBuffer result = mapped.duplicate();
+				result.position(offset);
+				result.limit(offset + length);
+				return result.slice();
+			}
+			final ByteBuffer result = ByteBuffer.allocate(length);
+			while (result.hasRemaining()) {
+				if (channel.read(result, offset + result.position()) < 0) {
+					throw new IOException("Truncated record in " + file);
+				}
+			}
+			result.flip();
+			return result;
+		}
+	}
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<String, Slot> index = new HashMap<String, Slot>();
+
+	private final List<Segment> segments = new ArrayList<Segment>();
+
+	private Segment active;
+
+	private int nextSegment;
+
+	private long liveBytes;
+
+	private long totalBytes;
+
+	/**
+	 * Open or create a store with the default segment size
+	 *
+	 * @param directory
+	 *            Store directory
+	 * @throws IOException
+	 */
+	public EntityStore(final File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Open or create a store
+	 *
+	 * @param directory
+	 *            Store directory
+	 * @param segmentSize
+	 *            Maximum size of a segment file
+	 * @throws IOException
+	 */
+	public EntityStore(final File directory, final int segmentSize)
+			throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create store directory "
+					+ directory);
+		}
+
+		final File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.startsWith(SEGMENT_PREFIX)
+						&& name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		Arrays.sort(files);
+		for (File file : files) {
+			final Segment segment = new Segment(file);
+			scan(segment);
+			segments.add(segment);
+			final String name = file.getName();
+			nextSegment = Math.max(nextSegment, Integer.parseInt(name
+					.substring(SEGMENT_PREFIX.length(), name.length()
+							- SEGMENT_SUFFIX.length())) + 1);
+		}
+		if (segments.isEmpty()) {
+			newSegment();
+		} else {
+			active = segments.get(segments.size() - 1);
+			for (Segment segment : segments) {
+				if (segment != active) {
+					segment.seal();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get an entity
+	 *
+	 * @param site
+	 *            Referenced site, or null for the entities of the EntityHub
+	 * @param id
+	 *            Entity id
+	 * @return Stored {@link Entity} or <code>null</code>
+	 * @throws IOException
+	 */
+	public Entity get(final String site, final String id) throws IOException {
+		final ByteBuffer record;
+		lock.readLock().lock();
+		try {
+			final Slot slot = index.get(key(site, id));
+			if (slot == null) {
+				return null;
+			}
+			record = slot.segment.read(slot.offset, slot.length);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		record.position(RECORD_HEADER);
+		readString(record);
+		readString(record);
+		final byte[] data = new byte[record.getInt()];
+		record.get(data);
+		final Model model = ModelFactory.createDefaultModel();
+		RDFDataMgr.read(model, new ByteArrayInputStream(data), Lang.NTRIPLES);
+		return new Entity(model, id);
+	}
+
+	/**
+	 * Get the modification time of a stored entity
+	 *
+	 * @param site
+	 *            Referenced site, or null for the entities of the EntityHub
+	 * @param id
+	 *            Entity id
+	 * @return Modification time in milliseconds since the epoch, zero if it is
+	 *         unknown, or -1 if the entity is not stored
+	 */
+	public long getModified(final String site, final String id) {
+		lock.readLock().lock();
+		try {
+			final Slot slot = index.get(key(site, id));
+			return slot != null ? slot.modified : -1;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Get the ids of the stored entities of a site
+	 *
+	 * @param site
+	 *            Referenced site, or null for the entities of the EntityHub
+	 * @return Entity ids
+	 */
+	public Set<String> getIds(final String site) {
+		final String prefix = key(site, "");
+		final Set<String> result = new HashSet<String>();
+		lock.readLock().lock();
+		try {
+			for (String key : index.keySet()) {
+				if (key.startsWith(prefix)) {
+					result.add(key.substring(prefix.length()));
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Get the number of stored entities
+	 *
+	 * @return Number of entities
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Store an entity, replacing its previous version
+	 *
+	 * @param site
+	 *            Referenced site, or null for the entities of the EntityHub
+	 * @param entity
+	 *            {@link Entity} to store. All the statements of its model are
+	 *            stored, including its metadata
+	 * @param modified
+	 *            Modification time in milliseconds since the epoch, or zero
+	 *            if unknown
+	 * @throws IOException
+	 */
+	public void put(final String site, final Entity entity, final long modified)
+			throws IOException {
+		final ByteArrayOutputStream data = new ByteArrayOutputStream();
+		RDFDataMgr.write(data, entity.getResource().getModel(), Lang.NTRIPLES);
+		append(site, entity.getUri(), data.toByteArray(), modified);
+	}
+
+	/**
+	 * Remove an entity
+	 *
+	 * @param site
+	 *            Referenced site, or null for the entities of the EntityHub
+	 * @param id
+	 *            Entity id
+	 * @throws IOException
+	 */
+	public void remove(final String site, final String id) throws IOException {
+		lock.readLock().lock();
+		try {
+			if (!index.containsKey(key(site, id))) {
+				return;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		append(site, id, null, 0);
+	}
+
+	/**
+	 * Rewrite the live records in new segments and delete the old ones, if
+	 * replaced and removed records take more space than the live ones
+	 *
+	 * @return true if the store has been compacted
+	 * @throws IOException
+	 */
+	public boolean compact() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (totalBytes - liveBytes <= Math.max(liveBytes, segmentSize)) {
+				return false;
+			}
+			final List<Segment> old = new ArrayList<Segment>(segments);
+			final Map<String, Slot> live = new HashMap<String, Slot>(index);
+			segments.clear();
+			index.clear();
+			liveBytes = 0;
+			totalBytes = 0;
+			newSegment();
+			for (Map.Entry<String, Slot> entry : live.entrySet()) {
+				final Slot slot = entry.getValue();
+				final ByteBuffer record = slot.segment.read(slot.offset,
+						slot.length);
+				final byte[] bytes = new byte[slot.length];
+				record.get(bytes);
+				write(entry.getKey(), ByteBuffer.wrap(bytes), slot.modified,
+						false);
+			}
+			active.channel.force(false);
+			for (Segment segment : old) {
+				segment.channel.close();
+				if (!segment.file.delete()) {
+					throw new IOException("Can not delete segment "
+							+ segment.file);
+				}
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Force the written records to disk
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		lock.writeLock().lock();
+		try {
+			active.channel.force(false);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			active.channel.force(false);
+			for (Segment segment : segments) {
+				segment.channel.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void append(final String site, final String id,
+			final byte[] data, final long modified) throws IOException {
+		final byte[] siteBytes = (site == null ? "" : site).getBytes(UTF_8);
+		final byte[] idBytes = id.getBytes(UTF_8);
+		final int length = RECORD_HEADER + 8 + siteBytes.length
+				+ idBytes.length + (data != null ? 4 + data.length : 0);
+		final ByteBuffer record = ByteBuffer.allocate(length);
+		record.putInt(length);
+		record.put((byte) (data == null ? 1 : 0));
+		record.putLong(modified);
+		record.putInt(siteBytes.length).put(siteBytes);
+		record.putInt(idBytes.length).put(idBytes);
+		if (data != null) {
+			record.putInt(data.length).put(data);
+		}
+		record.flip();
+
+		lock.writeLock().lock();
+		try {
+			write(key(site, id), record, modified, data == null);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Append a record to the active segment and index it. Must be called
+	 * holding the write lock
+	 */
+	private void write(final String key, final ByteBuffer record,
+			final long modified, final boolean removed) throws IOException {
+		final int length = record.remaining();
+		if (active.size > 0 && (long) active.size + length > segmentSize) {
+			active.seal();
+			newSegment();
+		}
+		final int offset = active.size;
+		while (record.hasRemaining()) {
+			active.channel.write(record, offset + record.position());
+		}
+		active.size += length;
+		totalBytes += length;
+
+		final Slot previous = removed ? index.remove(key) : index.put(key,
+				new Slot(active, offset, length, modified));
+		if (previous != null) {
+			liveBytes -= previous.length;
+		}
+		if (!removed) {
+			liveBytes += length;
+		}
+	}
+
+	private void newSegment() throws IOException {
+		active = new Segment(new File(directory, String.format("%s%08d%s",
+				SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX)));
+		segments.add(active);
+	}
+
+	/**
+	 * Index the records of a segment, truncating a partially written last
+	 * record
+	 */
+	private void scan(final Segment segment) throws IOException {
+		final ByteBuffer buffer = segment.channel.map(MapMode.READ_ONLY, 0,
+				segment.size);
+		int offset = 0;
+		while (offset + RECORD_HEADER <= segment.size) {
+			final int length = buffer.getInt(offset);
+			if (length < RECORD_HEADER || offset + length > segment.size) {
+				break;
+			}
+			buffer.position(offset + 4);
+			final boolean removed = buffer.get() == 1;
+			final long modified = buffer.getLong();
+			final String site = readString(buffer);
+			final String id = readString(buffer);
+			final String key = key(site.isEmpty() ? null : site, id);
+			final Slot previous = removed ? index.remove(key) : index.put(key,
+					new Slot(segment, offset, length, modified));
+			if (previous != null) {
+				liveBytes -= previous.length;
+			}
+			if (!removed) {
+				liveBytes += length;
+			}
+			totalBytes += length;
+			offset += length;
+		}
+		if (offset < segment.size) {
+			segment.channel.truncate(offset);
+			segment.size = offset;
+		}
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static String key(final String site, final String id) {
+		return (site == null ? "" : site) + ' ' + id;
+	}
+}
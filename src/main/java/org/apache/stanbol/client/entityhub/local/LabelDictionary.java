@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.local;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.stanbol.client.exception.StanbolClientException;
+import org.apache.stanbol.client.services.exception.StanbolServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Local label dictionary serving prefix lookups (for instance, for
+ * autocompletion) from a {@link LabelIndex} file, without any server call.
+ * The dictionary is kept up to date by periodic refreshes: every refresh asks
+ * an {@link UpdateSource} for the entities changed since the previous refresh,
+ * writes a new version of the index and swaps it in, while lookups keep being
+ * served by the previous version. Only the changes are fetched, but the index
+ * is rebuilt in full: every refresh copies all the current labels onto the
+ * heap and rewrites the whole file, so its cost grows with the size of the
+ * index, not with the number of changes.
+ *
+ * The start time of every refresh is stored in the index file, so after a
+ * restart the next refresh asks for the changes since the last one, including
+ * those made while it was running
+ */
+public class LabelDictionary implements Closeable {
+
+	/**
+	 * Source of the entity changes applied by every refresh
+	 */
+	public interface UpdateSource {
+
+		/**
+		 * Apply to the builder the changes since a given time, usually
+		 * replacing the labels of the changed entities with
+		 * {@link LabelIndexBuilder#replace} and removing the deleted ones
+		 *
+		 * @param builder
+		 *            {@link LabelIndexBuilder} holding the current labels
+		 * @param since
+		 *            Start time of the previous refresh, in milliseconds since
+		 *            the epoch. Zero if the dictionary is empty or the index
+		 *            was written without a timestamp
+		 * @throws StanbolServiceException
+		 * @throws StanbolClientException
+		 */
+		void collect(LabelIndexBuilder builder, long since)
+				throws StanbolServiceException, StanbolClientException;
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(LabelDictionary.class);
+
+	private final File file;
+
+	private final UpdateSource source;
+
+	private final String[] labelProperties;
+
+	private volatile LabelIndex index;
+
+	private long lastRefresh;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Constructor. An existing index file is opened and served right away
+	 *
+	 * @param file
+	 *            Index file
+	 * @param source
+	 *            {@link UpdateSource} of the refreshes
+	 * @param labelProperties
+	 *            URIs of the properties indexed as labels. If empty, only
+	 *            <code>rdfs:label</code> values are indexed
+	 * @throws IOException
+	 *             If the existing file is not a valid index
+	 */
+	public LabelDictionary(final File file, final UpdateSource source,
+			final String... labelProperties) throws IOException {
+		this.file = file;
+		this.source = source;
+		this.labelProperties = labelProperties;
+		if (file.exists()) {
+			this.index = LabelIndex.open(file);
+			this.lastRefresh = index.getTimestamp();
+		}
+	}
+
+	/**
+	 * Find the labels starting with a prefix, ignoring case and diacritics
+	 *
+	 * @param prefix
+	 *            Label prefix
+	 * @param limit
+	 *            Maximum number of returned matches
+	 * @return Matching labels and their entities
+	 * @see LabelIndex#prefix(String, int)
+	 */
+	public List<LabelMatch> prefix(final String prefix, final int limit) {
+		final LabelIndex current = index;
+		return current != null ? current.prefix(prefix, limit) : Collections
+				.<LabelMatch> emptyList();
+	}
+
+	/**
+	 * Get the index currently served
+	 *
+	 * @return Current {@link LabelIndex} or <code>null</code> if the
+	 *         dictionary has never been refreshed
+	 */
+	public LabelIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Apply the changes since the previous refresh and swap the new index in
+	 *
+	 * @throws IOException
+	 * @throws StanbolServiceException
+	 * @throws StanbolClientException
+	 */
+	public synchronized void refresh() throws IOException,
+			StanbolServiceException, StanbolClientException {
+		final long start = System.currentTimeMillis();
+		final LabelIndexBuilder builder;
+		if (index != null) {
+			builder = LabelIndexBuilder.from(index, labelProperties);
+		} else if (labelProperties.length > 0) {
+			builder = new LabelIndexBuilder(labelProperties);
+		} else {
+			builder = new LabelIndexBuilder();
+		}
+		source.collect(builder, lastRefresh);
+		builder.write(file, start);
+		index = LabelIndex.open(file);
+		lastRefresh = start;
+	}
+
+	/**
+	 * Start refreshing the dictionary periodically in background. Failed
+	 * refreshes are logged and retried after the next period
+	 *
+	 * @param period
+	 *            Time between the end of a refresh and the start of the next
+	 * @param unit
+	 *            Time unit of <code>period</code>
+	 */
+	public synchronized void start(final long period, final TimeUnit unit) {
+		if (scheduler != null) {
+			throw new IllegalStateException(
+					"Label dictionary refresh already started");
+		}
+		scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+						.setDaemon(true).setNameFormat("label-dictionary-%d")
+						.build());
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refresh();
+				} catch (IOException | StanbolServiceException
+						| StanbolClientException | RuntimeException e) {
+					logger.warn("Error refreshing label dictionary " + file,
+							e);
+				}
+			}
+		}, index == null ? 0 : period, period, unit);
+	}
+
+	/**
+	 * Stop the periodic refreshes
+	 */
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Read-only, memory-mapped prefix index of entity labels, built by
+ * {@link LabelIndexBuilder}. Labels are indexed by a normalized key (lower
+ * case, without diacritics), so lookups are case and accent insensitive.
+ * Lookups binary search the sorted entries directly over the mapped file, so
+ * they take a few microseconds and only decode the returned matches. Indexes
+ * are thread safe.
+ *
+ * The index file holds a header (including the time the labels were
+ * collected), the sorted entries (normalized key, label and entity, 12 bytes
+ * each), the entity URIs offsets and a pool of deduplicated UTF-8 strings.
+ * Index files must be smaller than 2 GB
+ */
+public class LabelIndex {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/* File layout */
+	static final int MAGIC = 0x53544C58;
+	static final int VERSION = 2;
+	static final int ENTRY_COUNT = 8;
+	static final int URI_COUNT = 12;
+	static final int ENTRIES_OFFSET = 16;
+	static final int URIS_OFFSET = 20;
+	static final int POOL_OFFSET = 24;
+	static final int TIMESTAMP = 28;
+	static final int HEADER_LENGTH = 36;
+	static final int ENTRY_LENGTH = 12;
+
+	private static final Pattern DIACRITICS = Pattern
+			.compile("\\p{InCombiningDiacriticalMarks}+");
+
+	private final ByteBuffer buffer;
+
+	private final int entryCount;
+
+	private final int entries;
+
+	private final int uris;
+
+	private final int pool;
+
+	private final long timestamp;
+
+	private LabelIndex(final ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC
+				|| buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a label index file");
+		}
+		this.timestamp = buffer.getLong(TIMESTAMP);
+		this.entryCount = buffer.getInt(ENTRY_COUNT);
+		this.entries = buffer.getInt(ENTRIES_OFFSET);
+		this.uris = buffer.getInt(URIS_OFFSET);
+		this.pool = buffer.getInt(POOL_OFFSET);
+	}
+
+	/**
+	 * Open an index file
+	 *
+	 * @param file
+	 *            Index file written by {@link LabelIndexBuilder}
+	 * @return Opened {@link LabelIndex}
+	 * @throws IOException
+	 *             If the file can not be read or it is not an index file
+	 */
+	public static LabelIndex open(final File file) throws IOException {
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			final MappedByteBuffer buffer = raf.getChannel().map(
+					MapMode.READ_ONLY, 0, raf.length());
+			return new LabelIndex(buffer);
+		}
+	}
+
+	/**
+	 * Normalize a label or a prefix the way the index keys are normalized
+	 *
+	 * @param label
+	 *            Label
+	 * @return Normalized key
+	 */
+	static String normalize(final String label) {
+		return DIACRITICS
+				.matcher(Normalizer.normalize(label.trim(), Normalizer.Form.NFD))
+				.replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Get the number of indexed labels
+	 *
+	 * @return Number of (label, entity) entries
+	 */
+	public int size() {
+		return entryCount;
+	}
+
+	/**
+	 * Get the time the indexed labels were collected at
+	 *
+	 * @return Time passed to {@link LabelIndexBuilder#write(File, long)}, in
+	 *         milliseconds since the epoch. Zero if unknown
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Find the labels starting with a prefix, ignoring case and diacritics.
+	 * Matches are returned in key order
+	 *
+	 * @param prefix
+	 *            Label prefix
+	 * @param limit
+	 *            Maximum number of returned matches
+	 * @return Matching labels and their entities
+	 */
+	public List<LabelMatch> prefix(final String prefix, final int limit) {
+		final byte[] key = normalize(prefix).getBytes(UTF_8);
+		final List<LabelMatch> result = new ArrayList<LabelMatch>();
+		for (int i = lowerBound(key); i < entryCount && result.size() < limit; i++) {
+			if (compare(keyPointer(i), key) != 0) {
+				break;
+			}
+			result.add(match(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Find the entities with a label starting with a prefix, ignoring case
+	 * and diacritics
+	 *
+	 * @param prefix
+	 *            Label prefix
+	 * @param limit
+	 *            Maximum number of returned entities
+	 * @return URIs of the matching entities, in key order
+	 */
+	public Set<String> prefixUris(final String prefix, final int limit) {
+		final byte[] key = normalize(prefix).getBytes(UTF_8);
+		final Set<String> result = new LinkedHashSet<String>();
+		for (int i = lowerBound(key); i < entryCount && result.size() < limit; i++) {
+			if (compare(keyPointer(i), key) != 0) {
+				break;
+			}
+			result.add(uri(buffer.getInt(entries + i * ENTRY_LENGTH + 8)));
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Copy all the entries of the index to a builder
+	 *
+	 * @param builder
+	 *            Target {@link LabelIndexBuilder}
+	 */
+	void copyTo(final LabelIndexBuilder builder) {
+		for (int i = 0; i < entryCount; i++) {
+			final LabelMatch match = match(i);
+			builder.add(match.getLabel(), match.getUri());
+		}
+	}
+
+	private LabelMatch match(final int entry) {
+		final int offset = entries + entry * ENTRY_LENGTH;
+		return new LabelMatch(string(buffer.getInt(offset + 4)),
+				uri(buffer.getInt(offset + 8)));
+	}
+
+	private int keyPointer(final int entry) {
+		return buffer.getInt(entries + entry * ENTRY_LENGTH);
+	}
+
+	private String uri(final int id) {
+		return string(buffer.getInt(uris + id * 4));
+	}
+
+	/**
+	 * First entry with a key greater or equal than the prefix
+	 */
+	private int lowerBound(final byte[] prefix) {
+		int low = 0;
+		int high = entryCount;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (compare(keyPointer(middle), prefix) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Compare a pooled key with a prefix
+	 *
+	 * @return 0 if the key starts with the prefix, a negative number if the
+	 *         key sorts before the prefix and a positive number otherwise
+	 */
+	private int compare(final int pointer, final byte[] prefix) {
+		final int position = pool + pointer;
+		final int length = buffer.getInt(position);
+		final int common = Math.min(length, prefix.length);
+		for (int i = 0; i < common; i++) {
+			final int a = buffer.get(position + 4 + i) & 0xFF;
+			final int b = prefix[i] & 0xFF;
+			if (a != b) {
+				return a - b;
+			}
+		}
+		return length >= prefix.length ? 0 : -1;
+	}
+
+	private String string(final int pointer) {
+		final int position = pool + pointer;
+		final byte[] bytes = new byte[buffer.getInt(position)];
+		final ByteBuffer view = buffer.duplicate();
+		view.position(position + 4);
+		view.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+}
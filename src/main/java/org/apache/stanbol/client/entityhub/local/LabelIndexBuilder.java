@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.local;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.stanbol.client.entityhub.model.Entity;
+
+import com.google.common.primitives.UnsignedBytes;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+/**
+ * Collect entity labels and write them as a {@link LabelIndex} file. Labels
+ * can be collected from an RDF dump of a site, from entities returned by the
+ * EntityHub (for instance, a search sweep with
+ * <code>EntityHub.searchIterator</code>) or from a previous index, so an index
+ * can be updated incrementally by replacing the labels of the changed
+ * entities. Builders are not thread safe
+ */
+public class LabelIndexBuilder {
+
+	private final Set<String> labelProperties;
+
+	/**
+	 * Labels by entity URI
+	 */
+	private final Map<String, Set<String>> labels = new LinkedHashMap<String, Set<String>>();
+
+	/**
+	 * Constructor. Only <code>rdfs:label</code> values are indexed
+	 */
+	public LabelIndexBuilder() {
+		this(RDFS.label.getURI());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param labelProperties
+	 *            URIs of the properties indexed as labels
+	 */
+	public LabelIndexBuilder(final String... labelProperties) {
+		this.labelProperties = new HashSet<String>(
+				Arrays.asList(labelProperties));
+	}
+
+	/**
+	 * Create a builder with the entries of an existing index
+	 *
+	 * @param index
+	 *            Existing {@link LabelIndex}
+	 * @param labelProperties
+	 *            URIs of the properties indexed as labels
+	 * @return New builder
+	 */
+	public static LabelIndexBuilder from(final LabelIndex index,
+			final String... labelProperties) {
+		final LabelIndexBuilder result = labelProperties.length == 0 ? new LabelIndexBuilder()
+				: new LabelIndexBuilder(labelProperties);
+		index.copyTo(result);
+		return result;
+	}
+
+	/**
+	 * Add a label of an entity
+	 *
+	 * @param label
+	 *            Entity label
+	 * @param uri
+	 *            Entity URI
+	 * @return this builder
+	 */
+	public LabelIndexBuilder add(final String label, final String uri) {
+		if (label.trim().isEmpty()) {
+			return this;
+		}
+		Set<String> entityLabels = labels.get(uri);
+		if (entityLabels == null) {
+			entityLabels = new LinkedHashSet<String>();
+			labels.put(uri, entityLabels);
+		}
+		entityLabels.add(label);
+		return this;
+	}
+
+	/**
+	 * Add the labels of an entity
+	 *
+	 * @param entity
+	 *            {@link Entity}
+	 * @return this builder
+	 */
+	public LabelIndexBuilder add(final Entity entity) {
+		for (String property : labelProperties) {
+			final Property labelProperty = ResourceFactory
+					.createProperty(property);
+			final StmtIterator it = entity.getResource().listProperties(
+					labelProperty);
+			while (it.hasNext()) {
+				final RDFNode value = it.next().getObject();
+				if (value.isLiteral()) {
+					add(value.asLiteral().getLexicalForm(), entity.getUri());
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Add the labels of many entities, like the results of a search sweep
+	 *
+	 * @param entities
+	 *            {@link Entity} iterator
+	 * @return this builder
+	 */
+	public LabelIndexBuilder addAll(final Iterator<Entity> entities) {
+		while (entities.hasNext()) {
+			add(entities.next());
+		}
+		return this;
+	}
+
+	/**
+	 * Replace all the labels of an entity by its current labels
+	 *
+	 * @param entity
+	 *            Changed {@link Entity}
+	 * @return this builder
+	 */
+	public LabelIndexBuilder replace(final Entity entity) {
+		remove(entity.getUri());
+		return add(entity);
+	}
+
+	/**
+	 * Remove all the labels of an entity
+	 *
+	 * @param uri
+	 *            Entity URI
+	 * @return this builder
+	 */
+	public LabelIndexBuilder remove(final String uri) {
+		labels.remove(uri);
+		return this;
+	}
+
+	/**
+	 * Add the labels found in an RDF dump, streaming its statements
+	 *
+	 * @param in
+	 *            RDF dump
+	 * @param lang
+	 *            RDF syntax of the dump
+	 * @return this builder
+	 */
+	public LabelIndexBuilder addDump(final InputStream in, final Lang lang) {
+		RDFDataMgr.parse(new StreamRDFBase() {
+			@Override
+			public void triple(final Triple triple) {
+				final Node subject = triple.getSubject();
+				final Node object = triple.getObject();
+				if (subject.isURI() && object.isLiteral()
+						&& labelProperties.contains(triple.getPredicate()
+								.getURI())) {
+					add(object.getLiteralLexicalForm(), subject.getURI());
+				}
+			}
+		}, in, lang);
+		return this;
+	}
+
+	/**
+	 * Get the number of entities with labels
+	 *
+	 * @return Number of entities
+	 */
+	public int size() {
+		return labels.size();
+	}
+
+	/**
+	 * Write the index with an unknown timestamp
+	 *
+	 * @param file
+	 *            Index file
+	 * @throws IOException
+	 * @see #write(File, long)
+	 */
+	public void write(final File file) throws IOException {
+		write(file, 0);
+	}
+
+	/**
+	 * Write the index. The file is replaced atomically, so indexes already
+	 * open keep working over the previous version
+	 *
+	 * @param file
+	 *            Index file
+	 * @param timestamp
+	 *            Time the labels were collected at, in milliseconds since the
+	 *            epoch, returned by {@link LabelIndex#getTimestamp()}
+	 * @throws IOException
+	 */
+	public void write(final File file, final long timestamp)
+			throws IOException {
+		final Map<String, Integer> pooled = new HashMap<String, Integer>();
+		final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+		final DataOutputStream pool = new DataOutputStream(poolBytes);
+
+		final List<int[]> entries = new ArrayList<int[]>();
+		final List<byte[]> keys = new ArrayList<byte[]>();
+		final int[] uris = new int[labels.size()];
+		int uriId = 0;
+		for (Map.Entry<String, Set<String>> entity : labels.entrySet()) {
+			uris[uriId] = pool(pooled, pool, entity.getKey());
+			for (String label : entity.getValue()) {
+				final String key = LabelIndex.normalize(label);
+				keys.add(key.getBytes(LabelIndex.UTF_8));
+				entries.add(new int[] { pool(pooled, pool, key),
+						pool(pooled, pool, label), uriId, keys.size() - 1 });
+			}
+			uriId++;
+		}
+
+		final Comparator<byte[]> bytes = UnsignedBytes
+				.lexicographicalComparator();
+		Collections.sort(entries, new Comparator<int[]>() {
+			@Override
+			public int compare(final int[] a, final int[] b) {
+				final int result = bytes.compare(keys.get(a[3]), keys.get(b[3]));
+				return result != 0 ? result : Integer.compare(a[2], b[2]);
+			}
+		});
+
+		final int entriesOffset = LabelIndex.HEADER_LENGTH;
+		final int urisOffset = entriesOffset + entries.size()
+				* LabelIndex.ENTRY_LENGTH;
+		final int poolOffset = urisOffset + uris.length * 4;
+		if ((long) poolOffset + poolBytes.size() > Integer.MAX_VALUE) {
+			throw new IOException("Label index is larger than 2 GB");
+		}
+
+		final File tmp = new File(file.getPath() + ".tmp");
+		try (final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(LabelIndex.MAGIC);
+			out.writeInt(LabelIndex.VERSION);
+			out.writeInt(entries.size());
+			out.writeInt(uris.length);
+			out.writeInt(entriesOffset);
+			out.writeInt(urisOffset);
+			out.writeInt(poolOffset);
+			out.writeLong(timestamp);
+			for (int[] entry : entries) {
+				out.writeInt(entry[0]);
+				out.writeInt(entry[1]);
+				out.writeInt(entry[2]);
+			}
+			for (int uri : uris) {
+				out.writeInt(uri);
+			}
+			poolBytes.writeTo(out);
+		}
+		Files.move(tmp.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int pool(final Map<String, Integer> pooled,
+			final DataOutputStream pool, final String value) throws IOException {
+		Integer pointer = pooled.get(value);
+		if (pointer == null) {
+			pointer = pool.size();
+			final byte[] bytes = value.getBytes(LabelIndex.UTF_8);
+			pool.writeInt(bytes.length);
+			pool.write(bytes);
+			pooled.put(value, pointer);
+		}
+		return pointer;
+	}
+}
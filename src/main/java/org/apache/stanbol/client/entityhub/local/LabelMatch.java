@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.local;
+
+import com.google.common.base.Objects;
+
+/**
+ * Entity label matching a {@link LabelIndex} prefix lookup
+ */
+public final class LabelMatch {
+
+	private final String label;
+
+	private final String uri;
+
+	LabelMatch(final String label, final String uri) {
+		this.label = label;
+		this.uri = uri;
+	}
+
+	/**
+	 * Get the matched label, as it was indexed
+	 *
+	 * @return Entity label
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * Get the URI of the labelled entity
+	 *
+	 * @return Entity URI
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(label, uri);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof LabelMatch)) {
+			return false;
+		}
+		final LabelMatch other = (LabelMatch) obj;
+		return label.equals(other.label) && uri.equals(other.uri);
+	}
+
+	@Override
+	public String toString() {
+		return label + " <" + uri + ">";
+	}
+}
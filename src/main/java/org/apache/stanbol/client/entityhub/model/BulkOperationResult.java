@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.stanbol.client.EntityHub;
+
+/**
+ * Per entity outcome of a bulk {@link EntityHub} operation like
+ * <code>deleteAll(ids)</code> or <code>updateAll(entities)</code>
+ */
+public class BulkOperationResult {
+
+	/**
+	 * Outcome of the operation for a single entity
+	 */
+	public static enum Outcome {
+		SUCCEEDED, NOT_FOUND, FAILED
+	}
+
+	private final Map<String, Outcome> outcomes = new LinkedHashMap<String, Outcome>();
+
+	private final Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+
+	/**
+	 * Record the outcome of the operation for an entity
+	 * 
+	 * @param id
+	 *            Entity URI
+	 * @param outcome
+	 *            {@link Outcome}
+	 */
+	public synchronized void setOutcome(String id, Outcome outcome) {
+		outcomes.put(id, outcome);
+	}
+
+	/**
+	 * Record the failure of the operation for an entity
+	 * 
+	 * @param id
+	 *            Entity URI
+	 * @param failure
+	 *            Exception thrown by the operation
+	 */
+	public synchronized void setFailure(String id, Exception failure) {
+		outcomes.put(id, Outcome.FAILED);
+		failures.put(id, failure);
+	}
+
+	/**
+	 * Get the outcome of the operation for an entity
+	 * 
+	 * @param id
+	 *            Entity URI
+	 * @return {@link Outcome} or null if the entity was not part of the
+	 *         operation
+	 */
+	public synchronized Outcome getOutcome(String id) {
+		return outcomes.get(id);
+	}
+
+	/**
+	 * Get the exception thrown by the operation for an entity
+	 * 
+	 * @param id
+	 *            Entity URI
+	 * @return Exception or null if the operation did not fail for the entity
+	 */
+	public synchronized Exception getFailure(String id) {
+		return failures.get(id);
+	}
+
+	/**
+	 * Get the ids of the entities with the passed outcome
+	 * 
+	 * @param outcome
+	 *            {@link Outcome}
+	 * @return Entities' URIs
+	 */
+	public synchronized Collection<String> getIds(Outcome outcome) {
+		final List<String> result = new ArrayList<String>();
+		for (Entry<String, Outcome> entry : outcomes.entrySet()) {
+			if (entry.getValue() == outcome) {
+				result.add(entry.getKey());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the outcomes of all the entities of the operation
+	 * 
+	 * @return Map of Entity URI - {@link Outcome}
+	 */
+	public synchronized Map<String, Outcome> getOutcomes() {
+		return Collections.unmodifiableMap(new LinkedHashMap<String, Outcome>(
+				outcomes));
+	}
+
+	/**
+	 * Check if the operation did not fail for any entity
+	 * 
+	 * @return True if there are no failures
+	 */
+	public synchronized boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("BulkOperationResult [outcomes=");
+		sb.append(outcomes);
+		sb.append("]");
+		return sb.toString();
+	}
+}
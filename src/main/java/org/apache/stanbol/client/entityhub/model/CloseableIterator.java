@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.model;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterator over results fetched from the server in background. A closed
+ * iterator stops fetching results, so an iterator that is not fully consumed
+ * should be closed
+ *
+ * @param <T>
+ *            Type of the results
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+
+	/**
+	 * Cancel the pending background requests. Further calls to
+	 * <code>hasNext()</code> return false
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.model;
+
+import org.apache.stanbol.client.exception.StanbolClientException;
+
+/**
+ * Immutable and validated {@link LDPathProgram}. The String, canonical and URL encoded representations of the program
+ * and its hash code are computed once at compile time, so a compiled program can be shared between threads and used
+ * in many requests without rebuilding them. Compiled programs are created by {@link LDPathProgram#compile()}
+ */
+public final class CompiledLDPathProgram extends LDPathProgram
+{
+    private final String program;
+
+    private final String canonicalProgram;
+
+    private final String encodedProgram;
+
+    private final int hash;
+
+    /**
+     * Compiling Constructor
+     * 
+     * @param program LDPath Program to compile
+     * @throws StanbolClientException if a Namespace or a Field Definition is not valid
+     */
+    CompiledLDPathProgram(LDPathProgram program) throws StanbolClientException
+    {
+        super(program);
+        validate();
+        this.program = super.toString();
+        this.canonicalProgram = super.toCanonicalString();
+        this.encodedProgram = super.toURLEncodedString();
+        this.hash = super.hashCode();
+    }
+
+    /**
+     * Not supported: compiled LDPath Programs are immutable
+     * 
+     * @throws UnsupportedOperationException
+     */
+    @Override
+    public void addNamespace(String prefix, String namespace)
+    {
+        throw new UnsupportedOperationException("Compiled LDPath Programs are immutable");
+    }
+
+    /**
+     * Not supported: compiled LDPath Programs are immutable
+     * 
+     * @throws UnsupportedOperationException
+     */
+    @Override
+    public void addFieldDefinition(String fieldName, String fieldDefinition)
+    {
+        throw new UnsupportedOperationException("Compiled LDPath Programs are immutable");
+    }
+
+    /**
+     * Not supported: compiled LDPath Programs are immutable
+     * 
+     * @throws UnsupportedOperationException
+     */
+    @Override
+    public void addFieldDefinition(String fieldPrefix, String fieldName, String fieldDefinition)
+    {
+        throw new UnsupportedOperationException("Compiled LDPath Programs are immutable");
+    }
+
+    @Override
+    public CompiledLDPathProgram compile()
+    {
+        return this;
+    }
+
+    @Override
+    public String toString()
+    {
+        return program;
+    }
+
+    @Override
+    public String toCanonicalString()
+    {
+        return canonicalProgram;
+    }
+
+    @Override
+    public String toURLEncodedString()
+    {
+        return encodedProgram;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -20,20 +20,33 @@ package org.apache.stanbol.client.entityhub.model;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import org.apache.jena.riot.RDFDataMgr;
 
 import com.google.common.collect.Maps;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.LiteralRequiredException;
+import com.hp.hpl.jena.rdf.listeners.StatementListener;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelChangedListener;
 import com.hp.hpl.jena.rdf.model.NodeIterator;
 import com.hp.hpl.jena.rdf.model.Property;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 import com.hp.hpl.jena.vocabulary.DCTerms;
 import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.RDFS;
@@ -50,6 +63,9 @@ public class Entity
     private String uri;
     private Resource resource;
     private String site;
+    private boolean indexed = false;
+    private volatile EntityIndex index = null;
+    private ModelChangedListener indexInvalidator = null;
 
     /**
      * Constructor
@@ -76,6 +92,78 @@ public class Entity
     	this.site = site;
     }
 
+    /**
+     * Enable or disable the indexed mode. Indexed entities build a map of their property values by predicate and
+     * language the first time an accessor is called, so later calls are hash lookups. Collections returned by the
+     * accessors of an indexed entity are immutable. Any change to the model of an indexed entity, including changes
+     * made through {@link #getResource()}, drops the map, and the next accessor call rebuilds it. The mode belongs to
+     * this instance, so every code holding it sees the change
+     * 
+     * @param indexed If true, the indexed mode is enabled
+     */
+    public synchronized void setIndexed(boolean indexed)
+    {
+        this.indexed = indexed;
+        if (indexed && indexInvalidator == null)
+        {
+            indexInvalidator = new StatementListener()
+            {
+                @Override
+                public void addedStatement(Statement s)
+                {
+                    index = null;
+                }
+
+                @Override
+                public void removedStatement(Statement s)
+                {
+                    index = null;
+                }
+
+                @Override
+                public void notifyEvent(Model m, Object event)
+                {
+                    // removeAll and bulk graph events
+                    index = null;
+                }
+            };
+            resource.getModel().register(indexInvalidator);
+        }
+        else if (!indexed)
+        {
+            if (indexInvalidator != null)
+            {
+                resource.getModel().unregister(indexInvalidator);
+                indexInvalidator = null;
+            }
+            this.index = null;
+        }
+    }
+
+    /**
+     * Check if the indexed mode is enabled
+     * 
+     * @return True if the indexed mode is enabled
+     */
+    public boolean isIndexed()
+    {
+        return indexed;
+    }
+
+    private EntityIndex index()
+    {
+        if (!indexed)
+            return null;
+
+        EntityIndex result = index;
+        if (result == null)
+        {
+            result = new EntityIndex(resource);
+            index = result;
+        }
+        return result;
+    }
+
     /**
      * Get Entity URI
      * 
@@ -87,18 +175,23 @@ public class Entity
     }
 
     /**
-     * Get Entity's Labels
+     * Get Entity's Labels. Only the rdfs:label values of the entity resource are returned, not the labels of other
+     * resources of its model such as nested blank nodes. Earlier versions returned every label of the model, which
+     * mixed the labels of all the entities of a search response
      * 
      * @return All labels for the entity
      */
     public Collection<String> getLabels()
     {
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(RDFS.label.getURI()).getLiterals();
 
         List<String> result = new ArrayList<String>();
-        NodeIterator iterator = resource.getModel().listObjectsOfProperty(RDFS.label);
+        StmtIterator iterator = resource.listProperties(RDFS.label);
 
         while (iterator.hasNext())
-            result.add(iterator.next().asLiteral().getString());
+            result.add(iterator.next().getString());
 
         return result;
     }
@@ -111,6 +204,10 @@ public class Entity
      */
     public Collection<String> getLabels(String language)
     {
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(RDFS.label.getURI()).getLiterals(language);
+
         List<String> result = new ArrayList<String>();
         StmtIterator iterator = resource.listProperties(RDFS.label);
 
@@ -130,6 +227,10 @@ public class Entity
      * @return
      */
     public Map<String, String> getLabelsByLanguage(){
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(RDFS.label.getURI()).getLiteralsByLanguage();
+
     	Map<String, String> labels = Maps.newHashMap();
     	StmtIterator iterator = resource.listProperties(RDFS.label);
 
@@ -149,6 +250,10 @@ public class Entity
      */
     public Collection<String> getCategories()
     {
+        EntityIndex index = index();
+        if (index != null)
+            return index.getCategories();
+
         List<String> result = new ArrayList<String>();
         StmtIterator iterator = resource.listProperties(DCTerms.subject);
 
@@ -165,6 +270,10 @@ public class Entity
      */
     public Collection<String> getTypes()
     {
+        EntityIndex index = index();
+        if (index != null)
+            return index.getTypes();
+
         List<String> result = new ArrayList<String>();
         StmtIterator iterator = resource.listProperties(RDF.type);
 
@@ -225,6 +334,10 @@ public class Entity
      * @return List of literal values for the property
      */
     public Collection<String> getPropertyValues(String property){
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(property).getStrings();
+
     	Property p = resource.getModel().createProperty(property);
     	return getPropertyStringValues(p);
     }
@@ -237,6 +350,10 @@ public class Entity
      * @return 
      */
     public Collection<String> getPropertyValuesByLanguage(String property, String language){
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(property).getLiterals(language);
+
     	Property p = resource.getModel().createProperty(property);
     	return getPropertyValuesByLanguage(p, language);
     }
@@ -249,6 +366,10 @@ public class Entity
      * @return
      */
     public Collection<String> getPropertyValuesByLanguage(Property property, String language){
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(property.getURI()).getLiterals(language);
+
     	List<String> result = new ArrayList<String>();
         StmtIterator iterator = resource.listProperties(property);
         while (iterator.hasNext())
@@ -267,6 +388,10 @@ public class Entity
      * @return
      */
     public Map<String, String> getPropertyValuesByLanguage(String property){
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(property).getLiteralsByLanguage();
+
     	Property p = resource.getModel().createProperty(property);
     	return getPropertyValuesByLanguage(p);
     }
@@ -278,6 +403,10 @@ public class Entity
      * @return
      */
     public Map<String, String> getPropertyValuesByLanguage(Property property) {
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(property.getURI()).getLiteralsByLanguage();
+
 		Map<String, String> result = Maps.newHashMap();
 		StmtIterator iterator = resource.listProperties(property);
         while (iterator.hasNext())
@@ -300,6 +429,10 @@ public class Entity
      */
     public Collection<RDFNode> getPropertyValues(Property property)
     {
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(property.getURI()).getNodes();
+
         List<RDFNode> result = new ArrayList<RDFNode>();
         StmtIterator iterator = resource.listProperties(property);
         while(iterator.hasNext()){
@@ -317,6 +450,10 @@ public class Entity
      */
     public Collection<String> getPropertyStringValues(Property property)
     {
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(property.getURI()).getStrings();
+
         List<String> result = new ArrayList<String>();
         StmtIterator iterator = resource.listProperties(property);
         while(iterator.hasNext()){
@@ -376,6 +513,7 @@ public class Entity
     {
         Property p = resource.getModel().createProperty(namespace, propertyName);
         resource.addProperty(p, value);
+        index = null;
     }
 
     /**
@@ -385,6 +523,10 @@ public class Entity
      */
     public Collection<String> getProperties()
     {
+        EntityIndex index = index();
+        if (index != null)
+            return index.getPredicates();
+
         List<String> result = new ArrayList<String>();
         StmtIterator iterator = resource.listProperties();
         while (iterator.hasNext())
@@ -400,6 +542,10 @@ public class Entity
      */
     public Collection<String> getComments(String language)
     {
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(RDFS.comment.getURI()).getLiterals(language);
+
         List<String> result = new ArrayList<String>();
         StmtIterator iterator = resource.listProperties(RDFS.comment);
 
@@ -419,6 +565,10 @@ public class Entity
      * @return
      */
     public Collection<String> getComments(){
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(RDFS.comment.getURI()).getLiterals();
+
     	List<String> result = new ArrayList<String>();
     	StmtIterator iterator = resource.listProperties(RDFS.comment);
         while (iterator.hasNext())
@@ -432,6 +582,10 @@ public class Entity
      * @return
      */
     public Map<String, String> getCommentsByLanguage(){
+        EntityIndex index = index();
+        if (index != null)
+            return index.get(RDFS.comment.getURI()).getLiteralsByLanguage();
+
     	Map<String, String> comments = Maps.newHashMap();
     	StmtIterator iterator = resource.listProperties(RDFS.comment);
 
@@ -464,6 +618,35 @@ public class Entity
         return resource;
     }
 
+    /**
+     * Write the statements of the Entity as N-Triples. Only the statements having the Entity as subject are written,
+     * together with the statements of the blank nodes they reference, whatever else the backing model contains
+     * 
+     * @param out OutputStream to write to. It is not closed
+     */
+    public void write(OutputStream out)
+    {
+        Graph graph = resource.getModel().getGraph();
+        List<Triple> triples = new ArrayList<Triple>();
+        Set<Node> visited = new HashSet<Node>();
+        Deque<Node> subjects = new ArrayDeque<Node>();
+        subjects.add(resource.asNode());
+
+        while (!subjects.isEmpty())
+        {
+            ExtendedIterator<Triple> iterator = graph.find(subjects.poll(), Node.ANY, Node.ANY);
+            while (iterator.hasNext())
+            {
+                Triple triple = iterator.next();
+                triples.add(triple);
+                if (triple.getObject().isBlank() && visited.add(triple.getObject()))
+                    subjects.add(triple.getObject());
+            }
+        }
+
+        RDFDataMgr.writeTriples(out, triples.iterator());
+    }
+
     /**
      * Get Entity RDF/XML Text Representation
      * 
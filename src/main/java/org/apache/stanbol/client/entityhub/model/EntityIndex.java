@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+import com.hp.hpl.jena.vocabulary.DCTerms;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * Precomputed view of the properties of an {@link Entity}, built in a single
+ * pass over the statements of the entity. Every accessor of an indexed
+ * entity is a hash lookup returning an immutable list
+ */
+final class EntityIndex {
+
+	private static final String OWL_NAMESPACE = "http://www.w3.org/2002/07/owl#";
+
+	/**
+	 * Values of a single property
+	 */
+	static final class PropertyValues {
+		static final PropertyValues EMPTY = new PropertyValues(
+				ImmutableList.<RDFNode> of(), Collections.<String> emptyList(),
+				ImmutableList.<String> of(),
+				ImmutableMap.<String, ImmutableList<String>> of(),
+				ImmutableMap.<String, String> of());
+
+		private final ImmutableList<RDFNode> nodes;
+		/* Blank nodes are null strings, as in the plain accessors */
+		private final List<String> strings;
+		private final ImmutableList<String> literals;
+		private final ImmutableMap<String, ImmutableList<String>> byLanguage;
+		private final ImmutableMap<String, String> lastByLanguage;
+
+		private PropertyValues(ImmutableList<RDFNode> nodes,
+				List<String> strings, ImmutableList<String> literals,
+				ImmutableMap<String, ImmutableList<String>> byLanguage,
+				ImmutableMap<String, String> lastByLanguage) {
+			this.nodes = nodes;
+			this.strings = strings;
+			this.literals = literals;
+			this.byLanguage = byLanguage;
+			this.lastByLanguage = lastByLanguage;
+		}
+
+		/**
+		 * @return All the values of the property
+		 */
+		List<RDFNode> getNodes() {
+			return nodes;
+		}
+
+		/**
+		 * @return Literal lexical forms and resource URIs
+		 */
+		List<String> getStrings() {
+			return strings;
+		}
+
+		/**
+		 * @return Lexical forms of the literal values
+		 */
+		List<String> getLiterals() {
+			return literals;
+		}
+
+		/**
+		 * @return Lexical forms of the literal values in the language
+		 */
+		List<String> getLiterals(String language) {
+			final List<String> result = byLanguage.get(language);
+			return result != null ? result : Collections.<String> emptyList();
+		}
+
+		/**
+		 * @return Map of language - last literal value in that language
+		 */
+		Map<String, String> getLiteralsByLanguage() {
+			return lastByLanguage;
+		}
+	}
+
+	private static final class PropertyValuesBuilder {
+		private final ImmutableList.Builder<RDFNode> nodes = ImmutableList
+				.builder();
+		private final List<String> strings = new ArrayList<String>();
+		private final ImmutableList.Builder<String> literals = ImmutableList
+				.builder();
+		private final Map<String, ImmutableList.Builder<String>> byLanguage = Maps
+				.newLinkedHashMap();
+		private final Map<String, String> lastByLanguage = Maps
+				.newLinkedHashMap();
+
+		void add(final RDFNode node) {
+			nodes.add(node);
+			if (node.isLiteral()) {
+				final Literal literal = node.asLiteral();
+				final String value = literal.getString();
+				strings.add(value);
+				literals.add(value);
+				ImmutableList.Builder<String> language = byLanguage
+						.get(literal.getLanguage());
+				if (language == null) {
+					language = ImmutableList.builder();
+					byLanguage.put(literal.getLanguage(), language);
+				}
+				language.add(value);
+				lastByLanguage.put(literal.getLanguage(), value);
+			} else if (node.isURIResource()) {
+				strings.add(node.asResource().getURI());
+			} else {
+				strings.add(node.asResource().getLocalName());
+			}
+		}
+
+		PropertyValues build() {
+			final ImmutableMap.Builder<String, ImmutableList<String>> languages = ImmutableMap
+					.builder();
+			for (Map.Entry<String, ImmutableList.Builder<String>> entry : byLanguage
+					.entrySet()) {
+				languages.put(entry.getKey(), entry.getValue().build());
+			}
+			return new PropertyValues(nodes.build(),
+					Collections.unmodifiableList(strings),
+					literals.build(), languages.build(),
+					ImmutableMap.copyOf(lastByLanguage));
+		}
+	}
+
+	private final ImmutableMap<String, PropertyValues> properties;
+	private final ImmutableList<String> predicates;
+	private final ImmutableList<String> types;
+	private final ImmutableList<String> categories;
+
+	EntityIndex(final Resource resource) {
+		final Map<String, PropertyValuesBuilder> builders = Maps
+				.newLinkedHashMap();
+		final ImmutableList.Builder<String> predicates = ImmutableList
+				.builder();
+		final ImmutableList.Builder<String> types = ImmutableList.builder();
+		final ImmutableList.Builder<String> categories = ImmutableList
+				.builder();
+
+		final StmtIterator iterator = resource.listProperties();
+		while (iterator.hasNext()) {
+			final Statement statement = iterator.next();
+			final String predicate = statement.getPredicate().getURI();
+			final RDFNode object = statement.getObject();
+			predicates.add(predicate);
+
+			PropertyValuesBuilder builder = builders.get(predicate);
+			if (builder == null) {
+				builder = new PropertyValuesBuilder();
+				builders.put(predicate, builder);
+			}
+			builder.add(object);
+
+			if (predicate.equals(RDF.type.getURI())) {
+				if (!OWL_NAMESPACE.equals(object.asResource().getNameSpace())) {
+					types.add(object.toString());
+				}
+			} else if (predicate.equals(DCTerms.subject.getURI())) {
+				categories.add(object.toString());
+			}
+		}
+
+		final ImmutableMap.Builder<String, PropertyValues> properties = ImmutableMap
+				.builder();
+		for (Map.Entry<String, PropertyValuesBuilder> entry : builders
+				.entrySet()) {
+			properties.put(entry.getKey(), entry.getValue().build());
+		}
+		this.properties = properties.build();
+		this.predicates = predicates.build();
+		this.types = types.build();
+		this.categories = categories.build();
+	}
+
+	PropertyValues get(final String property) {
+		final PropertyValues result = properties.get(property);
+		return result != null ? result : PropertyValues.EMPTY;
+	}
+
+	List<String> getPredicates() {
+		return predicates;
+	}
+
+	List<String> getTypes() {
+		return types;
+	}
+
+	List<String> getCategories() {
+		return categories;
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.stanbol.client.EntityHub;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Represents an EntityHub Field Query. Field queries select entities by a set
+ * of typed constraints on their fields (text, value, reference, range and
+ * similarity) and project only the selected fields of the matching entities,
+ * so the server response contains exactly what the client is going to read.
+ * Field queries are POSTed as JSON by {@link EntityHub#query(FieldQuery)}
+ */
+public class FieldQuery {
+
+	public static class FieldQueryBuilder {
+		private final FieldQuery query = new FieldQuery();
+
+		public FieldQuery build() {
+			return query;
+		}
+
+		/**
+		 * Add fields to the list of fields returned for every selected entity
+		 *
+		 * @param fields
+		 *            Full URIs of the fields
+		 * @return this builder
+		 */
+		public FieldQueryBuilder select(final String... fields) {
+			Collections.addAll(query.selected, fields);
+			return this;
+		}
+
+		public FieldQueryBuilder setLimit(final int limit) {
+			query.limit = limit;
+			return this;
+		}
+
+		public FieldQueryBuilder setOffset(final int offset) {
+			query.offset = offset;
+			return this;
+		}
+
+		/**
+		 * Project the selected entities with an LDPath program instead of the
+		 * list of selected fields
+		 *
+		 * @param ldpath
+		 *            LDPath program executed for every selected entity
+		 * @return this builder
+		 */
+		public FieldQueryBuilder setLDPathProgram(final LDPathProgram ldpath) {
+			query.ldpath = ldpath.toString();
+			return this;
+		}
+
+		/**
+		 * Select entities with a text value of the field matching the passed
+		 * text
+		 *
+		 * @param field
+		 *            Field URI
+		 * @param text
+		 *            Text to match
+		 * @param patternType
+		 *            How the text is interpreted
+		 * @param languages
+		 *            Languages of the matched values. No languages means any
+		 *            language
+		 * @return this builder
+		 */
+		public FieldQueryBuilder addTextConstraint(final String field,
+				final String text, final PatternType patternType,
+				final String... languages) {
+			final Map<String, Object> constraint = constraint("text", field);
+			constraint.put("text", text);
+			constraint.put("patternType", patternType.value());
+			if (languages.length > 0) {
+				constraint.put("languages", Lists.newArrayList(languages));
+			}
+			query.constraints.add(constraint);
+			return this;
+		}
+
+		/**
+		 * Select entities with a value of the field equal to the passed value
+		 *
+		 * @param field
+		 *            Field URI
+		 * @param value
+		 *            Lexical form of the value
+		 * @param datatype
+		 *            Datatype of the value, e.g. xsd:int. If null the
+		 *            datatype is not checked
+		 * @return this builder
+		 */
+		public FieldQueryBuilder addValueConstraint(final String field,
+				final String value, final String datatype) {
+			final Map<String, Object> constraint = constraint("value", field);
+			constraint.put("value", value);
+			if (datatype != null) {
+				constraint.put("datatype", datatype);
+			}
+			query.constraints.add(constraint);
+			return this;
+		}
+
+		/**
+		 * Select entities whose field references one of the passed entities
+		 *
+		 * @param field
+		 *            Field URI
+		 * @param references
+		 *            URIs of the referenced entities
+		 * @return this builder
+		 */
+		public FieldQueryBuilder addReferenceConstraint(final String field,
+				final String... references) {
+			final Map<String, Object> constraint = constraint("reference",
+					field);
+			if (references.length == 1) {
+				constraint.put("value", references[0]);
+			} else {
+				constraint.put("value", Lists.newArrayList(references));
+				constraint.put("mode", "any");
+			}
+			query.constraints.add(constraint);
+			return this;
+		}
+
+		/**
+		 * Select entities with a value of the field between the passed bounds
+		 *
+		 * @param field
+		 *            Field URI
+		 * @param lowerBound
+		 *            Lower bound. If null the range has no lower bound
+		 * @param upperBound
+		 *            Upper bound. If null the range has no upper bound
+		 * @param inclusive
+		 *            If true, the bounds are included in the range
+		 * @param datatype
+		 *            Datatype of the bounds, e.g. xsd:dateTime
+		 * @return this builder
+		 */
+		public FieldQueryBuilder addRangeConstraint(final String field,
+				final String lowerBound, final String upperBound,
+				final boolean inclusive, final String datatype) {
+			final Map<String, Object> constraint = constraint("range", field);
+			if (lowerBound != null) {
+				constraint.put("lowerBound", lowerBound);
+			}
+			if (upperBound != null) {
+				constraint.put("upperBound", upperBound);
+			}
+			constraint.put("inclusive", inclusive);
+			if (datatype != null) {
+				constraint.put("datatype", datatype);
+			}
+			query.constraints.add(constraint);
+			return this;
+		}
+
+		/**
+		 * Rank the selected entities by the similarity of the field with the
+		 * passed context
+		 *
+		 * @param field
+		 *            Field URI
+		 * @param context
+		 *            Text used as context of the similarity search
+		 * @return this builder
+		 */
+		public FieldQueryBuilder addSimilarityConstraint(final String field,
+				final String context) {
+			final Map<String, Object> constraint = constraint("similarity",
+					field);
+			constraint.put("context", context);
+			query.constraints.add(constraint);
+			return this;
+		}
+
+		private static Map<String, Object> constraint(final String type,
+				final String field) {
+			final Map<String, Object> constraint = new LinkedHashMap<String, Object>();
+			constraint.put("type", type);
+			constraint.put("field", field);
+			return constraint;
+		}
+	}
+
+	/**
+	 * Text Constraint Pattern Types
+	 */
+	public static enum PatternType {
+		NONE("none"), WILDCARD("wildcard"), REGEX("regex");
+
+		private final String value;
+
+		private PatternType(final String value) {
+			this.value = value;
+		}
+
+		public String value() {
+			return value;
+		}
+	}
+
+	/**
+	 * Create a new Field Query Builder
+	 *
+	 * @return Created {@link FieldQueryBuilder}
+	 */
+	public static FieldQueryBuilder builder() {
+		return new FieldQueryBuilder();
+	}
+
+	private final Collection<String> selected = new LinkedHashSet<String>();
+	private final List<Map<String, Object>> constraints = Lists.newArrayList();
+	private String ldpath = null;
+	private int limit = 10;
+	private int offset = 0;
+
+	public Collection<String> getSelected() {
+		return selected;
+	}
+
+	public String getLDPathProgram() {
+		return ldpath;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Create a copy of this query selecting another page of results
+	 *
+	 * @param offset
+	 *            Offset of the first returned entity
+	 * @param limit
+	 *            Maximum number of returned entities
+	 * @return New {@link FieldQuery} with the same fields and constraints
+	 */
+	public FieldQuery page(final int offset, final int limit) {
+		final FieldQuery result = new FieldQuery();
+		result.selected.addAll(selected);
+		result.constraints.addAll(constraints);
+		result.ldpath = ldpath;
+		result.offset = offset;
+		result.limit = limit;
+		return result;
+	}
+
+	/**
+	 * JSON serialization expected by the EntityHub query endpoint
+	 *
+	 * @return Field Query JSON object
+	 * @throws JSONException
+	 */
+	public JSONObject toJSON() throws JSONException {
+		final JSONObject result = new JSONObject();
+
+		if (!selected.isEmpty()) {
+			result.put("selected", selected);
+		}
+		if (ldpath != null) {
+			result.put("ldpath", ldpath);
+		}
+		result.put("limit", limit);
+		result.put("offset", offset);
+
+		final List<JSONObject> jsonConstraints = Lists
+				.newArrayListWithCapacity(constraints.size());
+		for (Map<String, Object> constraint : constraints) {
+			final JSONObject jsonConstraint = new JSONObject();
+			for (Entry<String, Object> entry : constraint.entrySet()) {
+				final Object value = entry.getValue();
+				if (value instanceof Collection) {
+					jsonConstraint.put(entry.getKey(), (Collection<?>) value);
+				} else {
+					jsonConstraint.put(entry.getKey(), value);
+				}
+			}
+			jsonConstraints.add(jsonConstraint);
+		}
+		result.put("constraints", jsonConstraints);
+
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		try {
+			return toJSON().toString();
+		} catch (JSONException e) {
+			return super.toString();
+		}
+	}
+}
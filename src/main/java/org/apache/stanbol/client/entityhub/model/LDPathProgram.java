@@ -16,10 +16,18 @@
  */
 package org.apache.stanbol.client.entityhub.model;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,6 +66,17 @@ public class LDPathProgram
         fields = new HashMap<LDPathField, String>();
     }
 
+    /**
+     * Immutable Copy Constructor, used by {@link CompiledLDPathProgram}
+     * 
+     * @param program LDPath Program to copy
+     */
+    LDPathProgram(LDPathProgram program)
+    {
+        namespaces = Collections.unmodifiableMap(new LinkedHashMap<String, String>(program.namespaces));
+        fields = Collections.unmodifiableMap(new LinkedHashMap<LDPathField, String>(program.fields));
+    }
+
     /**
      * Parsing Constructor
      * 
@@ -179,7 +198,11 @@ public class LDPathProgram
      */
     public String getFieldDefinition(String fieldName)
     {
-        return fields.get(fieldName);
+        String definition = fields.get(new LDPathField(fieldName));
+        int qIndex = fieldName.indexOf(':');
+        if (definition == null && qIndex != -1)
+            definition = fields.get(new LDPathField(fieldName.substring(0, qIndex), fieldName.substring(qIndex + 1)));
+        return definition;
     }
 
     /**
@@ -195,6 +218,29 @@ public class LDPathProgram
         return fields.get(field);
     }
 
+    /**
+     * Get all the Namespace Definitions of the LDPath Program
+     * 
+     * @return Unmodifiable Map of Prefix - Namespace
+     */
+    public Map<String, String> getNamespaces()
+    {
+        return Collections.unmodifiableMap(namespaces);
+    }
+
+    /**
+     * Get all the Field Definitions of the LDPath Program
+     * 
+     * @return Map of Field Name (with prefix, if any) - Field Definition
+     */
+    public Map<String, String> getFieldDefinitions()
+    {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Entry<LDPathField, String> field : fields.entrySet())
+            result.put(field.getKey().toString(), field.getValue());
+        return result;
+    }
+
     /**
      * Get Prefix by its associated namespace definition
      * 
@@ -219,29 +265,115 @@ public class LDPathProgram
      */
     public String toString()
     {
-        String result = new String();
+        StringBuilder result = new StringBuilder();
 
         // Prefixes
-        Iterator<String> it = namespaces.keySet().iterator();
-        while (it.hasNext())
+        for (Entry<String, String> namespace : namespaces.entrySet())
+            result.append("@prefix ").append(namespace.getKey()).append(":<").append(namespace.getValue()).append(">;");
+
+        for (Entry<LDPathField, String> field : fields.entrySet())
         {
-            String nextPrefix = it.next();
-            result += "@prefix " + nextPrefix + ":<" + namespaces.get(nextPrefix) + ">;";
+            result.append(field.getKey()).append(" = ").append(field.getValue());
+            if (!field.getValue().endsWith(";"))
+                result.append(';');
         }
 
-        Iterator<LDPathField> itF = fields.keySet().iterator();
-        while (itF.hasNext())
+        return result.toString();
+    }
+
+    /**
+     * URL encoded LDPath Program String representation. Spaces are encoded as <code>%20</code>, so the result can be
+     * used as an already encoded query parameter value
+     * 
+     * @return URL encoded LDPath Program String
+     */
+    public String toURLEncodedString()
+    {
+        try
+        {
+            return URLEncoder.encode(toString(), "UTF-8").replace("+", "%20");
+        }
+        catch (UnsupportedEncodingException e)
         {
-            LDPathField nextField = itF.next();
-            result += nextField.toString() + " = " + fields.get(nextField);
-            if (!fields.get(nextField).endsWith(";"))
-                result += ";";
+            throw new IllegalStateException(e);
         }
+    }
 
-        return result;
+    /**
+     * Validate the LDPath Program and compile it in an immutable {@link CompiledLDPathProgram} that can be shared
+     * between threads
+     * 
+     * @return Compiled LDPath Program
+     * @throws StanbolClientException if a Namespace or a Field Definition is not valid
+     */
+    public CompiledLDPathProgram compile() throws StanbolClientException
+    {
+        return new CompiledLDPathProgram(this);
     }
 
-    private class LDPathField
+    /**
+     * Validate the Namespaces and Field Definitions of the LDPath Program
+     * 
+     * @throws StanbolClientException if a Namespace or a Field Definition is not valid
+     */
+    void validate() throws StanbolClientException
+    {
+        for (Entry<String, String> namespace : namespaces.entrySet())
+        {
+            try
+            {
+                if (!new URI(namespace.getValue()).isAbsolute())
+                    throw new StanbolClientException("LDPath Program Sintax Error. Namespace " + namespace.getValue()
+                            + " is not an absolute URI");
+            }
+            catch (URISyntaxException e)
+            {
+                throw new StanbolClientException("LDPath Program Sintax Error. Namespace Definition Error", e);
+            }
+        }
+
+        for (Entry<LDPathField, String> field : fields.entrySet())
+        {
+            String fieldName = field.getKey().toString();
+            int qIndex = fieldName.indexOf(':');
+            if (qIndex != -1 && namespaces.get(fieldName.substring(0, qIndex)) == null)
+                throw new StanbolClientException(
+                        "LDPath Program Sintax Error. Field Name Prefix doesn't exist as Namespace Prefix");
+            String definition = field.getValue().trim();
+            if (definition.isEmpty() || definition.equals(";"))
+                throw new StanbolClientException("LDPath Program Sintax Error. Empty Definition of Field "
+                        + field.getKey());
+        }
+    }
+
+    /**
+     * Canonical String representation of the LDPath Program: prefixes and fields are sorted and field definitions are
+     * trimmed, so equivalent programs built in a different order have the same canonical form
+     *
+     * @return Canonical LDPath Program String
+     */
+    public String toCanonicalString()
+    {
+        StringBuilder result = new StringBuilder();
+
+        for (String prefix : new TreeSet<String>(namespaces.keySet()))
+            result.append("@prefix ").append(prefix).append(":<").append(namespaces.get(prefix)).append(">;");
+
+        Map<String, String> sortedFields = new TreeMap<String, String>();
+        for (Entry<LDPathField, String> field : fields.entrySet())
+        {
+            String definition = field.getValue().trim();
+            if (definition.endsWith(";"))
+                definition = definition.substring(0, definition.length() - 1).trim();
+            sortedFields.put(field.getKey().toString(), definition);
+        }
+        for (Entry<String, String> field : sortedFields.entrySet())
+            result.append(field.getKey()).append(" = ").append(field.getValue()).append(';');
+
+        return result.toString();
+    }
+
+    private static class LDPathField
     {
 
         private String prefix = null;
@@ -261,11 +393,18 @@ public class LDPathProgram
 
         public boolean equals(Object obj)
         {
-            LDPathField field = (LDPathField) obj;
-            if (field.prefix == this.prefix && field.name == this.name)
+            if (this == obj)
                 return true;
-            else
+            if (!(obj instanceof LDPathField))
                 return false;
+            LDPathField field = (LDPathField) obj;
+            return (prefix == null ? field.prefix == null : prefix.equals(field.prefix))
+                    && (name == null ? field.name == null : name.equals(field.name));
+        }
+
+        public int hashCode()
+        {
+            return 31 * (prefix == null ? 0 : prefix.hashCode()) + (name == null ? 0 : name.hashCode());
         }
 
         public String toString()
@@ -302,7 +441,7 @@ public class LDPathProgram
 		if (obj == null) {
 			return false;
 		}
-		if (getClass() != obj.getClass()) {
+		if (!(obj instanceof LDPathProgram)) {
 			return false;
 		}
 		LDPathProgram other = (LDPathProgram) obj;
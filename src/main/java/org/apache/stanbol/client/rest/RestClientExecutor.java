@@ -19,12 +19,19 @@ package org.apache.stanbol.client.rest;
 import java.net.URI;
 import java.util.concurrent.TimeUnit;
 
+import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation.Builder;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
 import org.apache.stanbol.client.enhancer.model.EnhancementStructure.EnhancementStructureReader;
 import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
 
@@ -38,11 +45,17 @@ public class RestClientExecutor {
 	
 	private static final int TIMEOUT = 60;
 	
+	private static final int POOL_SIZE = 5;
+
+	private static final int SHARED_POOL_SIZE = 20;
+
 	private static ResteasyClientBuilder builder;
+
+	private static volatile Client sharedClient;
 	
 	static{
 		builder = new ResteasyClientBuilder();
-		builder.connectionPoolSize(5);
+		builder.connectionPoolSize(POOL_SIZE);
 		builder.establishConnectionTimeout(TIMEOUT, TimeUnit.SECONDS);
 		builder.register(EnhancementStructureReader.class);
 	}
@@ -54,17 +67,78 @@ public class RestClientExecutor {
 			httpRequest.accept(acceptType);
 		return httpRequest.get();
 	}
+
+	/**
+	 * GET a resource accepting several media types, which can carry quality
+	 * values
+	 */
+	public static Response get(URI uri, MediaType... acceptTypes) {
+		WebTarget target = builder.build().target(uri);
+		Builder httpRequest = target.request();
+		httpRequest.accept(acceptTypes);
+		return httpRequest.get();
+	}
 	
+	/**
+	 * POST an entity. {@link StreamingOutput} entities are written directly
+	 * to the connection with chunked transfer encoding instead of being
+	 * buffered, through the shared connection pool. The response of such
+	 * requests must be closed
+	 */
 	public static Response post(URI uri, Entity<?> entity, MediaType acceptType){
-		WebTarget target = builder.build().target(uri);
+		Client client = entity.getEntity() instanceof StreamingOutput ? getSharedClient()
+				: builder.build();
+		WebTarget target = client.target(uri);
 		Builder httpRequest = target.request();
 		if(acceptType != null)
 			httpRequest.accept(acceptType);
 		return httpRequest.post(entity);
 	}
 
+	/**
+	 * POST an entity accepting several media types, which can carry quality
+	 * values
+	 */
+	public static Response post(URI uri, Entity<?> entity,
+			MediaType... acceptTypes) {
+		Client client = entity.getEntity() instanceof StreamingOutput ? getSharedClient()
+				: builder.build();
+		WebTarget target = client.target(uri);
+		Builder httpRequest = target.request();
+		httpRequest.accept(acceptTypes);
+		return httpRequest.post(entity);
+	}
+
+	private static Client getSharedClient() {
+		Client result = sharedClient;
+		if (result == null) {
+			synchronized (RestClientExecutor.class) {
+				result = sharedClient;
+				if (result == null) {
+					PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+					connectionManager.setMaxTotal(SHARED_POOL_SIZE);
+					connectionManager.setDefaultMaxPerRoute(SHARED_POOL_SIZE);
+					HttpParams params = new BasicHttpParams();
+					HttpConnectionParams.setConnectionTimeout(params,
+							(int) TimeUnit.SECONDS.toMillis(TIMEOUT));
+
+					result = new ResteasyClientBuilder()
+							.httpEngine(new StreamingHttpClientEngine(
+									new DefaultHttpClient(connectionManager, params)))
+							.register(EnhancementStructureReader.class).build();
+					sharedClient = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * DELETE a resource through the shared connection pool. The response must
+	 * be closed
+	 */
 	public static Response delete(URI uri) {
-		WebTarget target = builder.build().target(uri);
+		WebTarget target = getSharedClient().target(uri);
 		Builder httpRequest = target.request();
 		return httpRequest.delete();
 	}
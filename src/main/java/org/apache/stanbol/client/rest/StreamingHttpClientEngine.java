@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.HttpClient;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient4Engine;
+import org.jboss.resteasy.client.jaxrs.internal.ClientInvocation;
+
+/**
+ * Apache HttpClient engine writing {@link StreamingOutput} request bodies
+ * directly to the connection with chunked transfer encoding. The default
+ * engine writes every body to a memory (or file) buffer before sending it.
+ * Any other kind of body is still buffered
+ */
+class StreamingHttpClientEngine extends ApacheHttpClient4Engine {
+
+	StreamingHttpClientEngine(final HttpClient httpClient) {
+		super(httpClient, true);
+	}
+
+	@Override
+	protected HttpEntity buildEntity(final ClientInvocation request)
+			throws IOException {
+		if (!(request.getEntity() instanceof StreamingOutput)) {
+			return super.buildEntity(request);
+		}
+
+		final AbstractHttpEntity entity = new AbstractHttpEntity() {
+			@Override
+			public boolean isRepeatable() {
+				return false;
+			}
+
+			@Override
+			public long getContentLength() {
+				return -1;
+			}
+
+			@Override
+			public InputStream getContent() {
+				throw new UnsupportedOperationException(
+						"Streaming request bodies can only be written");
+			}
+
+			@Override
+			public void writeTo(final OutputStream outstream)
+					throws IOException {
+				request.writeRequestBody(outstream);
+				outstream.flush();
+			}
+
+			@Override
+			public boolean isStreaming() {
+				return false;
+			}
+		};
+		entity.setChunked(true);
+		entity.setContentType(request.getHeaders().getMediaType().toString());
+		return entity;
+	}
+}
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.sparql.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.resultset.ResultSetException;
+import com.hp.hpl.jena.sparql.util.LabelToNodeMap;
+
+/**
+ * Streaming parser of SPARQL JSON results, reading one binding at a time. The
+ * <code>head</code> member is expected before the <code>results</code>
+ * member, as written by every known server. Otherwise the variables are
+ * collected from the bindings as they are read, and replaced by those of
+ * <code>head</code> once all the bindings have been read. Boolean results are
+ * not supported
+ */
+class JSONResultsIterator implements Iterator<Binding> {
+
+	private static final JsonFactory factory = new JsonFactory();
+
+	private final JsonParser parser;
+
+	private final List<String> vars = new ArrayList<String>();
+
+	private final LabelToNodeMap bNodes = LabelToNodeMap.createBNodeMap();
+
+	private boolean inBindings = false;
+
+	private boolean headRead = false;
+
+	private Binding next;
+
+	/**
+	 * Constructor. The results are read up to the first binding
+	 *
+	 * @param in
+	 *            SPARQL JSON results
+	 */
+	JSONResultsIterator(final InputStream in) {
+		try {
+			this.parser = factory.createParser(in);
+			expect(parser.nextToken(), JsonToken.START_OBJECT);
+			while (!inBindings && parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String name = parser.getCurrentName();
+				parser.nextToken();
+				if (name.equals("head")) {
+					readHead();
+					headRead = true;
+				} else if (name.equals("results")) {
+					inBindings = findBindings();
+				} else if (name.equals("boolean")) {
+					throw new ResultSetException(
+							"Boolean SPARQL results are not supported");
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch (IOException e) {
+			throw new ResultSetException("Error reading SPARQL JSON results",
+					e);
+		}
+	}
+
+	/**
+	 * Get the variables of the results
+	 *
+	 * @return Variable names
+	 */
+	List<String> getVars() {
+		return Collections.unmodifiableList(vars);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null && inBindings) {
+			try {
+				final JsonToken token = parser.nextToken();
+				if (token == JsonToken.START_OBJECT) {
+					next = readBinding();
+				} else {
+					expect(token, JsonToken.END_ARRAY);
+					inBindings = false;
+					if (!headRead) {
+						readTrailingHead();
+					}
+				}
+			} catch (IOException e) {
+				throw new ResultSetException(
+						"Error reading SPARQL JSON results", e);
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public Binding next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final Binding result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException(
+				"SPARQL results are read only");
+	}
+
+	private void readHead() throws IOException {
+		expect(parser.getCurrentToken(), JsonToken.START_OBJECT);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String name = parser.getCurrentName();
+			parser.nextToken();
+			if (name.equals("vars")) {
+				expect(parser.getCurrentToken(), JsonToken.START_ARRAY);
+				while (parser.nextToken() == JsonToken.VALUE_STRING) {
+					vars.add(parser.getText());
+				}
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Read the <code>head</code> member following the <code>results</code>
+	 * member
+	 */
+	private void readTrailingHead() throws IOException {
+		// Rest of the results object
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			parser.nextToken();
+			parser.skipChildren();
+		}
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String name = parser.getCurrentName();
+			parser.nextToken();
+			if (name.equals("head")) {
+				vars.clear();
+				readHead();
+				headRead = true;
+			} else {
+				parser.skipChildren();
+			}
+		}
+	}
+
+	/**
+	 * Move to the start of the bindings array of the results object
+	 */
+	private boolean findBindings() throws IOException {
+		expect(parser.getCurrentToken(), JsonToken.START_OBJECT);
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String name = parser.getCurrentName();
+			parser.nextToken();
+			if (name.equals("bindings")) {
+				expect(parser.getCurrentToken(), JsonToken.START_ARRAY);
+				return true;
+			}
+			parser.skipChildren();
+		}
+		return false;
+	}
+
+	private Binding readBinding() throws IOException {
+		final BindingMap result = BindingFactory.create();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String name = parser.getCurrentName();
+			if (!headRead && !vars.contains(name)) {
+				vars.add(name);
+			}
+			final Var var = Var.alloc(name);
+			expect(parser.nextToken(), JsonToken.START_OBJECT);
+			result.add(var, readNode());
+		}
+		return result;
+	}
+
+	private Node readNode() throws IOException {
+		String type = null;
+		String value = null;
+		String lang = null;
+		String datatype = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String name = parser.getCurrentName();
+			parser.nextToken();
+			if (name.equals("type")) {
+				type = parser.getText();
+			} else if (name.equals("value")) {
+				value = parser.getText();
+			} else if (name.equals("xml:lang")) {
+				lang = parser.getText();
+			} else if (name.equals("datatype")) {
+				datatype = parser.getText();
+			} else {
+				parser.skipChildren();
+			}
+		}
+		if (type == null || value == null) {
+			throw new ResultSetException(
+					"SPARQL JSON term without type or value at "
+							+ parser.getCurrentLocation());
+		}
+
+		switch (type) {
+		case "uri":
+			return NodeFactory.createURI(value);
+		case "bnode":
+			return bNodes.asNode(value);
+		case "literal":
+		case "typed-literal":
+			if (datatype != null) {
+				return NodeFactory.createLiteral(value, null, TypeMapper
+						.getInstance().getSafeTypeByName(datatype));
+			}
+			return NodeFactory.createLiteral(value, lang, false);
+		default:
+			throw new ResultSetException("Unknown SPARQL JSON term type "
+					+ type + " at " + parser.getCurrentLocation());
+		}
+	}
+
+	private void expect(final JsonToken token, final JsonToken expected) {
+		if (token != expected) {
+			throw new ResultSetException("Expected " + expected
+					+ " in SPARQL JSON results but got " + token + " at "
+					+ parser.getCurrentLocation());
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.sparql.impl;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.stanbol.client.Sparql;
+
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+
+/**
+ * Collect the client side settings of the {@link Sparql} client. The default
+ * configuration requests SPARQL XML results only, and POSTs the queries longer
+ * than {@value #DEFAULT_POST_THRESHOLD} URL encoded characters
+ */
+public class SparqlConfiguration {
+
+	/**
+	 * Default length of the URL encoded queries above which they are POSTed
+	 */
+	public static final int DEFAULT_POST_THRESHOLD = 4 * 1024;
+
+	/**
+	 * SPARQL results formats. All of them are parsed incrementally
+	 */
+	public static enum ResultsFormat {
+		XML(new MediaType("application", "sparql-results+xml")) {
+			@Override
+			ResultSet parse(final InputStream in) {
+				return ResultSetFactory.fromXML(in);
+			}
+		},
+		JSON(new MediaType("application", "sparql-results+json")) {
+			@Override
+			ResultSet parse(final InputStream in) {
+				final JSONResultsIterator bindings = new JSONResultsIterator(in);
+				return new ResultSetStream(bindings.getVars(), null, bindings);
+			}
+		},
+		TSV(new MediaType("text", "tab-separated-values")) {
+			@Override
+			ResultSet parse(final InputStream in) {
+				return ResultSetFactory.fromTSV(in);
+			}
+		};
+
+		/**
+		 * Get the format of a media type
+		 *
+		 * @param type
+		 *            Media type, parameters are ignored
+		 * @return Matching {@link ResultsFormat} or <code>null</code>
+		 */
+		public static ResultsFormat get(final MediaType type) {
+			for (final ResultsFormat format : ResultsFormat.values()) {
+				if (format.type.isCompatible(type)) {
+					return format;
+				}
+			}
+			return null;
+		}
+
+		private final MediaType type;
+
+		private ResultsFormat(final MediaType type) {
+			this.type = type;
+		}
+
+		public MediaType value() {
+			return type;
+		}
+
+		abstract ResultSet parse(InputStream in);
+	}
+
+	public static class SparqlConfigurationBuilder {
+		private final SparqlConfiguration configuration = new SparqlConfiguration();
+
+		public SparqlConfiguration build() {
+			return configuration;
+		}
+
+		/**
+		 * Accept several results formats, letting the server pick one. The
+		 * formats are sent in the Accept header with decreasing quality
+		 * values, so servers supporting several of them use the first one
+		 *
+		 * @param formats
+		 *            Accepted {@link ResultsFormat}s, by preference
+		 * @return this builder
+		 */
+		public SparqlConfigurationBuilder setResultsFormats(
+				final ResultsFormat... formats) {
+			if (formats.length == 0) {
+				throw new IllegalArgumentException(
+						"At least one results format must be accepted");
+			}
+			configuration.resultsFormats = Collections.unmodifiableList(Arrays
+					.asList(formats.clone()));
+			return this;
+		}
+
+		/**
+		 * Send the queries longer than a threshold as form POST requests
+		 * instead of GET requests, so they are not limited by the maximum URL
+		 * length of the server or the proxies in between
+		 *
+		 * @param postThreshold
+		 *            Length of the URL encoded query above which it is POSTed.
+		 *            Zero POSTs every query
+		 * @return this builder
+		 */
+		public SparqlConfigurationBuilder setPostThreshold(
+				final int postThreshold) {
+			if (postThreshold < 0) {
+				throw new IllegalArgumentException(
+						"POST threshold can not be negative");
+			}
+			configuration.postThreshold = postThreshold;
+			return this;
+		}
+
+		/**
+		 * Cache the queries prepared by {@link Sparql#prepare(String)}, so
+		 * every distinct query is parsed once
+		 *
+		 * @param maximumSize
+		 *            Maximum number of cached queries. Zero disables the cache
+		 * @return this builder
+		 */
+		public SparqlConfigurationBuilder setPreparedQueryCache(
+				final int maximumSize) {
+			if (maximumSize < 0) {
+				throw new IllegalArgumentException(
+						"Prepared query cache size can not be negative");
+			}
+			configuration.preparedQueryCacheSize = maximumSize;
+			return this;
+		}
+
+		/**
+		 * Accept every results format, preferring the fastest ones to parse
+		 * and transfer: JSON, then TSV, then XML
+		 *
+		 * @return this builder
+		 */
+		public SparqlConfigurationBuilder setFastestResultsFormat() {
+			return setResultsFormats(ResultsFormat.JSON, ResultsFormat.TSV,
+					ResultsFormat.XML);
+		}
+	}
+
+	/**
+	 * Create a new SPARQL Configuration Builder
+	 *
+	 * @return Created {@link SparqlConfigurationBuilder}
+	 */
+	public static SparqlConfigurationBuilder builder() {
+		return new SparqlConfigurationBuilder();
+	}
+
+	private List<ResultsFormat> resultsFormats = Collections
+			.singletonList(ResultsFormat.XML);
+
+	private int postThreshold = DEFAULT_POST_THRESHOLD;
+
+	private int preparedQueryCacheSize = 0;
+
+	public List<ResultsFormat> getResultsFormats() {
+		return resultsFormats;
+	}
+
+	public int getPostThreshold() {
+		return postThreshold;
+	}
+
+	public int getPreparedQueryCacheSize() {
+		return preparedQueryCacheSize;
+	}
+}
@@ -16,21 +16,34 @@
  */
 package org.apache.stanbol.client.sparql.impl;
 
-import java.net.URI;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
+import javax.ws.rs.core.Form;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.StatusType;
 import javax.ws.rs.core.UriBuilder;
 
 import org.apache.stanbol.client.Sparql;
 import org.apache.stanbol.client.entityhub.impl.EntityHubImpl;
 import org.apache.stanbol.client.rest.RestClientExecutor;
+import org.apache.stanbol.client.exception.StanbolClientException;
 import org.apache.stanbol.client.services.exception.StanbolServiceException;
+import org.apache.stanbol.client.sparql.impl.SparqlConfiguration.ResultsFormat;
+import org.apache.stanbol.client.sparql.model.CloseableResultSet;
+import org.apache.stanbol.client.sparql.model.PreparedQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.hp.hpl.jena.query.ResultSet;
-import com.hp.hpl.jena.query.ResultSetFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+
 
 /**
  * Stanbol Sparql Endpoint Client Implementation
@@ -44,14 +57,44 @@ public class SparqlImpl implements Sparql
     private Logger logger = LoggerFactory.getLogger(SparqlImpl.class);
 
     private UriBuilder builder;
+
+    private final List<ResultsFormat> resultsFormats;
+
+    private final MediaType[] acceptTypes;
+
+    private final int postThreshold;
+
+    private final Cache<String, PreparedQuery> preparedQueries;
     
     /**
      * Constructor
      * 
      */
     public SparqlImpl(UriBuilder builder)
+    {
+        this(builder, SparqlConfiguration.builder().build());
+    }
+
+    /**
+     * Constructor
+     * 
+     * @param builder Stanbol endpoint {@link UriBuilder}
+     * @param configuration Client side {@link SparqlConfiguration}
+     */
+    public SparqlImpl(UriBuilder builder, SparqlConfiguration configuration)
     {
         this.builder = builder;
+        this.resultsFormats = configuration.getResultsFormats();
+        this.postThreshold = configuration.getPostThreshold();
+        this.preparedQueries = configuration.getPreparedQueryCacheSize() > 0 ? CacheBuilder.newBuilder()
+                .maximumSize(configuration.getPreparedQueryCacheSize()).<String, PreparedQuery> build() : null;
+        this.acceptTypes = new MediaType[resultsFormats.size()];
+        for (int i = 0; i < acceptTypes.length; i++)
+        {
+            final MediaType type = resultsFormats.get(i).value();
+            acceptTypes[i] = i == 0 ? type : new MediaType(type.getType(), type.getSubtype(),
+                    Collections.singletonMap("q", String.format(Locale.ROOT, "%.1f", Math.max(0.1, 1 - i / 10.0))));
+        }
     }
 
     /*
@@ -59,20 +102,13 @@ public class SparqlImpl implements Sparql
      * @see org.apache.stanbol.client.Sparql#executeQuery(java.lang.String, java.lang.String)
      */
     @Override
-    public ResultSet executeQuery(String graphUri, String sparqlQuery) throws StanbolServiceException
+    public CloseableResultSet executeQuery(String graphUri, String sparqlQuery) throws StanbolServiceException
     {
     	String graph = ENHANCEMENT_GRAPH_URI;
     	if(graphUri != null && !graphUri.isEmpty())
     		graph = graphUri;
     	
-    	UriBuilder sparqlBuilder = 
-    			builder.clone().queryParam("graphuri", graph);
-    	     
-        if(sparqlQuery != null && !sparqlQuery.equals(""))
-        	sparqlBuilder = sparqlBuilder.queryParam("query", sparqlQuery);
-        
-        URI uri = sparqlBuilder.build();
-        Response response = RestClientExecutor.get(uri, new MediaType("application", "sparql-results+xml"));
+        Response response = send(graph, sparqlQuery != null ? sparqlQuery : "");
        
         // Check HTTP status code
         int status = response.getStatus();
@@ -84,6 +120,7 @@ public class SparqlImpl implements Sparql
 
         if (status != 200 && status != 201 && status != 202)
         {
+            response.close();
             throw new StanbolServiceException("[HTTP " + status + "] Error executing the following SPARQL query in stanbol server:\n" + sparqlQuery);
         }
 
@@ -92,7 +129,105 @@ public class SparqlImpl implements Sparql
             logger.debug("SPARQL query sucessfully executed through " + graph + " graph at Stanbol Server");
         }
 
-        return ResultSetFactory.fromXML(response.readEntity(String.class));
+        return results(response);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.apache.stanbol.client.Sparql#prepare(java.lang.String)
+     */
+    @Override
+    public PreparedQuery prepare(String sparqlQuery) throws StanbolClientException
+    {
+        PreparedQuery result = preparedQueries != null && sparqlQuery != null ? preparedQueries
+                .getIfPresent(sparqlQuery) : null;
+        if (result == null)
+        {
+            result = PreparedQuery.parse(sparqlQuery);
+            if (preparedQueries != null)
+                preparedQueries.put(sparqlQuery, result);
+        }
+        return result;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.apache.stanbol.client.Sparql#executeQuery(java.lang.String, org.apache.stanbol.client.sparql.model.PreparedQuery)
+     */
+    @Override
+    public CloseableResultSet executeQuery(String graphUri, PreparedQuery query) throws StanbolServiceException,
+            StanbolClientException
+    {
+        return executeQuery(graphUri, query, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.apache.stanbol.client.Sparql#executeQuery(java.lang.String, org.apache.stanbol.client.sparql.model.PreparedQuery, java.util.Map)
+     */
+    @Override
+    public CloseableResultSet executeQuery(String graphUri, PreparedQuery query,
+            Map<String, ? extends RDFNode> bindings) throws StanbolServiceException, StanbolClientException
+    {
+        String graph = graphUri != null && !graphUri.isEmpty() ? graphUri : ENHANCEMENT_GRAPH_URI;
+        Response response = send(graph, query.toString(bindings));
+
+        // Check HTTP status code
+        final StatusType statusInfo = response.getStatusInfo();
+        switch (statusInfo.getFamily())
+        {
+            case SUCCESSFUL:
+                return results(response);
+            case CLIENT_ERROR:
+                response.close();
+                throw new StanbolClientException(String.format(
+                        "An error occurred executing a SPARQL query over the %s graph: [HTTP %d] %s", graph,
+                        statusInfo.getStatusCode(), statusInfo.getReasonPhrase()));
+            default:
+                response.close();
+                throw new StanbolServiceException(String.format(
+                        "An error occurred executing a SPARQL query over the %s graph: [HTTP %d] %s", graph,
+                        statusInfo.getStatusCode(), statusInfo.getReasonPhrase()));
+        }
+    }
+
+    private Response send(String graph, String query)
+    {
+        String encodedQuery = encode(query);
+        if (encodedQuery.length() > postThreshold)
+        {
+            // Long queries would exceed the URL length limits
+            Form form = new Form().param("graphuri", graph).param("query", query);
+            return RestClientExecutor.post(builder.build(), javax.ws.rs.client.Entity.form(form), acceptTypes);
+        }
+
+        UriBuilder sparqlBuilder = builder.clone().queryParam("graphuri", encode(graph));
+        if (!query.isEmpty())
+            sparqlBuilder = sparqlBuilder.queryParam("query", encodedQuery);
+        return RestClientExecutor.get(sparqlBuilder.build(), acceptTypes);
+    }
+
+    private CloseableResultSet results(Response response)
+    {
+        ResultsFormat format = ResultsFormat.get(response.getMediaType());
+        if (format == null)
+            format = resultsFormats.get(0);
+        return new StreamingResultSet(response, format);
+    }
+
+    /**
+     * URL encode a query parameter, so it is not taken as a URI template
+     */
+    private static String encode(String value)
+    {
+        try
+        {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
     }
 
 	/* (non-Javadoc)
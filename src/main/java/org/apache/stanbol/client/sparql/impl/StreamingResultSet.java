@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.sparql.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.ws.rs.core.Response;
+
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.stanbol.client.sparql.impl.SparqlConfiguration.ResultsFormat;
+import org.apache.stanbol.client.sparql.model.CloseableResultSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+
+/**
+ * {@link CloseableResultSet} parsing the SPARQL results of a {@link Response}
+ * as they are read, so only the current solution is held in memory. Closing
+ * the results before the end aborts the connection instead of reading the
+ * rest of the response
+ */
+class StreamingResultSet implements CloseableResultSet {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(StreamingResultSet.class);
+
+	private final Response response;
+
+	private final InputStream stream;
+
+	private final ResultSet results;
+
+	private boolean closed = false;
+
+	/**
+	 * Constructor. The header of the results is read right away
+	 *
+	 * @param response
+	 *            Successful response of a SPARQL query
+	 * @param format
+	 *            {@link ResultsFormat} of the response
+	 */
+	StreamingResultSet(final Response response, final ResultsFormat format) {
+		this.response = response;
+		this.stream = response.readEntity(InputStream.class);
+		try {
+			this.results = format.parse(stream);
+		} catch (RuntimeException e) {
+			abort();
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		try {
+			if (results.hasNext()) {
+				return true;
+			}
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+		// Exhausted: the connection can be reused
+		closed = true;
+		response.close();
+		return false;
+	}
+
+	@Override
+	public QuerySolution next() {
+		return nextSolution();
+	}
+
+	@Override
+	public QuerySolution nextSolution() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			return results.nextSolution();
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public Binding nextBinding() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			return results.nextBinding();
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public int getRowNumber() {
+		return results.getRowNumber();
+	}
+
+	@Override
+	public List<String> getResultVars() {
+		return results.getResultVars();
+	}
+
+	@Override
+	public Model getResourceModel() {
+		return results.getResourceModel();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException(
+				"SPARQL results are read only");
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			abort();
+		}
+	}
+
+	/**
+	 * Release the connection without reading the rest of the response, which
+	 * closing the response would do to reuse the connection
+	 */
+	private void abort() {
+		if (stream instanceof ConnectionReleaseTrigger) {
+			try {
+				((ConnectionReleaseTrigger) stream).abortConnection();
+			} catch (IOException e) {
+				logger.debug("Error aborting SPARQL results connection", e);
+			}
+		}
+		response.close();
+	}
+}
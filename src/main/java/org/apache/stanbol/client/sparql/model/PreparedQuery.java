@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.sparql.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.stanbol.client.exception.StanbolClientException;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.QueryParseException;
+import com.hp.hpl.jena.query.Syntax;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.shared.PrefixMapping;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
+
+/**
+ * SPARQL query parsed and validated on the client side, so syntax errors are
+ * detected without a server round trip. A prepared query is immutable and can
+ * be shared between threads.
+ *
+ * A prepared query is also a template: its variables can be bound to RDF
+ * terms with {@link #toString(Map)}. The positions of the variables are found
+ * once when the query is prepared, so binding only concatenates the pieces of
+ * the query and the terms. Bound variables are replaced by their terms, except
+ * in the projection of a SELECT query where <code>?var</code> becomes
+ * <code>(term AS ?var)</code>, so an explicit projection keeps its columns, and
+ * in GROUP BY and ORDER BY conditions where it becomes <code>(term)</code>.
+ * With <code>SELECT *</code> a bound variable is no longer part of the
+ * results. Variables assigned by VALUES, BIND or AS, and variables tested by
+ * BOUND, can not be bound, since SPARQL only allows a variable there
+ */
+public final class PreparedQuery {
+
+	private static final PrefixMapping NO_PREFIXES = PrefixMapping.Factory
+			.create().lock();
+
+	private final String queryString;
+
+	private final boolean select;
+
+	private final List<String> resultVars;
+
+	private final Set<String> variables;
+
+	private final Set<String> assignedVariables;
+
+	/* Query pieces between variable occurrences: pieces[i] var[i] pieces[i+1] */
+	private final String[] pieces;
+
+	private final String[] occurrences;
+
+	private final Position[] positions;
+
+	/**
+	 * Syntactic position of a variable occurrence, deciding how a bound term
+	 * is written
+	 */
+	private static enum Position {
+		PATTERN, PROJECTION, CONDITION
+	}
+
+	private PreparedQuery(final String queryString, final Query query) {
+		this.queryString = queryString;
+		this.select = query.isSelectType();
+		this.resultVars = select ? Collections
+				.unmodifiableList(new ArrayList<String>(query.getResultVars()))
+				: Collections.<String> emptyList();
+
+		final List<String> pieceList = new ArrayList<String>();
+		final List<String> occurrenceList = new ArrayList<String>();
+		final List<Position> positionList = new ArrayList<Position>();
+		final Set<String> assigned = new LinkedHashSet<String>();
+		new Scanner(queryString, pieceList, occurrenceList, positionList,
+				assigned).scan();
+		this.pieces = pieceList.toArray(new String[pieceList.size()]);
+		this.occurrences = occurrenceList.toArray(new String[occurrenceList
+				.size()]);
+		this.positions = positionList.toArray(new Position[positionList
+				.size()]);
+		this.variables = Collections
+				.unmodifiableSet(new LinkedHashSet<String>(occurrenceList));
+		this.assignedVariables = Collections.unmodifiableSet(assigned);
+	}
+
+	/**
+	 * Parse and validate a SPARQL 1.1 query
+	 *
+	 * @param queryString
+	 *            SPARQL query
+	 * @return {@link PreparedQuery}
+	 * @throws StanbolClientException
+	 *             If the query is not a valid SPARQL 1.1 query
+	 */
+	public static PreparedQuery parse(final String queryString)
+			throws StanbolClientException {
+		if (queryString == null) {
+			throw new StanbolClientException("SPARQL query is null");
+		}
+		final Query query;
+		try {
+			query = QueryFactory.create(queryString, Syntax.syntaxSPARQL_11);
+		} catch (QueryParseException e) {
+			throw new StanbolClientException("SPARQL query syntax error: "
+					+ e.getMessage(), e);
+		}
+		return new PreparedQuery(queryString, query);
+	}
+
+	/**
+	 * Get the text of the query
+	 *
+	 * @return SPARQL query
+	 */
+	public String getQueryString() {
+		return queryString;
+	}
+
+	/**
+	 * Check if the query is a SELECT query
+	 *
+	 * @return true for SELECT queries
+	 */
+	public boolean isSelectType() {
+		return select;
+	}
+
+	/**
+	 * Get the result variables of a SELECT query
+	 *
+	 * @return Result variable names, empty for other query types
+	 */
+	public List<String> getResultVars() {
+		return resultVars;
+	}
+
+	/**
+	 * Get the variables mentioned in the query
+	 *
+	 * @return Names of the variables mentioned in the query
+	 */
+	public Set<String> getVariables() {
+		return variables;
+	}
+
+	/**
+	 * Get the variables that can not be bound because they are assigned by
+	 * VALUES, BIND or AS, or tested by BOUND
+	 *
+	 * @return Names of the variables that can not be bound
+	 */
+	public Set<String> getAssignedVariables() {
+		return assignedVariables;
+	}
+
+	/**
+	 * Bind variables of the query
+	 *
+	 * @param bindings
+	 *            RDF terms by variable name, with or without the leading
+	 *            <code>?</code>. Blank nodes can not be bound
+	 * @return SPARQL query with the bound variables replaced
+	 * @throws IllegalArgumentException
+	 *             If a variable is not mentioned in the query, is one of the
+	 *             {@link #getAssignedVariables()} or is bound to a blank node
+	 */
+	public String toString(final Map<String, ? extends RDFNode> bindings) {
+		if (bindings == null || bindings.isEmpty()) {
+			return queryString;
+		}
+
+		final String[] terms = new String[occurrences.length];
+		int length = queryString.length();
+		for (Map.Entry<String, ? extends RDFNode> binding : bindings
+				.entrySet()) {
+			String name = binding.getKey();
+			if (name.startsWith("?") || name.startsWith("$")) {
+				name = name.substring(1);
+			}
+			if (!variables.contains(name)) {
+				throw new IllegalArgumentException("Variable " + name
+						+ " is not mentioned in the query");
+			}
+			if (assignedVariables.contains(name)) {
+				throw new IllegalArgumentException("Variable " + name
+						+ " is assigned by VALUES, BIND or AS, or tested by BOUND");
+			}
+			final Node node = binding.getValue().asNode();
+			if (node.isBlank()) {
+				throw new IllegalArgumentException("Variable " + name
+						+ " can not be bound to a blank node");
+			}
+			// Full IRIs, since the query might not declare the default prefixes
+			final String term = FmtUtils.stringForNode(node, NO_PREFIXES);
+			for (int i = 0; i < occurrences.length; i++) {
+				if (occurrences[i].equals(name)) {
+					switch (positions[i]) {
+					case PROJECTION:
+						terms[i] = "(" + term + " AS ?" + name + ")";
+						break;
+					case CONDITION:
+						terms[i] = "(" + term + ")";
+						break;
+					default:
+						terms[i] = term;
+					}
+					length += terms[i].length();
+				}
+			}
+		}
+
+		final StringBuilder result = new StringBuilder(length);
+		for (int i = 0; i < occurrences.length; i++) {
+			result.append(pieces[i]);
+			result.append(terms[i] != null ? terms[i] : "?" + occurrences[i]);
+		}
+		result.append(pieces[occurrences.length]);
+		return result.toString();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		return obj instanceof PreparedQuery
+				&& queryString.equals(((PreparedQuery) obj).queryString);
+	}
+
+	@Override
+	public int hashCode() {
+		return queryString.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return queryString;
+	}
+
+	/**
+	 * Find the variable occurrences of a query, skipping IRIs, strings and
+	 * comments, and the variables that only a variable can replace
+	 */
+	private static final class Scanner {
+
+		private final String query;
+
+		private final List<String> pieces;
+
+		private final List<String> occurrences;
+
+		private final List<Position> positions;
+
+		private final Set<String> assigned;
+
+		private int pos = 0;
+
+		private int pieceStart = 0;
+
+		private boolean inProjection = false;
+
+		private boolean inCondition = false;
+
+		/* Inside the variable list of VALUES */
+		private boolean inValues = false;
+
+		/* After AS or BOUND, the next token must be a variable */
+		private boolean assigning = false;
+
+		private int depth = 0;
+
+		Scanner(final String query, final List<String> pieces,
+				final List<String> occurrences,
+				final List<Position> positions, final Set<String> assigned) {
+			this.query = query;
+			this.pieces = pieces;
+			this.occurrences = occurrences;
+			this.positions = positions;
+			this.assigned = assigned;
+		}
+
+		void scan() {
+			final int length = query.length();
+			while (pos < length) {
+				final char c = query.charAt(pos);
+				if (c == '#') {
+					while (pos < length && query.charAt(pos) != '\n'
+							&& query.charAt(pos) != '\r') {
+						pos++;
+					}
+				} else if (c == '"' || c == '\'') {
+					skipString(c);
+				} else if (c == '<') {
+					skipIRI();
+				} else if ((c == '?' || c == '$') && pos + 1 < length
+						&& isVarChar(query.charAt(pos + 1))) {
+					int end = pos + 1;
+					while (end < length && isVarChar(query.charAt(end))) {
+						end++;
+					}
+					final String name = query.substring(pos + 1, end);
+					pieces.add(query.substring(pieceStart, pos));
+					occurrences.add(name);
+					positions.add(depth > 0 ? Position.PATTERN
+							: inProjection ? Position.PROJECTION
+									: inCondition ? Position.CONDITION
+											: Position.PATTERN);
+					if (assigning || inValues) {
+						assigned.add(name);
+					}
+					assigning = false;
+					pos = end;
+					pieceStart = end;
+				} else if (Character.isLetter(c)) {
+					int end = pos;
+					while (end < length
+							&& (Character.isLetterOrDigit(query.charAt(end))
+									|| query.charAt(end) == '_' || query
+									.charAt(end) == ':')) {
+						end++;
+					}
+					final String word = query.substring(pos, end);
+					assigning = word.equalsIgnoreCase("AS")
+							|| word.equalsIgnoreCase("BOUND");
+					if (word.equalsIgnoreCase("VALUES")) {
+						inValues = true;
+					}
+					if (word.equalsIgnoreCase("SELECT")) {
+						inProjection = true;
+						depth = 0;
+					} else if (word.equalsIgnoreCase("GROUP")
+							|| word.equalsIgnoreCase("ORDER")) {
+						inCondition = true;
+					} else if (depth == 0 && !word.equalsIgnoreCase("BY")) {
+						inProjection &= !word.equalsIgnoreCase("WHERE")
+								&& !word.equalsIgnoreCase("FROM");
+						inCondition = false;
+					}
+					pos = end;
+				} else {
+					if (c == '(') {
+						depth++;
+					} else if (c == ')') {
+						depth--;
+					} else if (c == '{' || c == '}') {
+						inProjection = false;
+						inCondition = false;
+						inValues = false;
+					}
+					if (c != '(' && !Character.isWhitespace(c)) {
+						assigning = false;
+					}
+					pos++;
+				}
+			}
+			pieces.add(query.substring(pieceStart));
+		}
+
+		private void skipString(final char quote) {
+			final boolean triple = query.startsWith(
+					new String(new char[] { quote, quote, quote }), pos);
+			pos += triple ? 3 : 1;
+			while (pos < query.length()) {
+				final char c = query.charAt(pos);
+				if (c == '\\') {
+					pos += 2;
+				} else if (c == quote
+						&& (!triple || query.startsWith(new String(new char[] {
+								quote, quote, quote }), pos))) {
+					pos += triple ? 3 : 1;
+					return;
+				} else {
+					pos++;
+				}
+			}
+		}
+
+		/**
+		 * Skip an IRI. A '<' not starting an IRI is a comparison operator
+		 */
+		private void skipIRI() {
+			int end = pos + 1;
+			while (end < query.length()) {
+				final char c = query.charAt(end);
+				if (c == '>') {
+					pos = end + 1;
+					return;
+				}
+				if (c <= ' ' || "<\"{}|^`\\".indexOf(c) >= 0) {
+					break;
+				}
+				end++;
+			}
+			pos++;
+		}
+
+		private static boolean isVarChar(final char c) {
+			return Character.isLetterOrDigit(c) || c == '_' || c == '\u00B7'
+					|| (c >= '\u0300' && c <= '\u036F') || c == '\u203F'
+					|| c == '\u2040';
+		}
+	}
+}
@@ -18,24 +18,51 @@ package org.apache.stanbol.client;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.jena.riot.Lang;
 import org.apache.stanbol.client.Enhancer;
 import org.apache.stanbol.client.EntityHub;
 import org.apache.stanbol.client.StanbolClientFactory;
 import org.apache.stanbol.client.enhancer.impl.EnhancerParameters;
+import org.apache.stanbol.client.enhancer.model.Enhancement;
 import org.apache.stanbol.client.enhancer.model.EnhancementStructure;
 import org.apache.stanbol.client.enhancer.model.EntityAnnotation;
 import org.apache.stanbol.client.enhancer.model.TextAnnotation;
+import org.apache.stanbol.client.entityhub.impl.BulkEntityLoader;
+import org.apache.stanbol.client.entityhub.impl.BulkLoadConfiguration;
+import org.apache.stanbol.client.entityhub.impl.EntityHubConfiguration;
+import org.apache.stanbol.client.entityhub.impl.EntityHubImpl;
+import org.apache.stanbol.client.entityhub.impl.LDPathEvaluator;
+import org.apache.stanbol.client.entityhub.local.EntityMirror;
+import org.apache.stanbol.client.entityhub.local.EntityStore;
+import org.apache.stanbol.client.entityhub.local.LabelDictionary;
+import org.apache.stanbol.client.entityhub.local.LabelIndexBuilder;
+import org.apache.stanbol.client.entityhub.local.LabelMatch;
+import org.apache.stanbol.client.entityhub.model.BulkOperationResult;
+import org.apache.stanbol.client.entityhub.model.BulkOperationResult.Outcome;
+import org.apache.stanbol.client.entityhub.model.CloseableIterator;
+import org.apache.stanbol.client.entityhub.model.CompiledLDPathProgram;
 import org.apache.stanbol.client.entityhub.model.Entity;
+import org.apache.stanbol.client.entityhub.model.FieldQuery;
+import org.apache.stanbol.client.entityhub.model.FieldQuery.PatternType;
 import org.apache.stanbol.client.entityhub.model.LDPathProgram;
 import org.apache.stanbol.client.exception.StanbolClientException;
+import org.apache.stanbol.client.sparql.impl.SparqlConfiguration;
+import org.apache.stanbol.client.sparql.model.PreparedQuery;
 import org.apache.stanbol.client.services.exception.StanbolServiceException;
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
@@ -45,10 +72,19 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.google.common.base.Predicate;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.vocabulary.DCTerms;
+import com.hp.hpl.jena.vocabulary.RDF;
 import com.hp.hpl.jena.vocabulary.RDFS;
 
 public class StanbolClientTest {
@@ -242,6 +278,59 @@ public class StanbolClientTest {
 		Assert.assertEquals(6, annotationLength);
 	}
 
+	@Test
+	public void testEnhancerMerge() throws StanbolServiceException,
+			StanbolClientException {
+		final Enhancer client = factory.createEnhancerClient();
+		EnhancerParameters parameters = EnhancerParameters.builder()
+				.buildDefault(TEST_SENTENCE);
+		final EnhancementStructure first = client.enhance(parameters);
+		final EnhancementStructure second = client.enhance(parameters);
+		final int firstSize = first.getEnhancements().size();
+		final int secondSize = second.getEnhancements().size();
+
+		parameters = EnhancerParameters.builder().setChain("language")
+				.setContent(TEST_SENTENCE).build();
+		final EnhancementStructure language = client.enhance(parameters);
+
+		final EnhancementStructure merged = EnhancementStructure.merge(Lists
+				.newArrayList(first, second, language));
+		Assert.assertEquals(firstSize + secondSize
+				+ language.getEnhancements().size(), merged.getEnhancements()
+				.size());
+		Assert.assertEquals(firstSize, first.getEnhancements().size());
+		final Set<String> entities = new HashSet<String>();
+		for (final EnhancementStructure structure : Arrays.asList(first,
+				second, language)) {
+			for (final Entity entity : structure.getEntities()) {
+				entities.add(entity.getUri());
+			}
+		}
+		Assert.assertEquals(entities.size(), merged.getEntities().size());
+		Assert.assertTrue(merged.getLanguages().contains("en"));
+
+		first.merge(first);
+		Assert.assertEquals(firstSize, first.getEnhancements().size());
+		for (final TextAnnotation ta : merged.getTextAnnotations()) {
+			for (final EntityAnnotation ea : merged.getEntityAnnotations(ta)) {
+				Assert.assertSame(ea,
+						merged.getEnhancement(ea.getUri()));
+			}
+		}
+
+		// Every dc:relation resolves to an Enhancement of the merged result
+		for (final Statement relation : merged.getEnhancementGraph()
+				.listStatements(null, DCTerms.relation, (RDFNode) null)
+				.toList()) {
+			final Enhancement related = merged.getEnhancement(relation
+					.getObject().asResource().getURI());
+			Assert.assertNotNull(related);
+			Assert.assertTrue(merged
+					.getEnhancement(relation.getSubject().getURI())
+					.getRelation().contains(related));
+		}
+	}
+
 	private TextAnnotation assertBest(final String reference,
 			Collection<TextAnnotation> tas) {
 		return FluentIterable.from(tas)
@@ -253,6 +342,38 @@ public class StanbolClientTest {
 				}).orNull();
 	}
 
+	@Test
+	public void testEnhancerDereferenceEntities()
+			throws StanbolServiceException, StanbolClientException {
+		final EnhancementStructure eRes = factory.createEnhancerClient()
+				.enhance(EnhancerParameters.builder()
+						.buildDefault(TEST_SENTENCE));
+		final LDPathProgram program = new LDPathProgram(
+				"@prefix dbo:<http://dbpedia.org/ontology/>; dbo:abstract = dbo:abstract;");
+		final Property dbAbstract = ResourceFactory
+				.createProperty("http://dbpedia.org/ontology/abstract");
+		final EntityHub client = factory.createEntityHubClient();
+
+		// The enhancer results already hold the label and type of the
+		// entities, the dereference adds the rest
+		int dereferenced = 0;
+		for (final EntityAnnotation ea : eRes.getEntityAnnotations()) {
+			Assert.assertFalse(eRes.isDereferenced(ea.getEntityReference()));
+		}
+		Assert.assertTrue(eRes.dereferenceEntities(client, program, 30,
+				TimeUnit.SECONDS) > 0);
+		for (final EntityAnnotation ea : eRes.getEntityAnnotations()) {
+			if (eRes.isDereferenced(ea.getEntityReference())) {
+				Assert.assertTrue(ea.getDereferencedEntity().getResource()
+						.hasProperty(dbAbstract));
+				dereferenced++;
+			}
+		}
+		Assert.assertTrue(dereferenced > 0);
+		Assert.assertEquals(0, eRes.dereferenceEntities(client, program, 30,
+				TimeUnit.SECONDS));
+	}
+
 	@Test
 	public void testEntityHub() throws IOException, StanbolServiceException, StanbolClientException {
 		final EntityHub client = factory.createEntityHubClient();
@@ -353,6 +474,513 @@ public class StanbolClientTest {
 				category);
 	}
 
+	@Test
+	public void testEntityHubUpdate() throws IOException,
+			StanbolServiceException, StanbolClientException {
+		final EntityHub client = factory.createEntityHubClient();
+		final String resourceId = "http://dbpedia.org/resource/Doctor_Who";
+
+		try (final InputStream entityContentStream = this.getClass()
+				.getClassLoader().getResourceAsStream(TEST_RDF_FILE)) {
+			client.create(entityContentStream, resourceId, true);
+		}
+		try {
+			// The update streams only the entity's own statements
+			final Entity entity = client.get(resourceId);
+			entity.setProperty("http://dbpedia.org/property/", "network",
+					"BBC One");
+			final Entity updated = client.update(entity, false);
+			Assert.assertTrue(updated.getPropertyValues(
+					"http://dbpedia.org/property/", "network").contains(
+					"BBC One"));
+			Assert.assertTrue(client.get(resourceId)
+					.getPropertyValues("http://dbpedia.org/property/",
+							"network").contains("BBC One"));
+		} finally {
+			client.delete(resourceId);
+		}
+	}
+
+	@Test
+	public void testEntityHubCache() throws StanbolServiceException,
+			StanbolClientException, IOException {
+		final EntityHubImpl client = (EntityHubImpl) factory
+				.createEntityHubClient(EntityHubConfiguration.builder()
+						.setEntityCache(100000, 10, TimeUnit.MINUTES).build());
+		final String parisId = "http://dbpedia.org/resource/Paris";
+		final String resourceId = "http://dbpedia.org/resource/Doctor_Who";
+
+		final Entity paris = client.get("dbpedia", parisId);
+		Assert.assertNotNull(paris);
+		// Every call gets its own copy of the cached entity
+		final Entity cached = client.get("dbpedia", parisId);
+		Assert.assertNotSame(paris, cached);
+		Assert.assertTrue(paris.getResource().getModel()
+				.isIsomorphicWith(cached.getResource().getModel()));
+		CacheStats stats = client.getEntityCacheStats();
+		Assert.assertEquals(1, stats.hitCount());
+		Assert.assertEquals(1, stats.loadSuccessCount());
+		Assert.assertTrue(stats.totalLoadTime() > 0);
+
+		// Writes through the same client invalidate the cached entity
+		try (final InputStream entityContentStream = this.getClass()
+				.getClassLoader().getResourceAsStream(TEST_RDF_FILE)) {
+			client.create(entityContentStream, resourceId, true);
+		}
+		final Entity entity = client.get(resourceId);
+		Assert.assertEquals(entity.getUri(), client.get(resourceId).getUri());
+		Assert.assertTrue(client.delete(resourceId));
+		Assert.assertNull(client.get(resourceId));
+	}
+
+	@Test
+	public void testEntityHubNegativeCache() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHubImpl client = (EntityHubImpl) factory
+				.createEntityHubClient(EntityHubConfiguration.builder()
+						.setNegativeCache(1000, 10, TimeUnit.MINUTES).build());
+		final String parisId = "http://dbpedia.org/resource/Paris";
+		final String unknownId = "http://dbpedia.org/resource/Unknown_Entity_Id";
+
+		// Unknown ids are answered locally after the first 404
+		Assert.assertNull(client.get(unknownId));
+		Assert.assertNull(client.get(unknownId));
+		Assert.assertEquals(1, client.getAbsentEntityHitCount());
+
+		// A lookup creating the Symbol is not answered by the negative cache
+		Assert.assertNull(client.lookup(parisId, false));
+		final Entity paris = client.lookup(parisId, true);
+		Assert.assertNotNull(paris);
+		Assert.assertEquals(1, client.getAbsentEntityHitCount());
+		Assert.assertNotNull(client.lookup(parisId, false));
+		Assert.assertTrue(client.delete(paris.getUri()));
+	}
+
+	@Test
+	public void testEntityHubLDPathCache() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHubImpl client = (EntityHubImpl) factory
+				.createEntityHubClient(EntityHubConfiguration.builder()
+						.setLDPathCache(100000, 10, TimeUnit.MINUTES).build());
+		final String parisId = "http://dbpedia.org/resource/Paris";
+
+		final LDPathProgram program = new LDPathProgram();
+		program.addNamespace("find",
+				"http://stanbol.apache.org/ontology/entityhub/find/");
+		program.addFieldDefinition("find:categories",
+				"dc:subject :: xsd:anyURI;");
+		final LDPathProgram sameProgram = new LDPathProgram(
+				"@prefix find : <http://stanbol.apache.org/ontology/entityhub/find/>; find:categories = dc:subject :: xsd:anyURI ;");
+
+		final Model model = client.ldpath("dbpedia", parisId, program);
+		final Model cached = client.ldpath("dbpedia", parisId, sameProgram);
+		Assert.assertNotSame(model, cached);
+		Assert.assertTrue(model.isIsomorphicWith(cached));
+		CacheStats stats = client.getLDPathCacheStats();
+		Assert.assertEquals(1, stats.hitCount());
+		Assert.assertEquals(1, stats.missCount());
+	}
+
+	@Test
+	public void testEntityHubLDPathContexts() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub client = factory.createEntityHubClient();
+		final String parisId = "http://dbpedia.org/resource/Paris";
+		final String londonId = "http://dbpedia.org/resource/London";
+
+		final LDPathProgram program = new LDPathProgram();
+		program.addNamespace("find",
+				"http://stanbol.apache.org/ontology/entityhub/find/");
+		program.addFieldDefinition("find:categories",
+				"dc:subject :: xsd:anyURI;");
+
+		final Map<String, Model> models = client.ldpath("dbpedia",
+				Arrays.asList(parisId, londonId), program);
+		Assert.assertEquals(2, models.size());
+		final Model paris = models.get(parisId);
+		Assert.assertTrue(paris.contains(paris.getResource(parisId), null));
+		Assert.assertFalse(paris.contains(paris.getResource(londonId), null));
+		Assert.assertTrue(paris.isIsomorphicWith(client.ldpath("dbpedia",
+				parisId, program)));
+	}
+
+	@Test
+	public void testEntityHubCompiledLDPath() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub client = factory.createEntityHubClient();
+		final String parisId = "http://dbpedia.org/resource/Paris";
+		final String londonId = "http://dbpedia.org/resource/London";
+
+		final LDPathProgram source = new LDPathProgram();
+		source.addNamespace("find",
+				"http://stanbol.apache.org/ontology/entityhub/find/");
+		source.addFieldDefinition("find:categories",
+				"dc:subject :: xsd:anyURI;");
+		final CompiledLDPathProgram program = source.compile();
+		Assert.assertEquals(source, program);
+		Assert.assertEquals(source.hashCode(), program.hashCode());
+		Assert.assertEquals(source.toURLEncodedString(),
+				program.toURLEncodedString());
+		Assert.assertEquals("dc:subject :: xsd:anyURI;",
+				program.getFieldDefinition("find:categories"));
+		Assert.assertSame(program, program.compile());
+
+		// Compiled programs are immutable copies
+		try {
+			program.addFieldDefinition("find:labels",
+					"rdfs:label :: xsd:string;");
+			Assert.fail("Compiled programs must be immutable");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+		source.addFieldDefinition("find:labels", "rdfs:label :: xsd:string;");
+		Assert.assertNull(program.getFieldDefinition("find:labels"));
+		Assert.assertNotEquals(source, program);
+
+		// Undeclared prefixes are detected when compiling
+		final LDPathProgram invalid = new LDPathProgram();
+		invalid.addFieldDefinition("find:categories",
+				"dc:subject :: xsd:anyURI;");
+		try {
+			invalid.compile();
+			Assert.fail("Undeclared prefixes must be rejected");
+		} catch (StanbolClientException e) {
+			// Expected
+		}
+
+		// Compiled and plain programs are interchangeable
+		final LDPathProgram plain = new LDPathProgram(program.toString());
+		Assert.assertTrue(client.ldpath("dbpedia", parisId, program)
+				.isIsomorphicWith(client.ldpath("dbpedia", parisId, plain)));
+		final Map<String, Model> models = client.ldpath("dbpedia",
+				Arrays.asList(parisId, londonId), program);
+		Assert.assertEquals(2, models.size());
+		Assert.assertTrue(models.get(londonId).isIsomorphicWith(
+				client.ldpath("dbpedia", Arrays.asList(londonId), plain).get(
+						londonId)));
+	}
+
+	@Test
+	public void testEntityHubLocalLDPath() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHubImpl client = (EntityHubImpl) factory
+				.createEntityHubClient(EntityHubConfiguration.builder()
+						.setEntityCache(100000, 10, TimeUnit.MINUTES)
+						.setLocalLDPath(true).build());
+		final String parisId = "http://dbpedia.org/resource/Paris";
+		final String findNamespace = "http://stanbol.apache.org/ontology/entityhub/find/";
+
+		final LDPathProgram program = new LDPathProgram();
+		program.addNamespace("find", findNamespace);
+		program.addFieldDefinition("find:labels",
+				"rdfs:label[@en] :: xsd:string;");
+
+		// Not cached yet: evaluated by the server
+		final Model remote = client.ldpath("dbpedia", parisId, program);
+		Assert.assertEquals(0, client.getLocalLDPathCount());
+
+		Assert.assertNotNull(client.get("dbpedia", parisId));
+		final Model local = client.ldpath("dbpedia", parisId, program);
+		Assert.assertEquals(1, client.getLocalLDPathCount());
+		final Property labels = local.createProperty(findNamespace, "labels");
+		Assert.assertEquals(
+				remote.listObjectsOfProperty(labels).next().asLiteral()
+						.getLexicalForm(),
+				local.listObjectsOfProperty(labels).next().asLiteral()
+						.getLexicalForm());
+
+		// Functions are not supported locally
+		Assert.assertFalse(new LDPathEvaluator(new LDPathProgram(
+				"@prefix find:<" + findNamespace
+						+ ">; find:label = fn:first(rdfs:label);"))
+				.isSupported());
+	}
+
+	@Test
+	public void testEntityHubReferencedSites() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub client = factory
+				.createEntityHubClient(EntityHubConfiguration.builder()
+						.setReferencedSitesRefresh(10, TimeUnit.MINUTES)
+						.build());
+
+		final Collection<String> sites = client.getReferencedSites();
+		Assert.assertFalse(sites.isEmpty());
+		Assert.assertSame(sites, client.getReferencedSites());
+		Assert.assertEquals(Sets.newHashSet(sites), Sets.newHashSet(factory
+				.createEntityHubClient().getReferencedSites()));
+	}
+
+	@Test
+	public void testLabelDictionary() throws StanbolServiceException,
+			StanbolClientException, IOException {
+		final EntityHub client = factory.createEntityHubClient();
+		final File file = File.createTempFile("labels", ".idx");
+		file.delete();
+
+		final List<Long> sinces = new ArrayList<Long>();
+		final LabelDictionary.UpdateSource source = new LabelDictionary.UpdateSource() {
+			@Override
+			public void collect(LabelIndexBuilder builder, long since)
+					throws StanbolServiceException, StanbolClientException {
+				sinces.add(since);
+				try (final CloseableIterator<Entity> entities = client
+						.searchIterator("dbpedia", "Paris*", null, "en",
+								new LDPathProgram(
+										"@prefix rdfs:<http://www.w3.org/2000/01/rdf-schema#>; rdfs:label = rdfs:label;"),
+								50)) {
+					builder.addAll(entities);
+				}
+			}
+		};
+		final LabelDictionary dictionary = new LabelDictionary(file, source);
+		try {
+			Assert.assertTrue(dictionary.prefix("pari", 10).isEmpty());
+			final long start = System.currentTimeMillis();
+			dictionary.refresh();
+			final List<LabelMatch> matches = dictionary.prefix("PARI", 10);
+			Assert.assertFalse(matches.isEmpty());
+			Assert.assertTrue(matches.get(0).getLabel().toLowerCase()
+					.startsWith("pari"));
+
+			// A reopened dictionary resumes from the start of the last refresh
+			final long timestamp = dictionary.getIndex().getTimestamp();
+			Assert.assertTrue(timestamp >= start);
+			new LabelDictionary(file, source).refresh();
+			Assert.assertEquals(Arrays.asList(0L, timestamp), sinces);
+		} finally {
+			dictionary.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testEntityMirror() throws StanbolServiceException,
+			StanbolClientException, IOException {
+		final File directory = Files.createTempDir();
+		final EntityStore store = new EntityStore(directory);
+		try {
+			final EntityMirror mirror = new EntityMirror(
+					factory.createEntityHubClient(), store).mirror(
+					"dbpedia",
+					FieldQuery
+							.builder()
+							.select(EntityMirror.DEFAULT_MODIFIED_PROPERTY)
+							.addTextConstraint(
+									"http://www.w3.org/2000/01/rdf-schema#label",
+									"Paris", PatternType.NONE, "en").build());
+			Assert.assertTrue(mirror.sync() > 0);
+			final String parisId = "http://dbpedia.org/resource/Paris";
+			Assert.assertTrue(store.getModified("dbpedia", parisId) >= 0);
+
+			final EntityHub client = factory
+					.createEntityHubClient(EntityHubConfiguration.builder()
+							.setMirror(store).build());
+			Assert.assertEquals(parisId, client.get("dbpedia", parisId)
+					.getUri());
+
+			// A client reading from the mirror can not sync it
+			try {
+				new EntityMirror(client, store);
+				Assert.fail("The synced store must not be the client mirror");
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		} finally {
+			store.close();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testEntityHubIndexedEntities() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub indexedClient = factory
+				.createEntityHubClient(EntityHubConfiguration.builder()
+						.setIndexedEntities(true).build());
+		final String parisId = "http://dbpedia.org/resource/Paris";
+
+		final Entity plain = factory.createEntityHubClient().get("dbpedia",
+				parisId);
+		final Entity indexed = indexedClient.get("dbpedia", parisId);
+		Assert.assertFalse(plain.isIndexed());
+		Assert.assertTrue(indexed.isIndexed());
+		Assert.assertEquals(plain.getLabelsByLanguage(),
+				indexed.getLabelsByLanguage());
+		Assert.assertEquals(Sets.newHashSet(plain.getTypes()),
+				Sets.newHashSet(indexed.getTypes()));
+		Assert.assertEquals(Sets.newHashSet(plain.getComments("en")),
+				Sets.newHashSet(indexed.getComments("en")));
+	}
+
+	@Test
+	public void testEntityHubBulkLoad() throws StanbolServiceException,
+			StanbolClientException, IOException {
+		final EntityHub client = factory.createEntityHubClient();
+		final String resourceId = "http://dbpedia.org/resource/Doctor_Who";
+		final BulkEntityLoader loader = factory
+				.createBulkEntityLoader(BulkLoadConfiguration.builder()
+						.setBatchSize(10).setParallelism(2).build());
+
+		try (final InputStream dump = this.getClass().getClassLoader()
+				.getResourceAsStream(TEST_RDF_FILE)) {
+			Assert.assertTrue(loader.load(dump, Lang.RDFXML) > 0);
+		}
+		Assert.assertNotNull(client.get(resourceId));
+		Assert.assertTrue(client.delete(resourceId));
+	}
+
+	@Test
+	public void testEntityHubBulkOperations() throws StanbolServiceException,
+			StanbolClientException, IOException {
+		final EntityHub client = factory
+				.createEntityHubClient(EntityHubConfiguration.builder()
+						.setBulkWrite(4, 10).build());
+		final String resourceId = "http://dbpedia.org/resource/Doctor_Who";
+		final String missingId = "http://dbpedia.org/resource/Not_An_Entity_At_All";
+
+		try (final InputStream entityContentStream = this.getClass()
+				.getClassLoader().getResourceAsStream(TEST_RDF_FILE)) {
+			client.create(entityContentStream, resourceId, true);
+		}
+		final Entity entity = client.get(resourceId);
+		entity.setProperty("http://dbpedia.org/property/", "network",
+				"BBC One");
+
+		BulkOperationResult result = client.updateAll(
+				Arrays.asList(entity), false);
+		Assert.assertTrue(result.isSuccessful());
+		Assert.assertEquals(Outcome.SUCCEEDED, result.getOutcome(resourceId));
+
+		result = client.deleteAll(Arrays.asList(resourceId, missingId));
+		Assert.assertEquals(Outcome.SUCCEEDED, result.getOutcome(resourceId));
+		Assert.assertEquals(Outcome.NOT_FOUND, result.getOutcome(missingId));
+		Assert.assertNull(client.get(resourceId));
+	}
+
+	@Test
+	public void testEntityHubGetAll() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub client = factory
+				.createEntityHubClient(EntityHubConfiguration.builder()
+						.setBulkFetch(2, 2).build());
+		final List<String> ids = Arrays.asList(
+				"http://dbpedia.org/resource/Paris",
+				"http://dbpedia.org/resource/London",
+				"http://dbpedia.org/resource/Berlin",
+				"http://dbpedia.org/resource/Not_An_Entity_At_All");
+
+		final Map<String, Entity> entities = client.getAll("dbpedia", ids);
+		Assert.assertEquals(3, entities.size());
+		Assert.assertFalse(entities.containsKey(ids.get(3)));
+		Assert.assertTrue(entities.get(ids.get(0)).getLabels("en")
+				.contains("Paris"));
+		// Entities fetched together do not share their statements
+		Assert.assertFalse(entities.get(ids.get(0)).getLabels()
+				.contains("London"));
+	}
+
+	@Test
+	public void testEntityHubFieldQuery() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub client = factory.createEntityHubClient();
+		final String label = RDFS.label.getURI();
+		final FieldQuery query = FieldQuery.builder().select(label)
+				.addTextConstraint(label, "Paris*", PatternType.WILDCARD, "en")
+				.addReferenceConstraint(RDF.type.getURI(),
+						"http://dbpedia.org/ontology/Place").setLimit(5)
+				.build();
+
+		final Collection<Entity> entities = client.query("dbpedia", query);
+		Assert.assertFalse(entities.isEmpty());
+		Assert.assertTrue(entities.size() <= 5);
+		for (Entity entity : entities) {
+			Assert.assertFalse(entity.getLabels("en").isEmpty());
+			Assert.assertTrue(entity.getTypes().isEmpty());
+		}
+	}
+
+	@Test
+	public void testEntityHubSearchIterator() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub client = factory.createEntityHubClient();
+		final LDPathProgram program = new LDPathProgram(
+				"@prefix find:<http://stanbol.apache.org/ontology/entityhub/find/>; find:labels = rdfs:label[@en] :: xsd:string;");
+		final Set<String> expected = new HashSet<String>();
+		for (final Entity entity : client.search("dbpedia", "Paris*", null,
+				"en", program, 25, 0)) {
+			expected.add(entity.getUri());
+		}
+
+		final Set<String> actual = new HashSet<String>();
+		final CloseableIterator<Entity> iterator = client.searchIterator(
+				"dbpedia", "Paris*", null, "en", program, 10);
+		try {
+			while (iterator.hasNext() && actual.size() < expected.size()) {
+				actual.add(iterator.next().getUri());
+			}
+		} finally {
+			iterator.close();
+		}
+		Assert.assertEquals(expected, actual);
+
+		// Closing cancels the prefetch of the next page
+		Assert.assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void testSparqlPreparedQuery() throws StanbolClientException {
+		final Sparql client = factory.createSparqlClient(SparqlConfiguration
+				.builder().setPreparedQueryCache(10).build());
+		try {
+			client.prepare("SELECT ?s WHERE { ?s ?p }");
+			Assert.fail("Syntax errors must be detected on the client side");
+		} catch (StanbolClientException e) {
+			// Expected
+		}
+
+		final String query = "SELECT ?label WHERE { ?entity <"
+				+ RDFS.label.getURI() + "> ?label }";
+		final PreparedQuery prepared = client.prepare(query);
+		Assert.assertSame(prepared, client.prepare(query));
+		Assert.assertEquals(Lists.newArrayList("label"),
+				prepared.getResultVars());
+		Assert.assertEquals(
+				"SELECT ?label WHERE { <http://dbpedia.org/resource/Paris> <"
+						+ RDFS.label.getURI() + "> ?label }",
+				prepared.toString(Collections.singletonMap("entity",
+						ResourceFactory
+								.createResource("http://dbpedia.org/resource/Paris"))));
+
+		// Variables assigned by VALUES, BIND or AS can not be bound
+		final PreparedQuery assigning = client
+				.prepare("SELECT ?entity (?label AS ?name) WHERE { VALUES ?entity { <http://dbpedia.org/resource/Paris> } ?entity ?p ?label BIND(STR(?label) AS ?text) }");
+		Assert.assertEquals(Sets.newHashSet("entity", "name", "text"),
+				assigning.getAssignedVariables());
+		for (String variable : assigning.getAssignedVariables()) {
+			try {
+				assigning.toString(Collections.singletonMap(variable,
+						RDFS.label));
+				Assert.fail("Variable " + variable + " must not be bound");
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		}
+		Assert.assertNotNull(PreparedQuery.parse(assigning.toString(Collections
+				.singletonMap("p", RDFS.label))));
+
+		// Bound variables in the projection and in the conditions
+		final PreparedQuery grouped = client
+				.prepare("SELECT ?p (COUNT(?o) AS ?count) WHERE { ?s ?p ?o } GROUP BY ?p ORDER BY ?p");
+		final String bound = grouped.toString(Collections.singletonMap("p",
+				RDFS.label));
+		Assert.assertEquals(Lists.newArrayList("p", "count"), PreparedQuery
+				.parse(bound).getResultVars());
+	}
+
 	// @Test
 	// public void testSparql() throws Exception{
 	// final StanbolClientFactory client = new
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.enhancer.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.vocabulary.DCTerms;
+
+public class EnhancementStructureTest {
+
+	private static final String PREFIXES = "@prefix fise: <http://fise.iks-project.eu/ontology/> .\n"
+			+ "@prefix dc: <http://purl.org/dc/terms/> .\n"
+			+ "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n";
+
+	/*
+	 * Two Text Annotations, the second one related to the first one, with
+	 * two Entity Annotations each
+	 */
+	private static final String ENHANCEMENTS = PREFIXES
+			+ "<urn:ta-1> a fise:Enhancement, fise:TextAnnotation ; fise:selected-text \"Paris\"@en ; fise:start \"0\"^^xsd:int ; fise:end \"5\"^^xsd:int .\n"
+			+ "<urn:ta-2> a fise:Enhancement, fise:TextAnnotation ; fise:selected-text \"France\"@en ; fise:start \"24\"^^xsd:int ; fise:end \"30\"^^xsd:int ; dc:relation <urn:ta-1> .\n"
+			+ "<urn:ea-1a> a fise:Enhancement, fise:EntityAnnotation ; dc:relation <urn:ta-1> ; fise:confidence \"0.9\"^^xsd:double ; fise:entity-reference <http://dbpedia.org/resource/Paris> .\n"
+			+ "<urn:ea-1b> a fise:Enhancement, fise:EntityAnnotation ; dc:relation <urn:ta-1> ; fise:confidence \"0.2\"^^xsd:double ; fise:entity-reference <http://dbpedia.org/resource/Paris_Hilton> .\n"
+			+ "<urn:ea-2a> a fise:Enhancement, fise:EntityAnnotation ; dc:relation <urn:ta-2> ; fise:confidence \"0.8\"^^xsd:double ; fise:entity-reference <http://dbpedia.org/resource/France> .\n"
+			+ "<urn:ea-2b> a fise:Enhancement, fise:EntityAnnotation ; dc:relation <urn:ta-2> ; fise:confidence \"0.1\"^^xsd:double ; fise:entity-reference <http://dbpedia.org/resource/France_national_football_team> .\n";
+
+	@Test
+	public void testRemoveTextAnnotation() throws IOException {
+		final EnhancementStructure structure = parse(ENHANCEMENTS);
+		final Model graph = structure.getEnhancementGraph();
+		final List<String> removed = Arrays.asList("urn:ta-1", "urn:ea-1a",
+				"urn:ea-1b");
+		// The back-link from urn:ta-2 is one of the statements mentioning them
+		final long expectedSize = graph.size()
+				- statementsOf(graph, removed).size();
+
+		// The Entity Annotations of the Text Annotation are removed as well
+		structure.removeTextAnnotation("urn:ta-1");
+		for (final String uri : removed) {
+			Assert.assertNull(structure.getEnhancement(uri));
+		}
+		Assert.assertEquals(1, structure.getTextAnnotations().size());
+		Assert.assertEquals(2, structure.getEntityAnnotations().size());
+
+		// Their statements and the dc:relation back-links are dropped
+		Assert.assertTrue(statementsOf(graph, removed).isEmpty());
+		Assert.assertEquals(expectedSize, graph.size());
+		Assert.assertFalse(graph.getResource("urn:ta-2").hasProperty(
+				DCTerms.relation));
+		Assert.assertTrue(structure.getEnhancement("urn:ta-2").getRelation()
+				.isEmpty());
+		Assert.assertEquals(2,
+				structure.getEntityAnnotations("urn:ta-2").size());
+	}
+
+	@Test
+	public void testRemoveEntityAnnotations() throws IOException {
+		final EnhancementStructure structure = parse(ENHANCEMENTS);
+		final Model graph = structure.getEnhancementGraph();
+		final List<String> removed = Arrays.asList("urn:ea-1b", "urn:ea-2b");
+		final long expectedSize = graph.size()
+				- statementsOf(graph, removed).size();
+
+		structure.filterByConfidence(0.5);
+		for (final String uri : removed) {
+			Assert.assertNull(structure.getEnhancement(uri));
+		}
+		Assert.assertEquals(2, structure.getTextAnnotations().size());
+		Assert.assertEquals(2, structure.getEntityAnnotations().size());
+		Assert.assertTrue(statementsOf(graph, removed).isEmpty());
+		Assert.assertEquals(expectedSize, graph.size());
+
+		// Removing unknown enhancements leaves the graph untouched
+		structure.removeEnhancements(Collections.singleton("urn:unknown"));
+		structure.removeEntityAnnotation("urn:ea-1b");
+		Assert.assertEquals(expectedSize, graph.size());
+	}
+
+	@Test
+	public void testMergeRelations() throws IOException {
+		// Entity Annotations related to Text Annotations of the other
+		// structure, in both directions
+		final EnhancementStructure first = parse(PREFIXES
+				+ "<urn:ta-1> a fise:Enhancement, fise:TextAnnotation ; fise:selected-text \"Paris\"@en ; fise:start \"0\"^^xsd:int ; fise:end \"5\"^^xsd:int .\n"
+				+ "<urn:ea-2a> a fise:Enhancement, fise:EntityAnnotation ; dc:relation <urn:ta-2> ; fise:confidence \"0.8\"^^xsd:double ; fise:entity-reference <http://dbpedia.org/resource/France> .\n");
+		final EnhancementStructure second = parse(PREFIXES
+				+ "<urn:ta-2> a fise:Enhancement, fise:TextAnnotation ; fise:selected-text \"France\"@en ; fise:start \"24\"^^xsd:int ; fise:end \"30\"^^xsd:int .\n"
+				+ "<urn:ea-1a> a fise:Enhancement, fise:EntityAnnotation ; dc:relation <urn:ta-1> ; fise:confidence \"0.9\"^^xsd:double ; fise:entity-reference <http://dbpedia.org/resource/Paris> .\n");
+
+		final EnhancementStructure merged = first.merge(second);
+		Assert.assertEquals(4, merged.getEnhancements().size());
+		assertRelationsResolved(merged);
+		Assert.assertSame(merged.getEnhancement("urn:ta-2"), Iterables
+				.getOnlyElement(merged.getEnhancement("urn:ea-2a")
+						.getRelation()));
+		Assert.assertSame(merged.getEnhancement("urn:ta-1"), Iterables
+				.getOnlyElement(merged.getEnhancement("urn:ea-1a")
+						.getRelation()));
+		Assert.assertEquals(1, merged.getEntityAnnotations("urn:ta-1").size());
+		Assert.assertEquals(1, merged.getEntityAnnotations("urn:ta-2").size());
+	}
+
+	/**
+	 * Check that every dc:relation of the graph is linked to a non-null
+	 * Enhancement of the structure
+	 */
+	private static void assertRelationsResolved(final EnhancementStructure structure) {
+		final Model graph = structure.getEnhancementGraph();
+		for (final Statement relation : graph.listStatements(null,
+				DCTerms.relation, (RDFNode) null).toList()) {
+			final Enhancement subject = structure.getEnhancement(relation
+					.getSubject().getURI());
+			final Enhancement object = structure.getEnhancement(relation
+					.getObject().asResource().getURI());
+			Assert.assertNotNull(subject);
+			Assert.assertNotNull(object);
+			Assert.assertTrue(subject.getRelation().contains(object));
+			Assert.assertFalse(subject.getRelation().contains(null));
+		}
+	}
+
+	/**
+	 * Statements having any of the passed resources as subject or object
+	 */
+	private static Set<Statement> statementsOf(final Model graph,
+			final List<String> uris) {
+		final Set<Statement> result = new HashSet<Statement>();
+		for (final String uri : uris) {
+			final Resource resource = graph.getResource(uri);
+			result.addAll(graph.listStatements(resource, null, (RDFNode) null)
+					.toList());
+			result.addAll(graph.listStatements(null, null, resource).toList());
+		}
+		return result;
+	}
+
+	private static EnhancementStructure parse(final String ttl)
+			throws IOException {
+		return new EnhancementStructure.EnhancementStructureReader().readFrom(
+				EnhancementStructure.class, null, null, new MediaType("text",
+						"turtle"), null,
+				new ByteArrayInputStream(ttl.getBytes("UTF-8")));
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.enhancer.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.stanbol.client.enhancer.model.Enhancement;
+import org.apache.stanbol.client.enhancer.model.EnhancementStructure;
+import org.apache.stanbol.client.enhancer.model.EntityAnnotation;
+import org.apache.stanbol.client.enhancer.model.TextAnnotation;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OffHeapAnnotationStoreTest {
+
+	private static final String FISE = "http://fise.iks-project.eu/ontology/";
+
+	@Test
+	public void testSlabRollover() {
+		final OffHeapSlabs slabs = new OffHeapSlabs(64);
+
+		final long first = slabs.allocate(40);
+		final long second = slabs.allocate(40);
+		Assert.assertEquals(0, OffHeapSlabs.offset(first));
+		// The second record does not fit in the remaining 24 bytes
+		Assert.assertEquals(1L << 32, second);
+		Assert.assertNotSame(slabs.slab(first), slabs.slab(second));
+		Assert.assertEquals(128, slabs.getAllocatedBytes());
+
+		// Records bigger than the slab size get a dedicated slab
+		final long big = slabs.allocate(100);
+		Assert.assertEquals(2L << 32, big);
+		Assert.assertEquals(100, slabs.slab(big).capacity());
+		final long small = slabs.allocate(8);
+		Assert.assertEquals(3L << 32, small);
+		Assert.assertEquals(8, OffHeapSlabs.offset(slabs.allocate(8)));
+		Assert.assertEquals(292, slabs.getAllocatedBytes());
+
+		// Records written in different slabs do not overlap
+		slabs.slab(first).putLong(OffHeapSlabs.offset(first), 1L);
+		slabs.slab(second).putLong(OffHeapSlabs.offset(second), 2L);
+		Assert.assertEquals(1L,
+				slabs.slab(first).getLong(OffHeapSlabs.offset(first)));
+		Assert.assertEquals(2L,
+				slabs.slab(second).getLong(OffHeapSlabs.offset(second)));
+
+		slabs.clear();
+		Assert.assertEquals(0, slabs.getAllocatedBytes());
+		Assert.assertEquals(0, slabs.allocate(8));
+	}
+
+	@Test
+	public void testDictionaryGrowth() {
+		final OffHeapStringDictionary dictionary = new OffHeapStringDictionary(
+				256);
+		final int count = 5000;
+
+		// Enough strings to grow the arrays and rehash the table several
+		// times, spread over many slabs
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals(i,
+					dictionary.add("http://dbpedia.org/resource/Entity_" + i));
+		}
+		Assert.assertEquals(count, dictionary.size());
+		for (int i = 0; i < count; i++) {
+			final String value = "http://dbpedia.org/resource/Entity_" + i;
+			Assert.assertEquals(i, dictionary.add(value));
+			Assert.assertEquals(value, dictionary.get(i));
+		}
+		Assert.assertEquals(count, dictionary.size());
+
+		// Colliding hashes and non ASCII strings
+		Assert.assertEquals("Aa".hashCode(), "BB".hashCode());
+		final int aa = dictionary.add("Aa");
+		final int bb = dictionary.add("BB");
+		Assert.assertNotEquals(aa, bb);
+		Assert.assertEquals("Aa", dictionary.get(aa));
+		Assert.assertEquals("BB", dictionary.get(bb));
+		final String sevilla = "Sevilla, Andaluc\u00EDa \u2014 \u30BB\u30D3\u30FC\u30EA\u30E3";
+		Assert.assertEquals(sevilla, dictionary.get(dictionary.add(sevilla)));
+		Assert.assertEquals("", dictionary.get(dictionary.add("")));
+
+		Assert.assertEquals(OffHeapStringDictionary.NULL_ID,
+				dictionary.add(null));
+		Assert.assertNull(dictionary.get(OffHeapStringDictionary.NULL_ID));
+		try {
+			dictionary.get(dictionary.size());
+			Assert.fail("Unknown ids must be rejected");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+
+		dictionary.clear();
+		Assert.assertEquals(0, dictionary.size());
+		Assert.assertEquals(0, dictionary.add("BB"));
+	}
+
+	@Test
+	public void testFlyweightRecords() throws IOException {
+		final EnhancementStructure structure = parse(enhancements(200));
+		Assert.assertEquals(200, structure.getTextAnnotations().size());
+		Assert.assertEquals(400, structure.getEntityAnnotations().size());
+
+		// Small slabs so the records are spread over many slabs
+		final OffHeapAnnotationStore store = new OffHeapAnnotationStore(512);
+		final List<TextAnnotation> tas = new ArrayList<TextAnnotation>();
+		final List<EntityAnnotation> eas = new ArrayList<EntityAnnotation>();
+		for (final TextAnnotation ta : structure.getTextAnnotations()) {
+			Assert.assertEquals(tas.size(), store.add(ta));
+			tas.add(ta);
+		}
+		for (final EntityAnnotation ea : structure.getEntityAnnotations()) {
+			Assert.assertEquals(eas.size(), store.add(ea));
+			eas.add(ea);
+		}
+		Assert.assertEquals(tas.size(), store.getTextAnnotationCount());
+		Assert.assertEquals(eas.size(), store.getEntityAnnotationCount());
+
+		final TextAnnotationRecord taView = store.newTextAnnotationRecord();
+		for (int i = tas.size() - 1; i >= 0; i--) {
+			assertRecord(tas.get(i), store.getTextAnnotation(i, taView));
+		}
+		final EntityAnnotationRecord eaView = store
+				.newEntityAnnotationRecord();
+		for (int i = 0; i < eas.size(); i++) {
+			assertRecord(eas.get(i), store.getEntityAnnotation(i, eaView));
+		}
+
+		// The compared values are actually set
+		int index = 0;
+		while (!tas.get(index).getUri().equals("urn:enhancement-ta-1")) {
+			index++;
+		}
+		final TextAnnotationRecord ta = store.getTextAnnotation(index, taView);
+		Assert.assertEquals("Paris 1", ta.getSelectedText());
+		Assert.assertEquals("en", ta.getLanguage());
+		Assert.assertEquals(Long.valueOf(10), ta.getStart());
+		Assert.assertEquals(Double.valueOf(-0.1), ta.getSentiment());
+		Assert.assertNull(ta.getPositiveSentiment());
+		final EntityAnnotationRecord ea = store.getEntityAnnotation(0, eaView);
+		Assert.assertEquals("dbpedia", ea.getSite());
+		Assert.assertEquals(1, ea.getRelationUris().size());
+
+		// Iterators reuse a single view
+		int i = 0;
+		TextAnnotationRecord previous = null;
+		for (final Iterator<TextAnnotationRecord> it = store
+				.textAnnotations(); it.hasNext(); i++) {
+			final TextAnnotationRecord record = it.next();
+			Assert.assertTrue(previous == null || previous == record);
+			assertRecord(tas.get(i), record);
+			previous = record;
+		}
+		Assert.assertEquals(tas.size(), i);
+		i = 0;
+		for (final Iterator<EntityAnnotationRecord> it = store
+				.entityAnnotations(); it.hasNext(); i++) {
+			assertRecord(eas.get(i), it.next());
+		}
+		Assert.assertEquals(eas.size(), i);
+
+		try {
+			store.getTextAnnotation(tas.size(), taView);
+			Assert.fail("Out of range indexes must be rejected");
+		} catch (IndexOutOfBoundsException e) {
+			// Expected
+		}
+
+		// Adding a whole structure stores the same annotations
+		final OffHeapAnnotationStore copy = new OffHeapAnnotationStore();
+		copy.add(structure);
+		Assert.assertEquals(tas.size(), copy.getTextAnnotationCount());
+		Assert.assertEquals(eas.size(), copy.getEntityAnnotationCount());
+
+		store.clear();
+		Assert.assertEquals(0, store.getTextAnnotationCount());
+		Assert.assertFalse(store.entityAnnotations().hasNext());
+	}
+
+	private static void assertRecord(final TextAnnotation expected,
+			final TextAnnotationRecord actual) {
+		assertAnnotation(expected, actual);
+		Assert.assertEquals(expected.getType(), actual.getType());
+		Assert.assertEquals(expected.getSelectedText(),
+				actual.getSelectedText());
+		Assert.assertEquals(expected.getSelectionContext(),
+				actual.getSelectionContext());
+		Assert.assertEquals(expected.getStart(), actual.getStart());
+		Assert.assertEquals(expected.getEnd(), actual.getEnd());
+		Assert.assertEquals(expected.getLanguage(), actual.getLanguage());
+		Assert.assertEquals(expected.getSentiment(), actual.getSentiment());
+		Assert.assertEquals(expected.getPositiveSentiment(),
+				actual.getPositiveSentiment());
+		Assert.assertEquals(expected.getNegativeSentiment(),
+				actual.getNegativeSentiment());
+	}
+
+	private static void assertRecord(final EntityAnnotation expected,
+			final EntityAnnotationRecord actual) {
+		assertAnnotation(expected, actual);
+		Assert.assertEquals(expected.getEntityLabel(),
+				actual.getEntityLabel());
+		Assert.assertEquals(expected.getEntityReference(),
+				actual.getEntityReference());
+		Assert.assertEquals(expected.getEntityTypes(),
+				actual.getEntityTypes());
+		Assert.assertEquals(expected.getSite(), actual.getSite());
+	}
+
+	private static void assertAnnotation(
+			final org.apache.stanbol.client.enhancer.model.Annotation expected,
+			final AnnotationRecord actual) {
+		Assert.assertEquals(expected.getUri(), actual.getUri());
+		Assert.assertEquals(expected.getCreated(), actual.getCreated());
+		Assert.assertEquals(expected.getCreator(), actual.getCreator());
+		Assert.assertEquals(expected.getExtractedFrom(),
+				actual.getExtractedFrom());
+		Assert.assertEquals(expected.getConfidence(), actual.getConfidence());
+		final List<String> relations = new ArrayList<String>();
+		if (expected.getRelation() != null) {
+			for (final Enhancement relation : expected.getRelation()) {
+				relations.add(relation.getUri());
+			}
+		}
+		Assert.assertEquals(relations, actual.getRelationUris());
+	}
+
+	/**
+	 * Text Annotations with two Entity Annotations each. Optional properties
+	 * are left out of some annotations
+	 */
+	private static String enhancements(final int count) {
+		final StringBuilder ttl = new StringBuilder();
+		ttl.append("@prefix fise: <").append(FISE).append("> .\n");
+		ttl.append("@prefix dc: <http://purl.org/dc/terms/> .\n");
+		ttl.append("@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n");
+		ttl.append("@prefix eh: <http://stanbol.apache.org/ontology/entityhub/entityhub#> .\n");
+		for (int i = 0; i < count; i++) {
+			final String ta = "<urn:enhancement-ta-" + i + ">";
+			ttl.append(ta).append(
+					" a fise:Enhancement, fise:TextAnnotation ;\n");
+			ttl.append("  fise:extracted-from <urn:content-item-")
+					.append(i % 7).append("> ;\n");
+			ttl.append("  dc:creator \"org.apache.stanbol.enhancer.engines.NER\" ;\n");
+			ttl.append("  dc:created \"2014-06-0").append(1 + i % 9)
+					.append("T10:00:00.000Z\"^^xsd:dateTime ;\n");
+			ttl.append("  fise:selected-text \"Paris ").append(i)
+					.append("\"@en ;\n");
+			ttl.append("  fise:selection-context \"Paris ").append(i)
+					.append(" is the capital of France\"@en ;\n");
+			ttl.append("  fise:start \"").append(i * 10)
+					.append("\"^^xsd:int ;\n");
+			ttl.append("  fise:end \"").append(i * 10 + 5)
+					.append("\"^^xsd:int ;\n");
+			if (i % 3 != 0) {
+				ttl.append("  fise:confidence \"0.").append(i % 10)
+						.append("\"^^xsd:double ;\n");
+				ttl.append("  fise:sentiment \"-0.").append(i % 10)
+						.append("\"^^xsd:double ;\n");
+			}
+			ttl.append("  dc:type <http://dbpedia.org/ontology/Place> .\n");
+			for (int j = 0; j < 2; j++) {
+				ttl.append("<urn:enhancement-ea-").append(i).append('-')
+						.append(j)
+						.append("> a fise:Enhancement, fise:EntityAnnotation ;\n");
+				ttl.append("  fise:extracted-from <urn:content-item-")
+						.append(i % 7).append("> ;\n");
+				ttl.append("  dc:relation ").append(ta).append(" ;\n");
+				ttl.append("  fise:confidence \"0.").append(j + 1)
+						.append("\"^^xsd:double ;\n");
+				ttl.append("  fise:entity-label \"Paris ").append(i)
+						.append(' ').append(j).append("\"@en ;\n");
+				ttl.append("  fise:entity-reference <http://dbpedia.org/resource/Paris_")
+						.append(i % 50).append("> ;\n");
+				if (j == 0) {
+					ttl.append("  fise:entity-type <http://dbpedia.org/ontology/Place>, <http://dbpedia.org/ontology/City> ;\n");
+				}
+				ttl.append("  eh:site \"dbpedia\" .\n");
+			}
+		}
+		return ttl.toString();
+	}
+
+	private static EnhancementStructure parse(final String ttl)
+			throws IOException {
+		return new EnhancementStructure.EnhancementStructureReader().readFrom(
+				EnhancementStructure.class, null, null, new MediaType("text",
+						"turtle"), null,
+				new ByteArrayInputStream(ttl.getBytes("UTF-8")));
+	}
+}
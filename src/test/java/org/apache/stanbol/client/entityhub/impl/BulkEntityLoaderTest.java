@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.stanbol.client.EntityHub;
+import org.apache.stanbol.client.exception.StanbolClientException;
+import org.apache.stanbol.client.services.exception.StanbolServiceException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Check the batches uploaded by the loader against a local server
+ */
+public class BulkEntityLoaderTest {
+
+	private static final String TURTLE = "@prefix ex: <http://example.org/> .\n"
+			+ "ex:a ex:name \"A\" .\n"
+			+ "ex:b ex:address [ ex:street \"S\" ; ex:geo [ ex:lat \"1\" ] ] ;\n"
+			+ "     ex:name \"B\" .\n"
+			+ "ex:c ex:name \"C\" .\n";
+
+	private static final String N_TRIPLES = "<http://example.org/a> <http://example.org/name> \"A\" .\n"
+			+ "_:geo <http://example.org/lat> \"1\" .\n"
+			+ "_:address <http://example.org/geo> _:geo .\n"
+			+ "<http://example.org/b> <http://example.org/address> _:address .\n"
+			+ "<http://example.org/b> <http://example.org/name> \"B\" .\n"
+			+ "_:address <http://example.org/street> \"S\" .\n"
+			+ "<http://example.org/c> <http://example.org/name> \"C\" .\n";
+
+	private HttpServer server;
+
+	private UriBuilder endpoint;
+
+	/**
+	 * Batches received by the server
+	 */
+	private final List<Model> batches = Collections
+			.synchronizedList(new ArrayList<Model>());
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/" + EntityHub.STANBOL_ENTITYHUB_PATH,
+				new HttpHandler() {
+					@Override
+					public void handle(final HttpExchange exchange)
+							throws IOException {
+						try {
+							final Model batch = ModelFactory
+									.createDefaultModel();
+							try (InputStream in = exchange.getRequestBody()) {
+								RDFDataMgr.read(batch, in, Lang.NTRIPLES);
+							}
+							batches.add(batch);
+							exchange.sendResponseHeaders(200, -1);
+						} finally {
+							exchange.close();
+						}
+					}
+				});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		endpoint = UriBuilder.fromUri("http://localhost:"
+				+ server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private BulkEntityLoader createLoader() {
+		return new BulkEntityLoader(endpoint, BulkLoadConfiguration.builder()
+				.setBatchSize(1).setParallelism(2)
+				.setRetries(0, 0, TimeUnit.MILLISECONDS).build());
+	}
+
+	private long load(String dump, Lang lang) throws IOException,
+			StanbolServiceException, StanbolClientException {
+		return createLoader().load(
+				new ByteArrayInputStream(dump.getBytes("UTF-8")), lang);
+	}
+
+	@Test
+	public void testBlankNodesInTurtle() throws Exception {
+		Assert.assertEquals(3, load(TURTLE, Lang.TURTLE));
+		assertBlankNodeClosures();
+	}
+
+	@Test
+	public void testBlankNodesAroundEntity() throws Exception {
+		Assert.assertEquals(3, load(N_TRIPLES, Lang.NTRIPLES));
+		assertBlankNodeClosures();
+	}
+
+	@Test
+	public void testUnreferencedBlankNodes() throws Exception {
+		try {
+			load(N_TRIPLES + "_:orphan <http://example.org/name> \"O\" .\n",
+					Lang.NTRIPLES);
+			Assert.fail("Unreferenced blank nodes must be rejected");
+		} catch (StanbolClientException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testQuadsRejected() throws Exception {
+		try {
+			load("<http://example.org/a> <http://example.org/name> \"A\" <http://example.org/g> .\n",
+					Lang.NQUADS);
+			Assert.fail("Quad syntaxes must be rejected");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		Assert.assertTrue(batches.isEmpty());
+	}
+
+	/**
+	 * Check that every entity was uploaded in its own batch, with every
+	 * blank node it references
+	 */
+	private void assertBlankNodeClosures() {
+		Assert.assertEquals(3, batches.size());
+		for (Model batch : batches) {
+			final List<Resource> entities = new ArrayList<Resource>();
+			for (Resource subject : batch.listSubjects().toList()) {
+				if (subject.isURIResource()) {
+					entities.add(subject);
+				}
+			}
+			Assert.assertEquals(1, entities.size());
+			for (Statement statement : batch.listStatements().toList()) {
+				final RDFNode object = statement.getObject();
+				if (object.isAnon()) {
+					Assert.assertTrue(batch.contains(object.asResource(),
+							null, (RDFNode) null));
+				}
+			}
+			if (entities.get(0).getURI().equals("http://example.org/b")) {
+				Assert.assertEquals(5, batch.size());
+			} else {
+				Assert.assertEquals(1, batch.size());
+			}
+		}
+	}
+}
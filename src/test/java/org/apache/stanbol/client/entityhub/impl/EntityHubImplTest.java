@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.stanbol.client.EntityHub;
+import org.apache.stanbol.client.entityhub.model.Entity;
+import org.apache.stanbol.client.entityhub.model.LDPathProgram;
+import org.apache.stanbol.client.exception.StanbolClientException;
+import org.apache.stanbol.client.services.exception.StanbolServiceException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Check the client behaviour against a local server
+ */
+public class EntityHubImplTest {
+
+	private static final String SLOW = "urn:slow";
+
+	private HttpServer server;
+
+	private UriBuilder endpoint;
+
+	/**
+	 * Requests received by the server
+	 */
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * Whether the server drops the connections instead of answering
+	 */
+	private volatile boolean unreachable;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/" + EntityHub.STANBOL_ENTITYHUB_PATH,
+				new HttpHandler() {
+					@Override
+					public void handle(final HttpExchange exchange)
+							throws IOException {
+						requests.incrementAndGet();
+						try {
+							if (unreachable) {
+								return;
+							}
+							final byte[] body;
+							if (exchange.getRequestURI().getPath()
+									.endsWith("/ldpath")) {
+								body = ldpath(exchange);
+								exchange.getResponseHeaders().add(
+										"Content-Type", "application/rdf+xml");
+							} else {
+								body = "[\"http://localhost/entityhub/site/dbpedia/\"]"
+										.getBytes("UTF-8");
+								exchange.getResponseHeaders().add(
+										"Content-Type", "application/json");
+							}
+							exchange.sendResponseHeaders(200, body.length);
+							try (OutputStream out = exchange.getResponseBody()) {
+								out.write(body);
+							}
+						} finally {
+							exchange.close();
+						}
+					}
+				});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		endpoint = UriBuilder.fromUri("http://localhost:"
+				+ server.getAddress().getPort());
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	/**
+	 * Answer an LDPath request with a label for every context. The
+	 * {@link #SLOW} context is answered after a second
+	 */
+	private static byte[] ldpath(final HttpExchange exchange)
+			throws IOException {
+		final Model model = ModelFactory.createDefaultModel();
+		try (InputStream in = exchange.getRequestBody()) {
+			for (Map.Entry<String, String> param : Splitter.on('&')
+					.withKeyValueSeparator('=')
+					.split(new String(ByteStreams.toByteArray(in), "UTF-8"))
+					.entrySet()) {
+				final String value = URLDecoder.decode(param.getValue(),
+						"UTF-8");
+				if (param.getKey().equals("context")) {
+					model.add(model.createResource(value), RDFS.label, value);
+				}
+			}
+		}
+		if (model.containsResource(model.createResource(SLOW))) {
+			try {
+				Thread.sleep(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		model.write(out);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testReferencedSitesRefreshUnreachable()
+			throws StanbolServiceException, StanbolClientException,
+			InterruptedException {
+		final EntityHub client = new EntityHubImpl(endpoint.clone(),
+				EntityHubConfiguration.builder()
+						.setReferencedSitesRefresh(1, TimeUnit.SECONDS)
+						.build());
+		final Collection<String> sites = client.getReferencedSites();
+		Assert.assertEquals(
+				Arrays.asList("http://localhost/entityhub/site/dbpedia/"),
+				sites);
+
+		// The refresh fails with a ProcessingException
+		unreachable = true;
+		Thread.sleep(1100);
+		Assert.assertSame(sites, client.getReferencedSites());
+		Thread.sleep(300);
+		final int attempts = requests.get();
+		Assert.assertTrue(attempts > 1);
+
+		// The previous list is kept until the next refresh interval
+		for (int i = 0; i < 3; i++) {
+			Assert.assertSame(sites, client.getReferencedSites());
+		}
+		Thread.sleep(300);
+		Assert.assertEquals(attempts, requests.get());
+	}
+
+	@Test
+	public void testGetAllDeadline() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub client = new EntityHubImpl(endpoint.clone(),
+				EntityHubConfiguration.builder().setBulkFetch(1, 3).build());
+		final LDPathProgram program = new LDPathProgram(
+				"@prefix rdfs:<http://www.w3.org/2000/01/rdf-schema#>; rdfs:label = rdfs:label;");
+		Assert.assertEquals(3,
+				client.getAll("dbpedia", Arrays.asList("urn:a", "urn:b", SLOW),
+						program).size());
+
+		// The slow chunk is left out
+		final long start = System.currentTimeMillis();
+		final Map<String, Entity> entities = client.getAll("dbpedia",
+				Arrays.asList("urn:a", SLOW, "urn:b"), program, 300,
+				TimeUnit.MILLISECONDS);
+		Assert.assertTrue(System.currentTimeMillis() - start < 900);
+		Assert.assertTrue(entities.containsKey("urn:a"));
+		Assert.assertFalse(entities.containsKey(SLOW));
+	}
+
+	@Test
+	public void testDeleteAllRejectsWildcard() throws StanbolServiceException,
+			StanbolClientException {
+		final EntityHub client = new EntityHubImpl(endpoint.clone());
+		try {
+			client.deleteAll(Arrays.asList("urn:a", "*"));
+			Assert.fail("\"*\" would delete every entity");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		Assert.assertEquals(0, requests.get());
+	}
+
+	@Test
+	public void testLocalLDPathResultsInvalidated()
+			throws StanbolClientException {
+		final LDPathResultCache cache = new LDPathResultCache(1000, 0,
+				TimeUnit.MINUTES);
+		final LDPathProgram program = new LDPathProgram(
+				"@prefix rdfs:<http://www.w3.org/2000/01/rdf-schema#>; rdfs:label = rdfs:label;");
+		final Model model = ModelFactory.createDefaultModel();
+		model.add(model.createResource("urn:a"), RDFS.label, "a");
+
+		// The EntityHub itself can be given as the empty site
+		cache.put(new LDPathResultCache.Key("", "urn:a", program), model);
+		Assert.assertNotNull(cache.get(new LDPathResultCache.Key(null,
+				"urn:a", program)));
+		cache.put(new LDPathResultCache.Key("dbpedia", "urn:a", program),
+				model);
+		cache.invalidateLocal();
+		Assert.assertNull(cache.get(new LDPathResultCache.Key("", "urn:a",
+				program)));
+		Assert.assertNotNull(cache.get(new LDPathResultCache.Key("dbpedia",
+				"urn:a", program)));
+	}
+
+	@Test
+	public void testEntityCacheCopies() {
+		final EntityCache cache = new EntityCache(1000, 0, TimeUnit.MINUTES);
+		final EntityCache.Key key = new EntityCache.Key("dbpedia", "urn:a",
+				false);
+		final Model model = ModelFactory.createDefaultModel();
+		model.add(model.createResource("urn:a"), RDFS.label, "a");
+		final Entity loaded = new Entity(model.getResource("urn:a"),
+				"dbpedia");
+		cache.put(key, loaded, 1);
+
+		// Neither the loaded entity nor the returned ones reach the cache
+		loaded.getResource().addProperty(RDFS.label, "b");
+		final Entity first = cache.get(key);
+		Assert.assertEquals(1, first.getResource().getModel().size());
+		Assert.assertEquals("dbpedia", first.getReferencedSite());
+		first.getResource().addProperty(RDFS.comment, "c");
+		final Entity second = cache.get(key);
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(1, second.getResource().getModel().size());
+	}
+}
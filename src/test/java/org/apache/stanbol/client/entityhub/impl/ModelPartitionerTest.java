@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.impl;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+public class ModelPartitionerTest {
+
+	/*
+	 * Query results with their scores, the metadata of one of them and a
+	 * blank node referenced through another blank node
+	 */
+	private static final String RESULTS = "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+			+ "@prefix qry: <http://stanbol.apache.org/ontology/entityhub/query#> .\n"
+			+ "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n"
+			+ "qry:QueryResultSet qry:queryResult <urn:a>, <urn:b>, <urn:c>, <urn:d>, <urn:e> .\n"
+			+ "<urn:a> rdfs:label \"a\" ; qry:score \"0.2\"^^xsd:float .\n"
+			+ "<urn:b> rdfs:label \"b\" ; qry:score \"0.9\"^^xsd:float .\n"
+			+ "<urn:c> rdfs:label \"c\" ; rdfs:seeAlso [ rdfs:seeAlso [ rdfs:label \"nested\" ] ] .\n"
+			+ "<urn:d> rdfs:label \"d\" ; qry:score \"0.2\"^^xsd:float .\n"
+			+ "<urn:e.meta> qry:score \"0.5\"^^xsd:double .\n"
+			+ "<urn:e> rdfs:label \"e\" .\n";
+
+	@Test
+	public void testByScore() {
+		final Map<String, Model> entities = ModelPartitioner.byScore(parse());
+		entities.remove("http://stanbol.apache.org/ontology/entityhub/query#QueryResultSet");
+		Assert.assertEquals(
+				Arrays.asList("urn:b", "urn:e", "urn:a", "urn:d", "urn:c"),
+				new ArrayList<String>(entities.keySet()));
+	}
+
+	@Test
+	public void testBySubject() {
+		final Map<String, Model> entities = ModelPartitioner.bySubject(parse());
+		Assert.assertEquals(6, entities.size());
+		Assert.assertEquals(2, entities.get("urn:e").size());
+		final Model c = entities.get("urn:c");
+		Assert.assertEquals(4, c.size());
+		Assert.assertTrue(c.contains(null, RDFS.label, "nested"));
+	}
+
+	private static Model parse() {
+		final Model model = ModelFactory.createDefaultModel();
+		model.read(new StringReader(RESULTS), null, "TURTLE");
+		return model;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.entityhub.model;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+public class EntityTest {
+
+	/*
+	 * An entity with a labelled blank node, next to another entity
+	 */
+	private static final String ENTITIES = "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n"
+			+ "<urn:paris> rdfs:label \"Paris\"@en, \"Par\u00EDs\"@es ; rdfs:seeAlso [ rdfs:label \"Nested\"@en ] .\n"
+			+ "<urn:france> rdfs:label \"France\"@en .\n";
+
+	@Test
+	public void testLabelsOfTheEntityOnly() {
+		for (boolean indexed : new boolean[] { false, true }) {
+			final Entity entity = new Entity(parse(ENTITIES), "urn:paris");
+			entity.setIndexed(indexed);
+			Assert.assertEquals(
+					new HashSet<String>(Arrays.asList("Paris", "Par\u00EDs")),
+					new HashSet<String>(entity.getLabels()));
+			Assert.assertEquals(Arrays.asList("Paris"),
+					entity.getLabels("en"));
+		}
+	}
+
+	@Test
+	public void testIndexedBlankNodeValues() {
+		final Entity plain = new Entity(parse(ENTITIES), "urn:paris");
+		final Entity indexed = new Entity(parse(ENTITIES), "urn:paris");
+		indexed.setIndexed(true);
+		final String seeAlso = "http://www.w3.org/2000/01/rdf-schema#seeAlso";
+		Assert.assertEquals(plain.getPropertyValues(seeAlso),
+				indexed.getPropertyValues(seeAlso));
+	}
+
+	@Test
+	public void testIndexDroppedOnResourceChanges() {
+		final Entity entity = new Entity(parse(ENTITIES), "urn:paris");
+		entity.setIndexed(true);
+		Assert.assertEquals(2, entity.getLabels().size());
+
+		entity.getResource().addProperty(RDFS.label, "Lutetia", "la");
+		Assert.assertEquals(Arrays.asList("Lutetia"), entity.getLabels("la"));
+
+		entity.getResource().getModel().removeAll();
+		Assert.assertTrue(entity.getLabels().isEmpty());
+
+		// A re-enabled index keeps following the model
+		entity.setIndexed(false);
+		entity.setIndexed(true);
+		entity.getResource().addProperty(RDFS.label, "Paris", "en");
+		Assert.assertEquals(Arrays.asList("Paris"), entity.getLabels("en"));
+	}
+
+	private static Model parse(final String turtle) {
+		final Model model = ModelFactory.createDefaultModel();
+		model.read(new StringReader(turtle), null, "TURTLE");
+		return model;
+	}
+}
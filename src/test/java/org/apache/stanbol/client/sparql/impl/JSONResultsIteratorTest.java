@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.sparql.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.stanbol.client.sparql.impl.SparqlConfiguration.ResultsFormat;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.resultset.ResultSetException;
+
+public class JSONResultsIteratorTest {
+
+	private static final String BINDINGS = "\"results\": { \"bindings\": ["
+			+ "{ \"s\": { \"type\": \"uri\", \"value\": \"http://dbpedia.org/resource/Paris\" },"
+			+ "  \"label\": { \"type\": \"literal\", \"value\": \"Paris\", \"xml:lang\": \"fr\" },"
+			+ "  \"population\": { \"type\": \"typed-literal\", \"value\": \"2211297\", \"datatype\": \"http://www.w3.org/2001/XMLSchema#integer\" } },"
+			+ "{ \"s\": { \"type\": \"bnode\", \"value\": \"b0\" },"
+			+ "  \"label\": { \"type\": \"literal\", \"value\": \"Sevilla\" } },"
+			+ "{ \"s\": { \"type\": \"bnode\", \"value\": \"b0\" },"
+			+ "  \"population\": { \"type\": \"literal\", \"value\": \"703021\", \"datatype\": \"http://www.w3.org/2001/XMLSchema#integer\" } }"
+			+ "] }";
+
+	private static final String HEAD = "\"head\": { \"link\": [], \"vars\": [ \"s\", \"label\", \"population\" ] }";
+
+	@Test
+	public void testBindings() {
+		final ResultSet results = parse("{ " + HEAD + ", " + BINDINGS + " }");
+		Assert.assertEquals(Arrays.asList("s", "label", "population"),
+				results.getResultVars());
+		assertBindings(results);
+	}
+
+	@Test
+	public void testResultsBeforeHead() {
+		final ResultSet results = parse("{ " + BINDINGS + ", " + HEAD + " }");
+		assertBindings(results);
+
+		// The variables of the head replace those found in the bindings
+		Assert.assertEquals(Arrays.asList("s", "label", "population"),
+				results.getResultVars());
+	}
+
+	@Test
+	public void testEmptyResults() {
+		final ResultSet results = parse("{ \"head\": { \"vars\": [ \"s\" ] }, \"results\": { \"bindings\": [] } }");
+		Assert.assertEquals(Arrays.asList("s"), results.getResultVars());
+		Assert.assertFalse(results.hasNext());
+	}
+
+	@Test(expected = ResultSetException.class)
+	public void testBooleanResults() {
+		parse("{ \"head\": {}, \"boolean\": true }");
+	}
+
+	@Test(expected = ResultSetException.class)
+	public void testMalformedTerm() {
+		final ResultSet results = parse("{ " + HEAD
+				+ ", \"results\": { \"bindings\": [ { \"s\": { \"value\": \"x\" } } ] } }");
+		results.hasNext();
+	}
+
+	/**
+	 * Parse 100k rows in every results format. The JSON results are the
+	 * fastest to parse and TSV results the smallest
+	 */
+	@Ignore("Benchmark")
+	@Test
+	public void benchmarkResultsFormats() {
+		final int rows = 100000;
+		final List<Binding> bindings = new ArrayList<Binding>(rows);
+		final Var s = Var.alloc("s");
+		final Var label = Var.alloc("label");
+		final Var confidence = Var.alloc("confidence");
+		for (int i = 0; i < rows; i++) {
+			final BindingMap binding = BindingFactory.create();
+			binding.add(s, NodeFactory
+					.createURI("http://dbpedia.org/resource/Entity_" + i));
+			binding.add(label, NodeFactory.createLiteral("Label of entity "
+					+ i, "en", false));
+			binding.add(confidence, NodeFactory.createLiteral(
+					Double.toString(i / (double) rows), XSDDatatype.XSDdouble));
+			bindings.add(binding);
+		}
+		final List<String> vars = Arrays.asList("s", "label", "confidence");
+
+		final ResultsFormat[] formats = ResultsFormat.values();
+		final byte[][] data = new byte[formats.length][];
+		for (int f = 0; f < formats.length; f++) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final ResultSet results = new ResultSetStream(vars, null,
+					bindings.iterator());
+			switch (formats[f]) {
+			case XML:
+				ResultSetFormatter.outputAsXML(out, results);
+				break;
+			case JSON:
+				ResultSetFormatter.outputAsJSON(out, results);
+				break;
+			case TSV:
+				ResultSetFormatter.outputAsTSV(out, results);
+				break;
+			}
+			data[f] = out.toByteArray();
+		}
+
+		for (int run = 0; run < 6; run++) {
+			for (int f = 0; f < formats.length; f++) {
+				final long start = System.nanoTime();
+				final ResultSet results = formats[f]
+						.parse(new ByteArrayInputStream(data[f]));
+				int count = 0;
+				while (results.hasNext()) {
+					results.next().get("label");
+					count++;
+				}
+				final long ms = (System.nanoTime() - start) / 1000000;
+				System.out.println(String.format(
+						"%s: %d bytes, %d rows, %d ms, %d rows/s", formats[f],
+						data[f].length, count, ms, count * 1000L
+								/ Math.max(1, ms)));
+			}
+		}
+	}
+
+	private static void assertBindings(final ResultSet results) {
+		Assert.assertTrue(results.hasNext());
+		QuerySolution solution = results.next();
+		Assert.assertEquals("http://dbpedia.org/resource/Paris", solution
+				.getResource("s").getURI());
+		Assert.assertEquals("fr", solution.getLiteral("label").getLanguage());
+		final Literal population = solution.getLiteral("population");
+		Assert.assertEquals(XSDDatatype.XSDinteger.getURI(),
+				population.getDatatypeURI());
+		Assert.assertEquals(2211297, population.getInt());
+
+		// Unbound variables and blank nodes with the same label
+		Assert.assertTrue(results.hasNext());
+		final Binding first = results.nextBinding();
+		final Node bnode = first.get(Var.alloc("s"));
+		Assert.assertTrue(bnode.isBlank());
+		Assert.assertEquals("", first.get(Var.alloc("label"))
+				.getLiteralLanguage());
+		Assert.assertNull(first.get(Var.alloc("population")));
+		Assert.assertTrue(results.hasNext());
+		final Binding second = results.nextBinding();
+		Assert.assertEquals(bnode, second.get(Var.alloc("s")));
+		Assert.assertNull(second.get(Var.alloc("label")));
+		Assert.assertEquals(703021, ((Number) second.get(
+				Var.alloc("population")).getLiteralValue()).intValue());
+		Assert.assertFalse(results.hasNext());
+	}
+
+	private static ResultSet parse(final String json) {
+		try {
+			final InputStream in = new ByteArrayInputStream(
+					json.getBytes("UTF-8"));
+			return ResultsFormat.JSON.parse(in);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.sparql.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.stanbol.client.Sparql;
+import org.apache.stanbol.client.services.exception.StanbolServiceException;
+import org.apache.stanbol.client.sparql.model.CloseableResultSet;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Check how queries are sent, against a local server echoing the query
+ */
+public class SparqlImplTest {
+
+	private static final String QUERY = "SELECT ?s WHERE { ?s <http://www.w3.org/2000/01/rdf-schema#label> \"a+b & c=d %20 #e\"@en "
+			+ "FILTER(?s != <http://dbpedia.org/resource/Sevilla?x=1&y=2>) } # Andaluc\u00EDa";
+
+	private static final String GRAPH = "urn:graph?name=a&b#c";
+
+	private static final int LARGE_ROWS = 100000;
+
+	private static final long LARGE_DELAY = 3000;
+
+	private static HttpServer server;
+
+	private static volatile String method;
+
+	private static volatile Map<String, String> params;
+
+	private static UriBuilder endpoint;
+
+	@BeforeClass
+	public static void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/sparql", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					method = exchange.getRequestMethod();
+					final String encoded;
+					if (method.equals("POST")) {
+						try (InputStream in = exchange.getRequestBody()) {
+							encoded = new String(ByteStreams.toByteArray(in),
+									"UTF-8");
+						}
+					} else {
+						encoded = exchange.getRequestURI().getRawQuery();
+					}
+					final Map<String, String> decoded = new HashMap<String, String>();
+					for (Map.Entry<String, String> param : Splitter.on('&')
+							.withKeyValueSeparator('=').split(encoded)
+							.entrySet()) {
+						decoded.put(param.getKey(),
+								URLDecoder.decode(param.getValue(), "UTF-8"));
+					}
+					params = decoded;
+
+					// Echo the query as the only result
+					final ByteArrayOutputStream out = new ByteArrayOutputStream();
+					ResultSetFormatter.outputAsXML(out, new ResultSetStream(
+							Arrays.asList("query"), null, Collections
+									.singleton(
+											BindingFactory.binding(
+													Var.alloc("query"),
+													NodeFactory
+															.createLiteral(decoded
+																	.get("query"))))
+									.iterator()));
+					exchange.getResponseHeaders().add("Content-Type",
+							"application/sparql-results+xml");
+					exchange.sendResponseHeaders(200, out.size());
+					try (OutputStream body = exchange.getResponseBody()) {
+						out.writeTo(body);
+					}
+				} catch (RuntimeException e) {
+					exchange.sendResponseHeaders(500, -1);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.createContext("/large", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Content-Type",
+						"application/sparql-results+xml");
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream body = exchange.getResponseBody()) {
+					body.write(("<?xml version=\"1.0\"?><sparql xmlns=\"http://www.w3.org/2005/sparql-results#\">"
+							+ "<head><variable name=\"n\"/></head><results>")
+							.getBytes("UTF-8"));
+					for (int i = 0; i < LARGE_ROWS; i++) {
+						body.write(row(i));
+						if (i == 1000) {
+							// The rest of the results take a while
+							body.flush();
+							Thread.sleep(LARGE_DELAY);
+						}
+					}
+					body.write("</results></sparql>".getBytes("UTF-8"));
+				} catch (IOException | InterruptedException e) {
+					// Closed by the client
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		endpoint = UriBuilder.fromUri("http://localhost:"
+				+ server.getAddress().getPort() + "/sparql");
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testGetEncoding() throws StanbolServiceException {
+		final Sparql client = new SparqlImpl(endpoint.clone());
+		assertEcho(client.executeQuery(GRAPH, QUERY), QUERY);
+		Assert.assertEquals("GET", method);
+		Assert.assertEquals(GRAPH, params.get("graphuri"));
+
+		// URI template characters are not expanded
+		final String template = "SELECT ?s WHERE { ?s ?p \"{x}\" }";
+		assertEcho(client.executeQuery(null, template), template);
+		Assert.assertEquals("GET", method);
+		Assert.assertEquals(Sparql.ENHANCEMENT_GRAPH_URI,
+				params.get("graphuri"));
+	}
+
+	@Test
+	public void testPostLongQueries() throws StanbolServiceException {
+		final Sparql client = new SparqlImpl(endpoint.clone(),
+				SparqlConfiguration.builder().setPostThreshold(1000).build());
+		assertEcho(client.executeQuery(GRAPH, QUERY), QUERY);
+		Assert.assertEquals("GET", method);
+
+		final StringBuilder values = new StringBuilder(
+				"SELECT ?s ?label WHERE { VALUES ?s {");
+		for (int i = 0; i < 1000; i++) {
+			values.append(" <http://dbpedia.org/resource/Entity_").append(i)
+					.append('>');
+		}
+		final String longQuery = values.append(
+				" } ?s <http://www.w3.org/2000/01/rdf-schema#label> ?label }")
+				.toString();
+		assertEcho(client.executeQuery(GRAPH, longQuery), longQuery);
+		Assert.assertEquals("POST", method);
+		Assert.assertEquals(GRAPH, params.get("graphuri"));
+	}
+
+	@Test
+	public void testEarlyClose() throws StanbolServiceException {
+		final Sparql client = new SparqlImpl(UriBuilder
+				.fromUri("http://localhost:" + server.getAddress().getPort()
+						+ "/large"));
+		for (int i = 0; i < 3; i++) {
+			final CloseableResultSet results = client.executeQuery(GRAPH,
+					QUERY);
+			Assert.assertEquals("0", results.next().getLiteral("n")
+					.getString());
+
+			// Closing does not wait for the rest of the results
+			final long start = System.currentTimeMillis();
+			results.close();
+			Assert.assertTrue(System.currentTimeMillis() - start < LARGE_DELAY
+					/ 2);
+			Assert.assertFalse(results.hasNext());
+		}
+	}
+
+	private static byte[] row(final int n) throws IOException {
+		return ("<result><binding name=\"n\"><literal>" + n
+				+ "</literal></binding></result>").getBytes("UTF-8");
+	}
+
+	private static void assertEcho(final CloseableResultSet results,
+			final String query) {
+		try {
+			Assert.assertTrue(results.hasNext());
+			Assert.assertEquals(query, results.next().getLiteral("query")
+					.getString());
+			Assert.assertFalse(results.hasNext());
+		} finally {
+			results.close();
+		}
+	}
+}
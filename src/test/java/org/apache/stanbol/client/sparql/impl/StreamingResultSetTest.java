@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.stanbol.client.sparql.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.stanbol.client.sparql.impl.SparqlConfiguration.ResultsFormat;
+import org.jboss.resteasy.specimpl.BuiltResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.ResultSetStream;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.resultset.ResultSetException;
+
+public class StreamingResultSetTest {
+
+	private static final int ROWS = 20000;
+
+	@Test
+	public void testCloseWhenExhausted() throws IOException {
+		for (final ResultsFormat format : ResultsFormat.values()) {
+			final StubResponse response = new StubResponse(results(format,
+					ROWS));
+			final StreamingResultSet results = new StreamingResultSet(
+					response, format);
+			Assert.assertEquals(Arrays.asList("s"), results.getResultVars());
+			int count = 0;
+			while (results.hasNext()) {
+				Assert.assertFalse(format + " response closed too early",
+						response.isClosed());
+				results.next();
+				count++;
+			}
+			Assert.assertEquals(ROWS, count);
+			Assert.assertTrue(format + " response not closed",
+					response.isClosed());
+		}
+	}
+
+	@Test
+	public void testStreaming() throws IOException {
+		for (final ResultsFormat format : ResultsFormat.values()) {
+			final byte[] data = results(format, ROWS);
+			final StubResponse response = new StubResponse(data);
+			final StreamingResultSet results = new StreamingResultSet(
+					response, format);
+			results.next();
+
+			// Only the beginning of the response has been read
+			Assert.assertTrue(format + " read " + response.getBytesRead()
+					+ " bytes of " + data.length,
+					response.getBytesRead() < data.length / 10);
+
+			results.close();
+			Assert.assertTrue(response.isClosed());
+			Assert.assertFalse(results.hasNext());
+			try {
+				results.nextBinding();
+				Assert.fail("Closed result sets have no more solutions");
+			} catch (NoSuchElementException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testCloseOnError() throws IOException {
+		// Truncated in the middle of the bindings
+		final byte[] data = results(ResultsFormat.JSON, 100);
+		final StubResponse response = new StubResponse(Arrays.copyOf(data,
+				data.length / 2));
+		final StreamingResultSet results = new StreamingResultSet(response,
+				ResultsFormat.JSON);
+		try {
+			while (results.hasNext()) {
+				results.next();
+			}
+			Assert.fail("Truncated results must fail");
+		} catch (ResultSetException e) {
+			// Expected
+		}
+		Assert.assertTrue(response.isClosed());
+
+		// Invalid header
+		final StubResponse invalid = new StubResponse("[]".getBytes("UTF-8"));
+		try {
+			new StreamingResultSet(invalid, ResultsFormat.JSON);
+			Assert.fail("Invalid results must fail");
+		} catch (ResultSetException e) {
+			// Expected
+		}
+		Assert.assertTrue(invalid.isClosed());
+	}
+
+	private static byte[] results(final ResultsFormat format, final int rows) {
+		final List<Binding> bindings = new ArrayList<Binding>(rows);
+		for (int i = 0; i < rows; i++) {
+			bindings.add(BindingFactory.binding(Var.alloc("s"), NodeFactory
+					.createURI("http://dbpedia.org/resource/Entity_" + i)));
+		}
+		final ResultSetStream results = new ResultSetStream(
+				Arrays.asList("s"), null, bindings.iterator());
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		switch (format) {
+		case XML:
+			ResultSetFormatter.outputAsXML(out, results);
+			break;
+		case JSON:
+			ResultSetFormatter.outputAsJSON(out, results);
+			break;
+		case TSV:
+			ResultSetFormatter.outputAsTSV(out, results);
+			break;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Response whose entity is an input stream counting the bytes read
+	 */
+	private static final class StubResponse extends BuiltResponse {
+
+		private final InputStream entity;
+
+		private long bytesRead = 0;
+
+		StubResponse(final byte[] data) {
+			this.entity = new FilterInputStream(new ByteArrayInputStream(data)) {
+				@Override
+				public int read() throws IOException {
+					final int result = super.read();
+					if (result >= 0) {
+						bytesRead++;
+					}
+					return result;
+				}
+
+				@Override
+				public int read(final byte[] b, final int off, final int len)
+						throws IOException {
+					final int result = super.read(b, off, len);
+					if (result > 0) {
+						bytesRead += result;
+					}
+					return result;
+				}
+			};
+		}
+
+		long getBytesRead() {
+			return bytesRead;
+		}
+
+		@Override
+		public <T> T readEntity(final Class<T> type) {
+			abortIfClosed();
+			return type.cast(entity);
+		}
+	}
+}